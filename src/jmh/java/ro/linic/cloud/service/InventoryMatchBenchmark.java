@@ -0,0 +1,93 @@
+package ro.linic.cloud.service;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ro.linic.cloud.pojo.Product;
+
+/**
+ * Matching of the woocommerce products against the in memory {@link InventoryIndex} of createConnection:
+ * loading the index, then one lookup by exact barcode or, failing that, by case insensitive name.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class InventoryMatchBenchmark {
+	@Param({"1000", "10000", "100000"})
+	private int catalogSize;
+	
+	private List<Product> inventory;
+	private InventoryIndex index;
+	private Product[] sameBarcode;
+	// found only by name: other barcode, name in another case
+	private Product[] sameName;
+	private Product[] unknown;
+	private int next;
+	
+	@Setup
+	public void setup() {
+		inventory = SyntheticCatalog.inventory(catalogSize);
+		index = new InventoryIndex();
+		inventory.forEach(index::add);
+		sameBarcode = inventory.stream().map(SyntheticCatalog::wooProduct).toArray(Product[]::new);
+		sameName = inventory.stream().map(SyntheticCatalog::wooProduct)
+				.peek(product ->
+				{
+					product.setBarcode("X"+product.getBarcode());
+					product.setName(product.getName().toUpperCase(Locale.ROOT));
+				})
+				.toArray(Product[]::new);
+		unknown = inventory.stream().map(SyntheticCatalog::wooProduct)
+				.peek(product ->
+				{
+					product.setBarcode("X"+product.getBarcode());
+					product.setName("X"+product.getName());
+				})
+				.toArray(Product[]::new);
+	}
+	
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public InventoryIndex loadIndex() {
+		final InventoryIndex loaded = new InventoryIndex();
+		inventory.forEach(loaded::add);
+		return loaded;
+	}
+	
+	@Benchmark
+	public Optional<Product> matchByBarcode() {
+		return index.match(sameBarcode[nextProduct()]);
+	}
+	
+	@Benchmark
+	public Optional<Product> matchByName() {
+		return index.match(sameName[nextProduct()]);
+	}
+	
+	@Benchmark
+	public Optional<Product> noMatch() {
+		return index.match(unknown[nextProduct()]);
+	}
+	
+	private int nextProduct() {
+		next = next + 1 == catalogSize ? 0 : next + 1;
+		return next;
+	}
+}
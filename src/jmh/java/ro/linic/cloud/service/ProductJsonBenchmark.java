@@ -0,0 +1,66 @@
+package ro.linic.cloud.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+
+import ro.linic.cloud.pojo.Product;
+import ro.linic.cloud.pojo.Products;
+
+/**
+ * Deserialization of a whole woocommerce catalog, page by page, into {@link Product}s through their
+ * <code>@JsonAlias</code> mappings(sku, title, regular_price, stock_quantity): the streaming parser of
+ * {@link WoocommerceApiImpl#readProducts} against binding each page as one {@link Products} document.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ProductJsonBenchmark {
+	private static final ObjectReader PRODUCTS_READER = JsonMapper.builder()
+			.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+			.build()
+			.readerFor(Products.class);
+	
+	@Param({"1000", "10000", "100000"})
+	private int catalogSize;
+	
+	private List<byte[]> pages;
+	
+	@Setup
+	public void setup() {
+		pages = SyntheticCatalog.wooPages(SyntheticCatalog.inventory(catalogSize));
+	}
+	
+	@Benchmark
+	public void streamPages(final Blackhole blackhole) throws IOException {
+		for (final byte[] page : pages)
+			blackhole.consume(WoocommerceApiImpl.readProducts(new ByteArrayInputStream(page)));
+	}
+	
+	@Benchmark
+	public void bindPages(final Blackhole blackhole) throws IOException {
+		for (final byte[] page : pages)
+			blackhole.consume(PRODUCTS_READER.<Products>readValue(page).getProducts());
+	}
+}
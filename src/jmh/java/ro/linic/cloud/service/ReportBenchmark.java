@@ -0,0 +1,99 @@
+package ro.linic.cloud.service;
+
+import java.io.StringWriter;
+import java.text.MessageFormat;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ro.linic.cloud.pojo.Product;
+
+/**
+ * The report of a reconciliation in which every product got a new price and stock, written through a
+ * {@link ReportWriter}: with <code>MessageFormat.format</code> as the reconciliation does, with the patterns
+ * parsed once and with plain concatenation. The concatenation doesn't group the thousands of the numbers
+ * like MessageFormat does, so its report is not identical; it is the lower bound.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ReportBenchmark {
+	private static final String PRICE_PATTERN = "Set price of {0} {1} from {2} to {3}";
+	private static final String STOCK_PATTERN = "Set stock of {0} {1} from {2} to {3}";
+	
+	@Param({"1000", "10000", "100000"})
+	private int catalogSize;
+	
+	private List<Product> inventory;
+	private List<Product> wooProducts;
+	
+	@Setup
+	public void setup() {
+		inventory = SyntheticCatalog.inventory(catalogSize);
+		wooProducts = inventory.stream().map(SyntheticCatalog::wooProduct).toList();
+	}
+	
+	@Benchmark
+	public String messageFormat() {
+		final StringWriter report = new StringWriter();
+		final ReportWriter reportWriter = new ReportWriter(report);
+		for (int i = 0; i < catalogSize; i++)
+		{
+			final Product wooProd = wooProducts.get(i);
+			final Product lProd = inventory.get(i);
+			reportWriter.line(MessageFormat.format(PRICE_PATTERN, wooProd.getBarcode(), wooProd.getName(),
+					wooProd.getPricePerUom(), lProd.getPricePerUom()));
+			reportWriter.line(MessageFormat.format(STOCK_PATTERN, wooProd.getBarcode(), wooProd.getName(),
+					wooProd.getStock(), lProd.getStock()));
+		}
+		return report.toString();
+	}
+	
+	@Benchmark
+	public String parsedOnce() {
+		final MessageFormat priceFormat = new MessageFormat(PRICE_PATTERN);
+		final MessageFormat stockFormat = new MessageFormat(STOCK_PATTERN);
+		final StringWriter report = new StringWriter();
+		final ReportWriter reportWriter = new ReportWriter(report);
+		for (int i = 0; i < catalogSize; i++)
+		{
+			final Product wooProd = wooProducts.get(i);
+			final Product lProd = inventory.get(i);
+			reportWriter.line(priceFormat.format(new Object[] {wooProd.getBarcode(), wooProd.getName(),
+					wooProd.getPricePerUom(), lProd.getPricePerUom()}));
+			reportWriter.line(stockFormat.format(new Object[] {wooProd.getBarcode(), wooProd.getName(),
+					wooProd.getStock(), lProd.getStock()}));
+		}
+		return report.toString();
+	}
+	
+	@Benchmark
+	public String concatenation() {
+		final StringWriter report = new StringWriter();
+		final ReportWriter reportWriter = new ReportWriter(report);
+		for (int i = 0; i < catalogSize; i++)
+		{
+			final Product wooProd = wooProducts.get(i);
+			final Product lProd = inventory.get(i);
+			reportWriter.line("Set price of "+wooProd.getBarcode()+" "+wooProd.getName()+" from "+wooProd.getPricePerUom()+
+					" to "+lProd.getPricePerUom());
+			reportWriter.line("Set stock of "+wooProd.getBarcode()+" "+wooProd.getName()+" from "+wooProd.getStock()+
+					" to "+lProd.getStock());
+		}
+		return report.toString();
+	}
+}
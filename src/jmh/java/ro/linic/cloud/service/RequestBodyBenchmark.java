@@ -0,0 +1,86 @@
+package ro.linic.cloud.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import ro.linic.cloud.pojo.Product;
+import ro.linic.cloud.pojo.ProductWrite;
+
+/**
+ * The woocommerce request bodies of a reconciliation that patches the price and stock of every product, built as
+ * {@link WoocommerceApiImpl} does and serialized by the ObjectMapper of the RestTemplate: one
+ * <code>{"product": {...}}</code> request per product against <code>{"products": [...]}</code> bulk requests
+ * of {@link SyntheticCatalog#PAGE_SIZE} items.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class RequestBodyBenchmark {
+	private static final ObjectMapper REST_JSON = Jackson2ObjectMapperBuilder.json().build();
+	
+	@Param({"1000", "10000", "100000"})
+	private int catalogSize;
+	
+	private List<ProductWrite> writes;
+	
+	@Setup
+	public void setup() {
+		writes = SyntheticCatalog.inventory(catalogSize).stream()
+				.map(product -> ProductWrite.patch(Product.builder()
+						.id(product.getId())
+						.pricePerUom(product.getPricePerUom())
+						.stock(product.getStock())
+						.build()))
+				.toList();
+	}
+	
+	@Benchmark
+	public void singleBodies(final Blackhole blackhole) throws JsonProcessingException {
+		for (final ProductWrite write : writes)
+			blackhole.consume(REST_JSON.writeValueAsBytes(Map.of("product", write.fields())));
+	}
+	
+	@Benchmark
+	public void bulkBodies(final Blackhole blackhole) throws JsonProcessingException {
+		for (int from = 0; from < writes.size(); from += SyntheticCatalog.PAGE_SIZE)
+		{
+			final List<ProductWrite> batch = writes.subList(from, Math.min(from + SyntheticCatalog.PAGE_SIZE, writes.size()));
+			final List<Map<String, Object>> items = new ArrayList<>(batch.size());
+			for (final ProductWrite write : batch)
+			{
+				final Map<String, Object> item = write.fields();
+				item.put("id", write.getWooId());
+				items.add(item);
+			}
+			blackhole.consume(REST_JSON.writeValueAsBytes(Map.of("products", items)));
+		}
+	}
+	
+	@Benchmark
+	public void bodyMapsOnly(final Blackhole blackhole) {
+		for (final ProductWrite write : writes)
+			blackhole.consume(Map.of("product", write.fields()));
+	}
+}
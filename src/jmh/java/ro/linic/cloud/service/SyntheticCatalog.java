@@ -0,0 +1,85 @@
+package ro.linic.cloud.service;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import ro.linic.cloud.pojo.Product;
+
+/**
+ * Generated catalogs for the benchmarks: inventory products with unique barcodes and names, and the
+ * woocommerce side of them. Seeded, so every run benchmarks the same data.
+ */
+final class SyntheticCatalog {
+	/**
+	 * Products per woocommerce page
+	 */
+	static final int PAGE_SIZE = 100;
+	private static final String[] WORDS = {"cement", "adeziv", "gresie", "faianta", "vopsea", "lavabila", "surub",
+			"diblu", "cablu", "teava", "robinet", "glet", "amorsa", "polistiren", "vata", "bazaltica"};
+	private static final String[] UOMS = {"BUC", "KG", "L", "M", "MP", "SAC"};
+	
+	private SyntheticCatalog() {
+	}
+	
+	static List<Product> inventory(final int size) {
+		final Random random = new Random(size);
+		final List<Product> products = new ArrayList<>(size);
+		for (int i = 0; i < size; i++)
+			products.add(Product.builder()
+					.id(i + 1)
+					.barcode(String.valueOf(5940000000000L + i))
+					.name(WORDS[random.nextInt(WORDS.length)]+" "+WORDS[random.nextInt(WORDS.length)]+" "+(i + 1))
+					.uom(UOMS[random.nextInt(UOMS.length)])
+					.pricePerUom(BigDecimal.valueOf(random.nextInt(100000), 2))
+					.stock(BigDecimal.valueOf(random.nextInt(1000)))
+					.build());
+		return products;
+	}
+	
+	/**
+	 * The website copy of an inventory product: another woo id, the price and stock changed
+	 */
+	static Product wooProduct(final Product inventoryProduct) {
+		return Product.builder()
+				.id(inventoryProduct.getId() + 100000)
+				.barcode(inventoryProduct.getBarcode())
+				.name(inventoryProduct.getName())
+				.pricePerUom(inventoryProduct.getPricePerUom().add(BigDecimal.ONE))
+				.stock(inventoryProduct.getStock().add(BigDecimal.TEN))
+				.visible(true)
+				.build();
+	}
+	
+	/**
+	 * The catalog as <code>{"products": [...]}</code> woocommerce pages, with the fields woocommerce sends and
+	 * the sync ignores
+	 */
+	static List<byte[]> wooPages(final List<Product> inventory) {
+		final List<byte[]> pages = new ArrayList<>();
+		for (int from = 0; from < inventory.size(); from += PAGE_SIZE)
+		{
+			final StringBuilder page = new StringBuilder("{\"products\":[");
+			for (int i = from; i < Math.min(from + PAGE_SIZE, inventory.size()); i++)
+			{
+				final Product product = wooProduct(inventory.get(i));
+				if (i > from)
+					page.append(',');
+				page.append("{\"id\":").append(product.getId())
+				.append(",\"title\":\"").append(product.getName())
+				.append("\",\"sku\":\"").append(product.getBarcode())
+				.append("\",\"regular_price\":\"").append(product.getPricePerUom().toPlainString())
+				.append("\",\"stock_quantity\":").append(product.getStock().toPlainString())
+				.append(",\"visible\":true,\"type\":\"simple\",\"status\":\"publish\",\"permalink\":\"https://shop.ro/produs/")
+				.append(product.getId())
+				.append("\",\"description\":\"<p>").append(product.getName()).append(" - descriere</p>\"")
+				.append(",\"categories\":[\"Constructii\",\"Finisaje\"],\"images\":[{\"id\":1,\"src\":\"https://shop.ro/img/")
+				.append(product.getId()).append(".jpg\",\"position\":0}]}");
+			}
+			pages.add(page.append("]}").toString().getBytes(StandardCharsets.UTF_8));
+		}
+		return pages;
+	}
+}
@@ -4,9 +4,12 @@ import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.web.client.RestTemplateBuilder;
 import org.springframework.context.annotation.Bean;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.web.client.RestTemplate;
 
 @SpringBootApplication
+@EnableScheduling
 public class CloudProductSynchronizerApplication {
 
 	public static void main(final String[] args) {
@@ -14,7 +17,7 @@ public class CloudProductSynchronizerApplication {
 	}
 
 	@Bean
-	public RestTemplate restTemplate(final RestTemplateBuilder builder) {
-	    return builder.build();
+	public RestTemplate restTemplate(final RestTemplateBuilder builder, final ClientHttpRequestFactory httpRequestFactory) {
+	    return builder.requestFactory(() -> httpRequestFactory).build();
 	}
 }
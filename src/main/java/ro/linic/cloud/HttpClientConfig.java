@@ -0,0 +1,101 @@
+package ro.linic.cloud;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hc.client5.http.HttpRoute;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.http.URIScheme;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.http.client.InterceptingClientHttpRequestFactory;
+
+/**
+ * One pooled http client shared by the RestTemplate and the Traverson clients, configured by {@link HttpClientProperties}.
+ * Unless set, the pool is sized by the execution mode: platform threads never have more calls in flight than threads,
+ * while on virtual threads the pool is what bounds the concurrent calls. The client speaks HTTP/1.1 with keep-alive;
+ * the classic(blocking) httpclient5 API has no HTTP/2 support.
+ */
+@Configuration
+@EnableConfigurationProperties(HttpClientProperties.class)
+public class HttpClientConfig {
+	private static final int PLATFORM_MAX_CONNECTIONS = 50;
+	private static final int PLATFORM_MAX_CONNECTIONS_PER_ROUTE = 20;
+	private static final int VIRTUAL_MAX_CONNECTIONS = 500;
+	private static final int VIRTUAL_MAX_CONNECTIONS_PER_ROUTE = 100;
+	
+	@Bean
+	public PoolingHttpClientConnectionManager httpConnectionManager(final HttpClientProperties properties,
+			@Value("${sync.virtual-threads.enabled:false}") final boolean virtualThreads) {
+		final PoolingHttpClientConnectionManager connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+				.setMaxConnTotal(properties.getMaxConnections() > 0 ? properties.getMaxConnections() :
+					virtualThreads ? VIRTUAL_MAX_CONNECTIONS : PLATFORM_MAX_CONNECTIONS)
+				.setMaxConnPerRoute(properties.getMaxConnectionsPerRoute() > 0 ? properties.getMaxConnectionsPerRoute() :
+					virtualThreads ? VIRTUAL_MAX_CONNECTIONS_PER_ROUTE : PLATFORM_MAX_CONNECTIONS_PER_ROUTE)
+				.setDefaultConnectionConfig(ConnectionConfig.custom()
+						.setConnectTimeout(timeout(properties.getConnectTimeout()))
+						.setSocketTimeout(timeout(properties.getReadTimeout()))
+						.setValidateAfterInactivity(timeValue(properties.getValidateAfterInactivity()))
+						.setTimeToLive(timeValue(properties.getTimeToLive()))
+						.build())
+				.build();
+		properties.getMaxConnectionsPerHost().forEach((host, max) -> connectionManager.setMaxPerRoute(route(host), max));
+		return connectionManager;
+	}
+	
+	@Bean
+	public CloseableHttpClient httpClient(final PoolingHttpClientConnectionManager httpConnectionManager,
+			final HttpClientProperties properties) {
+		return HttpClients.custom()
+				.setConnectionManager(httpConnectionManager)
+				.setDefaultRequestConfig(RequestConfig.custom()
+						.setConnectionRequestTimeout(timeout(properties.getConnectionRequestTimeout()))
+						.setResponseTimeout(timeout(properties.getReadTimeout()))
+						.setConnectionKeepAlive(timeValue(properties.getKeepAlive()))
+						.build())
+				.evictExpiredConnections()
+				.evictIdleConnections(timeValue(properties.getIdleEviction()))
+				.build();
+	}
+	
+	/**
+	 * Every request through the factory is measured by {@link OutboundMetrics}
+	 */
+	@Bean
+	public ClientHttpRequestFactory httpRequestFactory(final CloseableHttpClient httpClient, final OutboundMetrics outboundMetrics) {
+		return new InterceptingClientHttpRequestFactory(new HttpComponentsClientHttpRequestFactory(httpClient),
+				List.of(outboundMetrics));
+	}
+	
+	/**
+	 * The route the client plans for a direct call to the host, with the default port filled in
+	 */
+	static HttpRoute route(final String host) {
+		final HttpHost target = HttpHost.create(URI.create(host));
+		final boolean secure = URIScheme.HTTPS.same(target.getSchemeName());
+		final int port = target.getPort() > 0 ? target.getPort() : secure ? 443 : 80;
+		return new HttpRoute(new HttpHost(target.getSchemeName(), target.getHostName(), port), null, secure);
+	}
+	
+	private static Timeout timeout(final Duration duration) {
+		return Timeout.of(duration.toMillis(), TimeUnit.MILLISECONDS);
+	}
+	
+	private static TimeValue timeValue(final Duration duration) {
+		return TimeValue.of(duration.toMillis(), TimeUnit.MILLISECONDS);
+	}
+}
@@ -0,0 +1,56 @@
+package ro.linic.cloud;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Settings of the pooled http client used for every outbound call(woocommerce, moqui, inventory, notifications).
+ */
+@Getter @Setter
+@ConfigurationProperties(prefix = "sync.http")
+public class HttpClientProperties {
+	/**
+	 * Size of the whole pool; 0 sizes it by the execution mode
+	 */
+	private int maxConnections;
+	/**
+	 * Connections per host unless listed in {@link #maxConnectionsPerHost}; 0 sizes it by the execution mode
+	 */
+	private int maxConnectionsPerRoute;
+	/**
+	 * Per host limits keyed by scheme://host[:port], eg. <code>sync.http.max-connections-per-host.[https://shop.ro]=4</code>
+	 */
+	private Map<String, Integer> maxConnectionsPerHost = new HashMap<>();
+	
+	private Duration connectTimeout = Duration.ofSeconds(5);
+	/**
+	 * Maximum inactivity while waiting for the response
+	 */
+	private Duration readTimeout = Duration.ofMinutes(2);
+	/**
+	 * How long a call waits for a free pooled connection
+	 */
+	private Duration connectionRequestTimeout = Duration.ofSeconds(30);
+	/**
+	 * How long an idle connection is kept for reuse when the server does not send a Keep-Alive timeout
+	 */
+	private Duration keepAlive = Duration.ofSeconds(30);
+	/**
+	 * Idle connections are closed after this long
+	 */
+	private Duration idleEviction = Duration.ofMinutes(1);
+	/**
+	 * Pooled connections idle for longer are checked before being reused
+	 */
+	private Duration validateAfterInactivity = Duration.ofSeconds(2);
+	/**
+	 * Connections are not reused after this age, so DNS changes of the shops are picked up
+	 */
+	private Duration timeToLive = Duration.ofMinutes(10);
+}
@@ -0,0 +1,57 @@
+package ro.linic.cloud;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hc.client5.http.HttpRoute;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.core5.pool.PoolStats;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.MultiGauge;
+import io.micrometer.core.instrument.MultiGauge.Row;
+import io.micrometer.core.instrument.Tags;
+
+/**
+ * Publishes the connection pool usage per host: <code>sync.http.pool.connections{host, state=leased|available|pending}</code>
+ * and <code>sync.http.pool.max{host}</code>. A shop whose leased connections sit at its max while calls are pending
+ * is exhausting its share of the pool.
+ */
+@Component
+public class HttpPoolMetrics {
+	private final PoolingHttpClientConnectionManager connectionManager;
+	private final MultiGauge connections;
+	private final MultiGauge maxConnections;
+	
+	public HttpPoolMetrics(final PoolingHttpClientConnectionManager connectionManager, final MeterRegistry meterRegistry) {
+		this.connectionManager = connectionManager;
+		this.connections = MultiGauge.builder("sync.http.pool.connections")
+				.description("Pooled http connections per host and state")
+				.register(meterRegistry);
+		this.maxConnections = MultiGauge.builder("sync.http.pool.max")
+				.description("Connection limit per host")
+				.register(meterRegistry);
+	}
+	
+	/**
+	 * Hosts appear in the pool as they are called, so the rows are rebuilt periodically
+	 */
+	@Scheduled(fixedDelayString = "${sync.http.metrics-interval:10000}")
+	public void refresh() {
+		final List<Row<?>> connectionRows = new ArrayList<>();
+		final List<Row<?>> maxRows = new ArrayList<>();
+		for (final HttpRoute route : connectionManager.getRoutes())
+		{
+			final PoolStats stats = connectionManager.getStats(route);
+			final Tags hostTags = Tags.of("host", route.getTargetHost().toURI());
+			connectionRows.add(Row.of(hostTags.and("state", "leased"), stats.getLeased()));
+			connectionRows.add(Row.of(hostTags.and("state", "available"), stats.getAvailable()));
+			connectionRows.add(Row.of(hostTags.and("state", "pending"), stats.getPending()));
+			maxRows.add(Row.of(hostTags, stats.getMax()));
+		}
+		connections.register(connectionRows, true);
+		maxConnections.register(maxRows, true);
+	}
+}
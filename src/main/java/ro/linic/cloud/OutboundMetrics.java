@@ -0,0 +1,304 @@
+package ro.linic.cloud;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Measures every outbound http request of the pooled client, tagged with the target, operation and company
+ * set around the call by {@link #tagged}:
+ * <ul>
+ * <li><code>sync.outbound.requests{target, operation, company, outcome}</code>: latency histogram, until the
+ * response was read; outcome is the status class(2xx..5xx) or IO_ERROR</li>
+ * <li><code>sync.outbound.errors{target, operation, company, outcome}</code>: the 4xx, 5xx and IO_ERROR requests</li>
+ * <li><code>sync.outbound.request.size</code>, <code>sync.outbound.response.size{target, operation, company}</code>:
+ * body sizes in bytes</li>
+ * <li><code>sync.outbound.in.flight{target, company}</code>: requests sent and not yet read</li>
+ * </ul>
+ * Each attempt of a retried call is a request of its own. Requests made outside of {@link #tagged} count
+ * as target <code>other</code>. A longer unit of work, like a reconciliation run, counts its own requests
+ * with {@link #counted}.
+ */
+@Component
+public class OutboundMetrics implements ClientHttpRequestInterceptor {
+	public static final String WOOCOMMERCE = "woocommerce";
+	public static final String MOQUI = "moqui";
+	public static final String INVENTORY = "inventory";
+	public static final String NOTIFICATION = "notification";
+	
+	private static final CallTags UNTAGGED = new CallTags("other", "", "");
+	private static final ThreadLocal<CallTags> CURRENT = new ThreadLocal<>();
+	private static final ThreadLocal<CallCounts> COUNTS = new ThreadLocal<>();
+	
+	private final MeterRegistry meterRegistry;
+	private final Map<Tags, AtomicInteger> inFlight = new ConcurrentHashMap<>();
+	
+	public OutboundMetrics(final MeterRegistry meterRegistry) {
+		this.meterRegistry = meterRegistry;
+	}
+	
+	/**
+	 * Tags the requests the call makes on the current thread
+	 */
+	public static <T> T tagged(final String target, final String operation, final Integer companyId, final Supplier<T> call) {
+		final CallTags previous = CURRENT.get();
+		CURRENT.set(new CallTags(target, operation, companyId == null ? "" : String.valueOf(companyId)));
+		try {
+			return call.get();
+		} finally {
+			if (previous == null)
+				CURRENT.remove();
+			else
+				CURRENT.set(previous);
+		}
+	}
+	
+	/**
+	 * Counts the requests the call makes on the current thread, and on the tasks it hands over with
+	 * {@link #inheritCounts}, into the counts
+	 */
+	public static void counted(final CallCounts counts, final Runnable call) {
+		final CallCounts previous = COUNTS.get();
+		COUNTS.set(counts);
+		try {
+			call.run();
+		} finally {
+			restoreCounts(previous);
+		}
+	}
+	
+	/**
+	 * The task counts its requests where the calling thread does, when it runs on another thread
+	 */
+	public static <T> Callable<T> inheritCounts(final Callable<T> task) {
+		final CallCounts counts = COUNTS.get();
+		if (counts == null)
+			return task;
+		return () ->
+		{
+			final CallCounts previous = COUNTS.get();
+			COUNTS.set(counts);
+			try {
+				return task.call();
+			} finally {
+				restoreCounts(previous);
+			}
+		};
+	}
+	
+	private static void restoreCounts(final CallCounts previous) {
+		if (previous == null)
+			COUNTS.remove();
+		else
+			COUNTS.set(previous);
+	}
+	
+	@Override
+	public ClientHttpResponse intercept(final HttpRequest request, final byte[] body, final ClientHttpRequestExecution execution)
+			throws IOException {
+		final CallTags callTags = CURRENT.get() != null ? CURRENT.get() : UNTAGGED;
+		final CallCounts counts = COUNTS.get();
+		final Tags tags = Tags.of("target", callTags.target(), "operation", callTags.operation(), "company", callTags.company());
+		final AtomicInteger requestsInFlight = inFlight.computeIfAbsent(Tags.of("target", callTags.target(), "company", callTags.company()),
+				inFlightTags -> meterRegistry.gauge("sync.outbound.in.flight", inFlightTags, new AtomicInteger()));
+		
+		size("sync.outbound.request.size", "Request body sizes", tags).record(body.length);
+		requestsInFlight.incrementAndGet();
+		final long start = System.nanoTime();
+		final ClientHttpResponse response;
+		try {
+			response = execution.execute(request, body);
+		} catch (final IOException | RuntimeException e) {
+			requestsInFlight.decrementAndGet();
+			record(tags, counts, "IO_ERROR", System.nanoTime() - start);
+			throw e;
+		}
+		return new MeasuredResponse(response, tags, counts, requestsInFlight, start);
+	}
+	
+	private void record(final Tags tags, final CallCounts counts, final String outcome, final long nanos) {
+		Timer.builder("sync.outbound.requests")
+		.description("Outbound http requests, until their response was read")
+		.tags(tags)
+		.tag("outcome", outcome)
+		.publishPercentileHistogram()
+		.minimumExpectedValue(Duration.ofMillis(5))
+		.maximumExpectedValue(Duration.ofMinutes(2))
+		.register(meterRegistry)
+		.record(Duration.ofNanos(nanos));
+		final boolean error = !outcome.equals("2xx") && !outcome.equals("3xx");
+		if (error)
+			meterRegistry.counter("sync.outbound.errors", tags.and("outcome", outcome)).increment();
+		if (counts != null)
+			counts.add(error);
+	}
+	
+	private DistributionSummary size(final String name, final String description, final Tags tags) {
+		return DistributionSummary.builder(name)
+				.description(description)
+				.baseUnit("bytes")
+				.tags(tags)
+				.register(meterRegistry);
+	}
+	
+	private static String statusClass(final HttpStatusCode status) {
+		return status.value() / 100 + "xx";
+	}
+	
+	private record CallTags(String target, String operation, String company) {}
+	
+	/**
+	 * Requests and failed(4xx, 5xx, IO_ERROR) requests of a unit of work; thread safe
+	 */
+	public static class CallCounts {
+		private final AtomicInteger requests;
+		private final AtomicInteger errors;
+		
+		/**
+		 * Continues from the given counts
+		 */
+		public CallCounts(final int requests, final int errors) {
+			this.requests = new AtomicInteger(requests);
+			this.errors = new AtomicInteger(errors);
+		}
+		
+		public int requests() {
+			return requests.get();
+		}
+		
+		public int errors() {
+			return errors.get();
+		}
+		
+		private void add(final boolean error) {
+			requests.incrementAndGet();
+			if (error)
+				errors.incrementAndGet();
+		}
+	}
+	
+	/**
+	 * Records the request once its response is closed, which RestTemplate does after reading it
+	 */
+	private class MeasuredResponse implements ClientHttpResponse {
+		private final ClientHttpResponse delegate;
+		private final Tags tags;
+		private final CallCounts counts;
+		private final AtomicInteger requestsInFlight;
+		private final long start;
+		private final AtomicBoolean closed = new AtomicBoolean();
+		private CountingInputStream body;
+		
+		MeasuredResponse(final ClientHttpResponse delegate, final Tags tags, final CallCounts counts, final AtomicInteger requestsInFlight,
+				final long start) {
+			this.delegate = delegate;
+			this.tags = tags;
+			this.counts = counts;
+			this.requestsInFlight = requestsInFlight;
+			this.start = start;
+		}
+		
+		@Override
+		public HttpStatusCode getStatusCode() throws IOException {
+			return delegate.getStatusCode();
+		}
+		
+		@Override
+		@Deprecated
+		public int getRawStatusCode() throws IOException {
+			return delegate.getRawStatusCode();
+		}
+		
+		@Override
+		public String getStatusText() throws IOException {
+			return delegate.getStatusText();
+		}
+		
+		@Override
+		public HttpHeaders getHeaders() {
+			return delegate.getHeaders();
+		}
+		
+		@Override
+		public InputStream getBody() throws IOException {
+			if (body == null)
+				body = new CountingInputStream(delegate.getBody());
+			return body;
+		}
+		
+		@Override
+		public void close() {
+			try {
+				delegate.close();
+			} finally {
+				if (closed.compareAndSet(false, true))
+					finish();
+			}
+		}
+		
+		private void finish() {
+			requestsInFlight.decrementAndGet();
+			String outcome;
+			try {
+				outcome = statusClass(delegate.getStatusCode());
+			} catch (final IOException e) {
+				outcome = "IO_ERROR";
+			}
+			record(tags, counts, outcome, System.nanoTime() - start);
+			// a body that was not read to its end is measured by its declared length
+			final long read = body != null ? body.count : 0;
+			size("sync.outbound.response.size", "Response body sizes", tags).record(Math.max(read, delegate.getHeaders().getContentLength()));
+		}
+	}
+	
+	private static class CountingInputStream extends FilterInputStream {
+		private long count;
+		
+		CountingInputStream(final InputStream in) {
+			super(in);
+		}
+		
+		@Override
+		public int read() throws IOException {
+			final int b = super.read();
+			if (b >= 0)
+				count++;
+			return b;
+		}
+		
+		@Override
+		public int read(final byte[] b, final int off, final int len) throws IOException {
+			final int n = super.read(b, off, len);
+			if (n > 0)
+				count += n;
+			return n;
+		}
+		
+		@Override
+		public long skip(final long n) throws IOException {
+			final long skipped = super.skip(n);
+			count += skipped;
+			return skipped;
+		}
+	}
+}
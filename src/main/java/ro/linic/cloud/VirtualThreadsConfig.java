@@ -0,0 +1,23 @@
+package ro.linic.cloud;
+
+import java.util.concurrent.Executors;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Opt-in execution mode: the web requests are handled on virtual threads, like the outbound fan-out
+ * (see <code>SyncExecutors</code>), so requests blocked on woocommerce, moqui or the inventory service
+ * do not hold platform threads.
+ */
+@Configuration
+@ConditionalOnProperty(name = "sync.virtual-threads.enabled", havingValue = "true")
+public class VirtualThreadsConfig {
+	
+	@Bean
+	public TomcatProtocolHandlerCustomizer<?> virtualThreadsProtocolHandler() {
+		return protocolHandler -> protocolHandler.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+	}
+}
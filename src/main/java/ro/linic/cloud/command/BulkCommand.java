@@ -0,0 +1,20 @@
+package ro.linic.cloud.command;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import ro.linic.cloud.entity.OutboxCommand.Type;
+
+/**
+ * One item of a mixed /update/bulk request
+ */
+@Data @NoArgsConstructor @AllArgsConstructor
+public class BulkCommand {
+	Type type;
+	/**
+	 * The command, as posted to the single endpoint of its type
+	 */
+	JsonNode command;
+}
@@ -5,7 +5,7 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 @Data @NoArgsConstructor @AllArgsConstructor
-public class ChangeNameCommand {
+public class ChangeNameCommand implements ProductCommand {
 	Integer companyId;
 	Integer productId;
 	String barcode;
@@ -7,7 +7,7 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 @Data @NoArgsConstructor @AllArgsConstructor
-public class ChangePriceCommand {
+public class ChangePriceCommand implements ProductCommand {
 	Integer companyId;
 	Integer productId;
 	BigDecimal pricePerUom;
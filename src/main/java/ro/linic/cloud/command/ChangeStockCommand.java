@@ -7,7 +7,7 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 @Data @NoArgsConstructor @AllArgsConstructor
-public class ChangeStockCommand {
+public class ChangeStockCommand implements ProductCommand {
 	Integer companyId;
 	Integer productId;
 	BigDecimal stock;
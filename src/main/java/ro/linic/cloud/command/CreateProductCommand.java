@@ -7,7 +7,7 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 @Data @NoArgsConstructor @AllArgsConstructor
-public class CreateProductCommand {
+public class CreateProductCommand implements ProductCommand {
 	Integer companyId;
 	Integer productId;
 	String barcode;
@@ -5,7 +5,7 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 @Data @NoArgsConstructor @AllArgsConstructor
-public class DeleteProductCommand {
+public class DeleteProductCommand implements ProductCommand {
 	Integer companyId;
 	Integer productId;
 }
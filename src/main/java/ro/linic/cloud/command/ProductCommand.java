@@ -0,0 +1,9 @@
+package ro.linic.cloud.command;
+
+/**
+ * A command of the /update endpoints, addressed to one product of a company
+ */
+public interface ProductCommand {
+	Integer getCompanyId();
+	Integer getProductId();
+}
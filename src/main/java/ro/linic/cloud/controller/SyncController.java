@@ -1,9 +1,12 @@
 package ro.linic.cloud.controller;
 
+import java.net.URI;
 import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -16,16 +19,23 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import io.swagger.v3.oas.annotations.Operation;
+import ro.linic.cloud.entity.ReconciliationRun;
 import ro.linic.cloud.entity.SyncConnection;
+import ro.linic.cloud.pojo.RunSummary;
+import ro.linic.cloud.service.OnboardingRunningException;
+import ro.linic.cloud.service.OnboardingService;
 import ro.linic.cloud.service.SyncService;
 
 @RestController
 @RequestMapping("/sync")
 public class SyncController {
+	private static final int MAX_RUNS = 500;
 
 	@Autowired private SyncService syncService;
+	@Autowired private OnboardingService onboardingService;
 	
-	@Operation(summary = "Main operation for creating a SyncConnection and bulk update")
+	@Operation(summary = "Main operation for creating a SyncConnection and bulk update; "
+			+ "the products are reconciled in a background job, whose id is returned")
 	@PostMapping
     public ResponseEntity<Object> createSyncConnection(@RequestBody final SyncConnection syncConnection) {
 		if (syncConnection.getCompanyId() == null)
@@ -35,15 +45,63 @@ public class SyncController {
 		if (syncConnection.getWebsiteUrl() == null)
 			return new ResponseEntity<>(Map.of("websiteUrl", "required"), HttpStatus.BAD_REQUEST);
 		
-        return new ResponseEntity<>(syncService.createConnection(syncConnection), HttpStatus.OK);
+		final ReconciliationRun run;
+		try {
+			run = onboardingService.start(syncConnection);
+		} catch (final RejectedExecutionException e) {
+			return new ResponseEntity<>(Map.of("error", "Too many onboardings queued, retry later"), HttpStatus.SERVICE_UNAVAILABLE);
+		} catch (final OnboardingRunningException e) {
+			return new ResponseEntity<>(Map.of("error", String.valueOf(e.getMessage())), HttpStatus.CONFLICT);
+		}
+        return ResponseEntity.accepted()
+        		.location(URI.create("/sync/jobs/"+run.getId()))
+        		.body(Map.of("jobId", run.getId(), "syncConnectionId", run.getSyncConnection().getId()));
+    }
+	
+	@Operation(summary = "Progress of an onboarding job: processed/total products and the per category counters")
+	@GetMapping("/jobs/{jobId}")
+    public ResponseEntity<Object> getJob(@PathVariable(name = "jobId") final Long jobId) {
+		return onboardingService.progress(jobId)
+				.<ResponseEntity<Object>>map(progress -> new ResponseEntity<>(progress, HttpStatus.OK))
+				.orElseGet(() -> new ResponseEntity<>(HttpStatus.NOT_FOUND));
+    }
+	
+	@Operation(summary = "The report written so far by an onboarding job running on this instance")
+	@GetMapping(value = "/jobs/{jobId}/report", produces = MediaType.TEXT_PLAIN_VALUE)
+    public ResponseEntity<String> getJobReport(@PathVariable(name = "jobId") final Long jobId) {
+		return onboardingService.report(jobId)
+				.map(ResponseEntity::ok)
+				.orElseGet(() -> new ResponseEntity<>(HttpStatus.NOT_FOUND));
+    }
+	
+	@Operation(summary = "Stops an onboarding job before its next page; posting the connection again resumes it")
+	@DeleteMapping("/jobs/{jobId}")
+    public ResponseEntity<Object> cancelJob(@PathVariable(name = "jobId") final Long jobId) {
+		if (!onboardingService.cancel(jobId))
+			return new ResponseEntity<>(Map.of("error", "job not running"), HttpStatus.NOT_FOUND);
+        return new ResponseEntity<>("OK", HttpStatus.ACCEPTED);
+    }
+	
+	@Operation(summary = "History of the reconciliation runs of a connection, newest first: onboarding and drift checks "
+			+ "with their counters, phase timings and http requests")
+	@GetMapping("/{id}/runs")
+    public ResponseEntity<Object> getRuns(@PathVariable(name = "id") final Integer syncConnectionId,
+    		@RequestParam(required = false) final ReconciliationRun.Kind kind,
+    		@RequestParam(defaultValue = "50") final int limit) {
+		if (limit < 1 || limit > MAX_RUNS)
+			return new ResponseEntity<>(Map.of("limit", "between 1 and "+MAX_RUNS), HttpStatus.BAD_REQUEST);
+        return new ResponseEntity<>(syncService.findRuns(syncConnectionId, kind, limit).stream()
+        		.map(RunSummary::of)
+        		.toList(), HttpStatus.OK);
     }
 	
 	@PutMapping("/{id}")
     public ResponseEntity<Object> updateConnection(@PathVariable(name = "id") final Integer syncConnectionId,
     		@RequestParam final String inventoryServiceUrl, @RequestParam final String websiteUrl,
-    		@RequestParam(required = false) final String key, @RequestParam(required = false) final String secret) {
-        return new ResponseEntity<>(syncService.updateConnection(syncConnectionId, inventoryServiceUrl, websiteUrl, key, secret),
-        		HttpStatus.OK);
+    		@RequestParam(required = false) final String key, @RequestParam(required = false) final String secret,
+    		@RequestParam(required = false) final Integer pageFetchConcurrency) {
+        return new ResponseEntity<>(syncService.updateConnection(syncConnectionId, inventoryServiceUrl, websiteUrl, key, secret,
+        		pageFetchConcurrency), HttpStatus.OK);
     }
 	
 	@DeleteMapping("/{id}")
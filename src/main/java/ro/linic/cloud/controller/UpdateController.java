@@ -1,48 +1,155 @@
 package ro.linic.cloud.controller;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import ro.linic.cloud.command.BulkCommand;
 import ro.linic.cloud.command.ChangeNameCommand;
 import ro.linic.cloud.command.ChangePriceCommand;
 import ro.linic.cloud.command.ChangeStockCommand;
 import ro.linic.cloud.command.CreateProductCommand;
 import ro.linic.cloud.command.DeleteProductCommand;
-import ro.linic.cloud.pojo.Product;
+import ro.linic.cloud.command.ProductCommand;
+import ro.linic.cloud.entity.OutboxCommand;
+import ro.linic.cloud.entity.OutboxCommand.Type;
+import ro.linic.cloud.pojo.CommandResult;
+import ro.linic.cloud.service.OutboxService;
 import ro.linic.cloud.service.SyncService;
 
+/**
+ * With the outbox enabled(default) the commands are only persisted and acknowledged with 202 ACCEPTED;
+ * they are dispatched to woocommerce and moqui in the background. Otherwise they are applied synchronously.
+ * Every command also has a <code>/bulk</code> variant taking an array, and <code>/update/bulk</code> takes a
+ * mixed list; these answer one {@link CommandResult} per command.
+ */
 @RestController
 @RequestMapping("/update")
 public class UpdateController {
 
+	@Value("${sync.outbox.enabled:true}") private boolean outboxEnabled;
+	@Value("${sync.bulk.max-commands:1000}") private int maxBulkCommands;
+	
 	@Autowired private SyncService syncService;
+	@Autowired private OutboxService outboxService;
+	@Autowired private ObjectMapper objectMapper;
 
 	@PostMapping("/createProduct")
-    public ResponseEntity<String> createProduct(@RequestBody final CreateProductCommand command) {
+    public ResponseEntity<?> createProduct(@RequestBody final CreateProductCommand command) {
+		if (outboxEnabled)
+			return accepted(outboxService.enqueue(Type.CREATE_PRODUCT, command.getCompanyId(), command.getProductId(), command));
         return syncService.createProduct(command);
     }
 
 	@PostMapping("/deleteProduct")
-    public ResponseEntity<String> deleteProduct(@RequestBody final DeleteProductCommand command) {
+    public ResponseEntity<?> deleteProduct(@RequestBody final DeleteProductCommand command) {
+		if (outboxEnabled)
+			return accepted(outboxService.enqueue(Type.DELETE_PRODUCT, command.getCompanyId(), command.getProductId(), command));
         return syncService.deleteProduct(command);
     }
 	
 	@PostMapping("/price")
-    public ResponseEntity<String> updatePrice(@RequestBody final ChangePriceCommand command) {
+    public ResponseEntity<?> updatePrice(@RequestBody final ChangePriceCommand command) {
+		if (outboxEnabled)
+			return accepted(outboxService.enqueue(Type.PRICE, command.getCompanyId(), command.getProductId(), command));
         return syncService.updatePrice(command);
     }
 	
 	@PostMapping("/stock")
-    public ResponseEntity<Product> updateStock(@RequestBody final ChangeStockCommand command) {
+    public ResponseEntity<?> updateStock(@RequestBody final ChangeStockCommand command) {
+		if (outboxEnabled)
+			return accepted(outboxService.enqueue(Type.STOCK, command.getCompanyId(), command.getProductId(), command));
         return syncService.updateStock(command);
     }
 	
 	@PostMapping("/name")
-    public ResponseEntity<String> updateName(@RequestBody final ChangeNameCommand command) {
+    public ResponseEntity<?> updateName(@RequestBody final ChangeNameCommand command) {
+		if (outboxEnabled)
+			return accepted(outboxService.enqueue(Type.NAME, command.getCompanyId(), command.getProductId(), command));
         return syncService.updateName(command);
     }
+	
+	@PostMapping("/createProduct/bulk")
+    public ResponseEntity<?> createProducts(@RequestBody final List<CreateProductCommand> commands) {
+		return applyAll(commands);
+    }
+	
+	@PostMapping("/deleteProduct/bulk")
+    public ResponseEntity<?> deleteProducts(@RequestBody final List<DeleteProductCommand> commands) {
+		return applyAll(commands);
+    }
+	
+	@PostMapping("/price/bulk")
+    public ResponseEntity<?> updatePrices(@RequestBody final List<ChangePriceCommand> commands) {
+		return applyAll(commands);
+    }
+	
+	@PostMapping("/stock/bulk")
+    public ResponseEntity<?> updateStocks(@RequestBody final List<ChangeStockCommand> commands) {
+		return applyAll(commands);
+    }
+	
+	@PostMapping("/name/bulk")
+    public ResponseEntity<?> updateNames(@RequestBody final List<ChangeNameCommand> commands) {
+		return applyAll(commands);
+    }
+	
+	/**
+	 * Commands of any type, applied in their order
+	 */
+	@PostMapping("/bulk")
+    public ResponseEntity<?> bulk(@RequestBody final List<BulkCommand> bulkCommands) {
+		final List<ProductCommand> commands = new ArrayList<>(bulkCommands.size());
+		for (int i = 0; i < bulkCommands.size(); i++)
+		{
+			final BulkCommand bulkCommand = bulkCommands.get(i);
+			if (bulkCommand.getType() == null || bulkCommand.getCommand() == null)
+				return invalid(i, "type and command required");
+			try {
+				commands.add(objectMapper.treeToValue(bulkCommand.getCommand(), bulkCommand.getType().commandClass()));
+			} catch (final JsonProcessingException e) {
+				return invalid(i, e.getOriginalMessage());
+			}
+		}
+		return applyAll(commands);
+    }
+	
+	/**
+	 * Answers one result per command, in their order; 202 ACCEPTED when they were queued in the outbox.
+	 * The whole request is rejected if any command is invalid.
+	 */
+	private ResponseEntity<?> applyAll(final List<? extends ProductCommand> commands) {
+		if (commands.size() > maxBulkCommands)
+			return new ResponseEntity<>(Map.of("error", "At most "+maxBulkCommands+" commands per request"),
+					HttpStatus.PAYLOAD_TOO_LARGE);
+		for (int i = 0; i < commands.size(); i++)
+			if (commands.get(i) == null || commands.get(i).getCompanyId() == null || commands.get(i).getProductId() == null)
+				return invalid(i, "companyId and productId required");
+		
+		if (outboxEnabled)
+			return ResponseEntity.accepted().body(outboxService.enqueueAll(commands).stream()
+					.map(CommandResult::queued)
+					.toList());
+		return ResponseEntity.ok(syncService.applyAll(commands));
+	}
+	
+	private static ResponseEntity<?> invalid(final int index, final String error) {
+		return new ResponseEntity<>(Map.of("index", index, "error", String.valueOf(error)), HttpStatus.BAD_REQUEST);
+	}
+	
+	private static ResponseEntity<?> accepted(final OutboxCommand command) {
+		return ResponseEntity.accepted().body(Map.of("outboxId", command.getId()));
+	}
 }
@@ -0,0 +1,95 @@
+package ro.linic.cloud.entity;
+
+import java.time.Instant;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import jakarta.validation.constraints.NotNull;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+import ro.linic.cloud.command.ChangeNameCommand;
+import ro.linic.cloud.command.ChangePriceCommand;
+import ro.linic.cloud.command.ChangeStockCommand;
+import ro.linic.cloud.command.CreateProductCommand;
+import ro.linic.cloud.command.DeleteProductCommand;
+import ro.linic.cloud.command.ProductCommand;
+
+/**
+ * A product command received on /update, persisted in the request transaction
+ * and dispatched asynchronously to woocommerce and moqui.
+ */
+@Entity
+// index columns are the logical names hibernate resolves: the property names
+@Table(indexes = {
+		@Index(name = "ix_outbox_command_due", columnList = "status, nextAttemptAt"),
+		@Index(name = "ix_outbox_command_product", columnList = "companyId, productId, id"),
+		@Index(name = "ix_outbox_command_processed", columnList = "status, processedAt")})
+@Getter @Setter @NoArgsConstructor @ToString
+public class OutboxCommand {
+	
+	public enum Type {
+		CREATE_PRODUCT(CreateProductCommand.class),
+		DELETE_PRODUCT(DeleteProductCommand.class),
+		PRICE(ChangePriceCommand.class),
+		STOCK(ChangeStockCommand.class),
+		NAME(ChangeNameCommand.class);
+		
+		private final Class<? extends ProductCommand> commandClass;
+		
+		Type(final Class<? extends ProductCommand> commandClass) {
+			this.commandClass = commandClass;
+		}
+		
+		public Class<? extends ProductCommand> commandClass() {
+			return commandClass;
+		}
+		
+		public static Type of(final ProductCommand command) {
+			for (final Type type : values())
+				if (type.commandClass.isInstance(command))
+					return type;
+			throw new IllegalArgumentException("Unknown command "+command);
+		}
+	}
+	
+	public enum Status {
+		PENDING, DONE, FAILED
+	}
+
+	@Id
+	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@Setter(AccessLevel.NONE)
+	private Long id;
+
+	@NotNull @Enumerated(EnumType.STRING) private Type type;
+	@NotNull private Integer companyId;
+	@NotNull private Integer productId;
+	/**
+	 * The original command, as json
+	 */
+	@NotNull @Column(length = 4000) private String payload;
+	
+	@NotNull @Enumerated(EnumType.STRING) private Status status;
+	private int attempts;
+	/**
+	 * When the command can be picked up again; while dispatching it acts as a lease
+	 */
+	@NotNull private Instant nextAttemptAt;
+	@NotNull private Instant createdAt;
+	private Instant processedAt;
+	@Column(length = 2000) private String lastError;
+	
+	// a retry only repeats the targets that didn't accept the command yet
+	private boolean wooDispatched;
+	private boolean moquiDispatched;
+}
@@ -0,0 +1,107 @@
+package ro.linic.cloud.entity;
+
+import java.time.Instant;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.JoinColumn;
+import jakarta.persistence.ManyToOne;
+import jakarta.persistence.Table;
+import jakarta.validation.constraints.NotNull;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+/**
+ * Progress of a reconciliation of a {@link SyncConnection}: its onboarding or a later drift check. Each woocommerce
+ * page is committed together with this cursor, so an interrupted onboarding resumes after its last committed page.
+ */
+@Entity
+// index columns are the logical names hibernate resolves: the property or join column names
+@Table(indexes = @Index(name = "ix_reconciliation_run_connection", columnList = "sync_connection_id, id"))
+@Getter @Setter @NoArgsConstructor @ToString
+public class ReconciliationRun {
+	
+	public enum Kind {
+		ONBOARDING,
+		/**
+		 * Scheduled full comparison of an onboarded connection; never resumed, the next one starts over
+		 */
+		DRIFT
+	}
+	
+	public enum Status {
+		RUNNING, COMPLETED, FAILED,
+		/**
+		 * Stopped on request; resumed like a failed run
+		 */
+		CANCELLED
+	}
+
+	@Id
+	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@Setter(AccessLevel.NONE)
+	private Long id;
+
+	@NotNull @ManyToOne(optional = false) @JoinColumn(name = "sync_connection_id") private SyncConnection syncConnection;
+	@NotNull @Enumerated(EnumType.STRING) private Kind kind;
+	@NotNull @Enumerated(EnumType.STRING) private Status status;
+	/**
+	 * The last woocommerce page whose sync lines are committed, 0 before the first one
+	 */
+	private int lastPage;
+	/**
+	 * Product count of the website when the run started, null if woocommerce did not report it
+	 */
+	private Integer totalProducts;
+	
+	// report counters, summed over all the committed pages
+	private int products;
+	private int deactivated;
+	private int nameDifferences;
+	private int priceChanges;
+	private int stockChanges;
+	
+	/**
+	 * Time spent in each phase, summed over all the attempts of the run: waiting for the woocommerce pages,
+	 * matching against the inventory, writing to the website and committing the pages. Matching and writing
+	 * run on concurrent workers, so their time is the sum of the workers' time and may exceed the run's duration.
+	 */
+	private long fetchMillis;
+	private long matchMillis;
+	private long writeMillis;
+	private long persistMillis;
+	/**
+	 * Outbound http requests of the run, every retry included, and the ones that failed(4xx, 5xx, IO error)
+	 */
+	private int httpRequests;
+	private int httpErrors;
+	
+	@NotNull private Instant startedAt;
+	/**
+	 * Updated with every committed page; a RUNNING run that stopped updating it is considered crashed
+	 */
+	@NotNull private Instant heartbeatAt;
+	private Instant finishedAt;
+	@Column(length = 2000) private String lastError;
+	
+	public ReconciliationRun(final SyncConnection syncConnection, final Instant startedAt) {
+		this(syncConnection, Kind.ONBOARDING, startedAt);
+	}
+	
+	public ReconciliationRun(final SyncConnection syncConnection, final Kind kind, final Instant startedAt) {
+		this.syncConnection = syncConnection;
+		this.kind = kind;
+		this.status = Status.RUNNING;
+		this.startedAt = startedAt;
+		this.heartbeatAt = startedAt;
+	}
+}
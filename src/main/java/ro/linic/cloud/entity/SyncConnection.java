@@ -1,9 +1,16 @@
 package ro.linic.cloud.entity;
 
+import java.time.Instant;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonProperty.Access;
+
 import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
 import jakarta.validation.constraints.NotNull;
 import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
@@ -14,6 +21,8 @@ import lombok.ToString;
 import lombok.With;
 
 @Entity
+// constraint and index columns are the logical names hibernate resolves: the property names
+@Table(uniqueConstraints = @UniqueConstraint(name = "uk_sync_connection_company", columnNames = "companyId"))
 @Getter @Setter @NoArgsConstructor @AllArgsConstructor @ToString @With
 public class SyncConnection {
 
@@ -28,4 +37,20 @@ public class SyncConnection {
 	@NotNull private String websiteUrl;
 	private String websiteKey;
 	private String websiteSecret;
+	/**
+	 * How many woocommerce product pages to fetch concurrently when pulling the whole catalog;
+	 * when null the woocommerce.page-fetch.concurrency default applies
+	 */
+	private Integer pageFetchConcurrency;
+	/**
+	 * High-water mark of the delta sync: woocommerce products modified since then are not reconciled yet.
+	 * Set when the onboarding completes and advanced by every delta sync; null before
+	 */
+	@JsonProperty(access = Access.READ_ONLY)
+	private Instant deltaSyncedAt;
+	
+	public SyncConnection(final Integer id, final Integer companyId, final String inventoryServiceUrl, final String websiteUrl,
+			final String websiteKey, final String websiteSecret) {
+		this(id, companyId, inventoryServiceUrl, websiteUrl, websiteKey, websiteSecret, null, null);
+	}
 }
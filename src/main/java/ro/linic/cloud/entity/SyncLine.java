@@ -4,7 +4,12 @@ import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
 import jakarta.validation.constraints.NotNull;
 import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
@@ -14,18 +19,35 @@ import lombok.Setter;
 import lombok.ToString;
 
 @Entity
+// constraint and index columns are the logical names hibernate resolves: the property or join column names
+@Table(uniqueConstraints = @UniqueConstraint(name = "uk_sync_line_connection_product",
+		columnNames = {"sync_connection_id", "productId"}),
+		indexes = @Index(name = "ix_sync_line_connection_woo", columnList = "sync_connection_id, wooId"))
 @Getter @Setter @NoArgsConstructor @AllArgsConstructor @ToString
 public class SyncLine {
 	
+	// a pooled sequence instead of IDENTITY, so inserts can be batched
 	@Id
-	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "sync_line_seq")
+	@SequenceGenerator(name = "sync_line_seq", sequenceName = "sync_line_seq", allocationSize = 50)
 	@Setter(AccessLevel.NONE)
 	private Long id;
 
 	@ManyToOne
+	@JoinColumn(name = "sync_connection_id")
 	private SyncConnection syncConnection;
 
 	@NotNull private Integer productId;
 	@NotNull private Integer wooId;
 	private String wooName;
+	/**
+	 * Fingerprint of the woocommerce product as last written or confirmed by the sync; a woocommerce product
+	 * still matching it was not changed by anyone else since
+	 */
+	private Long fingerprint;
+	
+	public SyncLine(final Long id, final SyncConnection syncConnection, final Integer productId, final Integer wooId,
+			final String wooName) {
+		this(id, syncConnection, productId, wooId, wooName, null);
+	}
 }
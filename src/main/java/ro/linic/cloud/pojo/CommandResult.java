@@ -0,0 +1,51 @@
+package ro.linic.cloud.pojo;
+
+import org.springframework.http.HttpStatus;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import ro.linic.cloud.command.ProductCommand;
+import ro.linic.cloud.entity.OutboxCommand;
+import ro.linic.cloud.entity.OutboxCommand.Type;
+
+/**
+ * Outcome of one command of a bulk /update request, in the order of the request.
+ */
+@Data @NoArgsConstructor @AllArgsConstructor @Builder
+public class CommandResult {
+	
+	private Type type;
+	private Integer companyId;
+	private Integer productId;
+	/**
+	 * What the single endpoint of the command would have answered: 202 when queued in the outbox,
+	 * otherwise the status of the inventory(moqui) write, or of the website write for the stock
+	 */
+	private int status;
+	private Long outboxId;
+	/**
+	 * Why the website or inventory write failed, null if it succeeded
+	 */
+	private String error;
+	
+	public static CommandResult queued(final OutboxCommand command) {
+		return CommandResult.builder()
+				.type(command.getType())
+				.companyId(command.getCompanyId())
+				.productId(command.getProductId())
+				.status(HttpStatus.ACCEPTED.value())
+				.outboxId(command.getId())
+				.build();
+	}
+	
+	public static CommandResult of(final ProductCommand command, final int status) {
+		return CommandResult.builder()
+				.type(Type.of(command))
+				.companyId(command.getCompanyId())
+				.productId(command.getProductId())
+				.status(status)
+				.build();
+	}
+}
@@ -0,0 +1,60 @@
+package ro.linic.cloud.pojo;
+
+import java.time.Instant;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import ro.linic.cloud.entity.ReconciliationRun;
+import ro.linic.cloud.entity.ReconciliationRun.Status;
+
+/**
+ * Progress of a background onboarding job, as of its last committed woocommerce page.
+ */
+@Data @NoArgsConstructor @AllArgsConstructor @Builder
+public class OnboardingProgress {
+	
+	private Long jobId;
+	private Integer syncConnectionId;
+	private Integer companyId;
+	private Status status;
+	private boolean cancelRequested;
+	
+	private int processed;
+	/**
+	 * Product count of the website, null if unknown
+	 */
+	private Integer total;
+	private int lastPage;
+	private int deactivated;
+	private int nameDifferences;
+	private int priceChanges;
+	private int stockChanges;
+	
+	private Instant startedAt;
+	private Instant heartbeatAt;
+	private Instant finishedAt;
+	private String lastError;
+	
+	public static OnboardingProgress of(final ReconciliationRun run, final boolean cancelRequested) {
+		return OnboardingProgress.builder()
+				.jobId(run.getId())
+				.syncConnectionId(run.getSyncConnection().getId())
+				.companyId(run.getSyncConnection().getCompanyId())
+				.status(run.getStatus())
+				.cancelRequested(cancelRequested)
+				.processed(run.getProducts())
+				.total(run.getTotalProducts())
+				.lastPage(run.getLastPage())
+				.deactivated(run.getDeactivated())
+				.nameDifferences(run.getNameDifferences())
+				.priceChanges(run.getPriceChanges())
+				.stockChanges(run.getStockChanges())
+				.startedAt(run.getStartedAt())
+				.heartbeatAt(run.getHeartbeatAt())
+				.finishedAt(run.getFinishedAt())
+				.lastError(run.getLastError())
+				.build();
+	}
+}
@@ -0,0 +1,74 @@
+package ro.linic.cloud.pojo;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * One pending write of a woocommerce product, either sent alone or as an item of a bulk request.
+ */
+@Getter @ToString
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public class ProductWrite {
+	public enum Kind {
+		/**
+		 * Overwrites barcode, name, price and stock
+		 */
+		PUT,
+		/**
+		 * Sends only the non null fields
+		 */
+		PATCH,
+		DEACTIVATE;
+	}
+
+	private final Kind kind;
+	private final Product product;
+
+	public static ProductWrite put(final Product wooProduct) {
+		return new ProductWrite(Kind.PUT, wooProduct);
+	}
+
+	public static ProductWrite patch(final Product wooProduct) {
+		return new ProductWrite(Kind.PATCH, wooProduct);
+	}
+
+	public static ProductWrite deactivate(final int wooId) {
+		return new ProductWrite(Kind.DEACTIVATE, Product.builder().id(wooId).build());
+	}
+
+	public Integer getWooId() {
+		return product.getId();
+	}
+
+	/**
+	 * @return the woocommerce fields to send, without the product id
+	 */
+	public Map<String, Object> fields() {
+		final Map<String, Object> jsonMap = new HashMap<>();
+		switch (kind) {
+		case PUT -> {
+			jsonMap.put(Product.WOO_BARCODE_KEY, product.getBarcode());
+			jsonMap.put(Product.WOO_NAME_KEY, product.getName());
+			jsonMap.put(Product.WOO_PRICE_KEY, product.getPricePerUom());
+			jsonMap.put(Product.WOO_STOCK_KEY, product.getStock());
+		}
+		case PATCH -> {
+			if (product.getBarcode() != null)
+				jsonMap.put(Product.WOO_BARCODE_KEY, product.getBarcode());
+			if (product.getName() != null)
+				jsonMap.put(Product.WOO_NAME_KEY, product.getName());
+			if (product.getPricePerUom() != null)
+				jsonMap.put(Product.WOO_PRICE_KEY, product.getPricePerUom());
+			if (product.getStock() != null)
+				jsonMap.put(Product.WOO_STOCK_KEY, product.getStock());
+		}
+		case DEACTIVATE -> jsonMap.put("catalog_visibility", "hidden");
+		}
+		return jsonMap;
+	}
+}
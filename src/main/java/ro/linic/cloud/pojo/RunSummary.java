@@ -0,0 +1,81 @@
+package ro.linic.cloud.pojo;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import ro.linic.cloud.entity.ReconciliationRun;
+import ro.linic.cloud.entity.ReconciliationRun.Kind;
+import ro.linic.cloud.entity.ReconciliationRun.Status;
+
+/**
+ * A reconciliation run of the history: its counters, the time of its phases and its http requests.
+ */
+@Data @NoArgsConstructor @AllArgsConstructor @Builder
+public class RunSummary {
+	
+	private Long runId;
+	private Integer companyId;
+	private Kind kind;
+	private Status status;
+	
+	private Instant startedAt;
+	private Instant finishedAt;
+	/**
+	 * From the start to the end of the run, resumed attempts included; null while it did not finish
+	 */
+	private Long durationMillis;
+	/**
+	 * Processed products per second of the duration; null while the run did not finish
+	 */
+	private Double productsPerSecond;
+	
+	private int products;
+	/**
+	 * Product count of the website, null if unknown
+	 */
+	private Integer totalProducts;
+	private int deactivated;
+	private int nameDifferences;
+	private int priceChanges;
+	private int stockChanges;
+	
+	private long fetchMillis;
+	private long matchMillis;
+	private long writeMillis;
+	private long persistMillis;
+	private int httpRequests;
+	private int httpErrors;
+	private String lastError;
+	
+	public static RunSummary of(final ReconciliationRun run) {
+		final Long durationMillis = run.getFinishedAt() != null ?
+				Duration.between(run.getStartedAt(), run.getFinishedAt()).toMillis() : null;
+		return RunSummary.builder()
+				.runId(run.getId())
+				.companyId(run.getSyncConnection().getCompanyId())
+				.kind(run.getKind())
+				.status(run.getStatus())
+				.startedAt(run.getStartedAt())
+				.finishedAt(run.getFinishedAt())
+				.durationMillis(durationMillis)
+				.productsPerSecond(durationMillis != null && durationMillis > 0 ? run.getProducts() * 1000d / durationMillis : null)
+				.products(run.getProducts())
+				.totalProducts(run.getTotalProducts())
+				.deactivated(run.getDeactivated())
+				.nameDifferences(run.getNameDifferences())
+				.priceChanges(run.getPriceChanges())
+				.stockChanges(run.getStockChanges())
+				.fetchMillis(run.getFetchMillis())
+				.matchMillis(run.getMatchMillis())
+				.writeMillis(run.getWriteMillis())
+				.persistMillis(run.getPersistMillis())
+				.httpRequests(run.getHttpRequests())
+				.httpErrors(run.getHttpErrors())
+				.lastError(run.getLastError())
+				.build();
+	}
+}
@@ -0,0 +1,48 @@
+package ro.linic.cloud.repository;
+
+import java.time.Instant;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import ro.linic.cloud.entity.OutboxCommand;
+import ro.linic.cloud.entity.OutboxCommand.Status;
+
+public interface OutboxCommandRepository extends CrudRepository<OutboxCommand, Long> {
+	/**
+	 * Due pending commands, oldest first, locked with SKIP LOCKED so that several instances
+	 * can drain the outbox concurrently. A command is held back while an older pending command for
+	 * the same product is still waiting for its retry or being dispatched, to keep per product ordering.
+	 */
+	@Lock(LockModeType.PESSIMISTIC_WRITE)
+	@QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+	@Query("select c from OutboxCommand c where c.status = :status and c.nextAttemptAt <= :now "
+			+ "and not exists (select p from OutboxCommand p where p.status = :status and p.companyId = c.companyId "
+			+ "and p.productId = c.productId and p.id < c.id and p.nextAttemptAt > :now) "
+			+ "order by c.id")
+	List<OutboxCommand> findDue(@Param("status") Status status, @Param("now") Instant now, Pageable page);
+	
+	/**
+	 * Pending commands of the product newer than <code>afterId</code>, oldest first
+	 */
+	@Lock(LockModeType.PESSIMISTIC_WRITE)
+	@QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+	@Query("select c from OutboxCommand c where c.status = :status and c.companyId = :companyId "
+			+ "and c.productId = :productId and c.id > :afterId order by c.id")
+	List<OutboxCommand> findPendingAfter(@Param("status") Status status, @Param("companyId") Integer companyId,
+			@Param("productId") Integer productId, @Param("afterId") Long afterId);
+	
+	long countByStatus(Status status);
+	
+	@Modifying
+	@Query("delete from OutboxCommand c where c.status = :status and c.processedAt < :before")
+	int deleteProcessedBefore(@Param("status") Status status, @Param("before") Instant before);
+}
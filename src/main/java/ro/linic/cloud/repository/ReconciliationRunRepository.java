@@ -0,0 +1,17 @@
+package ro.linic.cloud.repository;
+
+import java.util.List;
+import java.util.Optional;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.repository.CrudRepository;
+
+import ro.linic.cloud.entity.ReconciliationRun;
+import ro.linic.cloud.entity.ReconciliationRun.Kind;
+
+public interface ReconciliationRunRepository extends CrudRepository<ReconciliationRun, Long> {
+	Optional<ReconciliationRun> findFirstBySyncConnectionIdAndKindOrderByIdDesc(Integer syncConnectionId, Kind kind);
+	List<ReconciliationRun> findBySyncConnectionId(Integer syncConnectionId);
+	List<ReconciliationRun> findBySyncConnectionIdOrderByIdDesc(Integer syncConnectionId, Pageable page);
+	List<ReconciliationRun> findBySyncConnectionIdAndKindOrderByIdDesc(Integer syncConnectionId, Kind kind, Pageable page);
+}
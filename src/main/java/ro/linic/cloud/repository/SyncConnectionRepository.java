@@ -1,13 +1,24 @@
 package ro.linic.cloud.repository;
 
+import java.time.Instant;
 import java.util.Optional;
 
 import org.javers.spring.annotation.JaversSpringDataAuditable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 
 import ro.linic.cloud.entity.SyncConnection;
 
 @JaversSpringDataAuditable
 public interface SyncConnectionRepository extends CrudRepository<SyncConnection, Integer> {
 	Optional<SyncConnection> findByCompanyId(Integer companyId);
+	
+	/**
+	 * Moves only the delta sync mark, without overwriting the connection settings edited meanwhile
+	 */
+	@Modifying
+	@Query("update SyncConnection c set c.deltaSyncedAt = :deltaSyncedAt where c.id = :id")
+	int updateDeltaSyncedAt(@Param("id") Integer id, @Param("deltaSyncedAt") Instant deltaSyncedAt);
 }
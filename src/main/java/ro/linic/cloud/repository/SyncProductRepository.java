@@ -1,18 +1,36 @@
 package ro.linic.cloud.repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 import org.javers.spring.annotation.JaversSpringDataAuditable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.data.rest.core.annotation.RepositoryRestResource;
+import org.springframework.data.rest.core.annotation.RestResource;
+import org.springframework.transaction.annotation.Transactional;
 
 import ro.linic.cloud.entity.SyncLine;
 
 @JaversSpringDataAuditable
 @RepositoryRestResource
-public interface SyncProductRepository extends CrudRepository<SyncLine, Integer> {
+public interface SyncProductRepository extends CrudRepository<SyncLine, Integer>, SyncProductRepositoryCustom {
 	List<SyncLine> findBySyncConnectionIdAndProductIdAndWooId(int syncConnectionId, Integer productId, Integer wooId);
 	List<SyncLine> findBySyncConnectionId(int syncConnectionId);
 	Optional<SyncLine> findBySyncConnectionIdAndProductId(int syncConnectionId, Integer productId);
+	List<SyncLine> findBySyncConnectionIdAndProductIdIn(int syncConnectionId, Collection<Integer> productIds);
+	List<SyncLine> findBySyncConnectionIdAndWooIdIn(int syncConnectionId, Collection<Integer> wooIds);
+	
+	/**
+	 * Stores the fingerprint without loading the line, nor auditing it
+	 */
+	@Transactional
+	@Modifying
+	@Query("update SyncLine l set l.fingerprint = :fingerprint where l.syncConnection.id = :syncConnectionId and l.wooId = :wooId")
+	@RestResource(exported = false)
+	int updateFingerprint(@Param("syncConnectionId") Integer syncConnectionId, @Param("wooId") Integer wooId,
+			@Param("fingerprint") Long fingerprint);
 }
@@ -0,0 +1,20 @@
+package ro.linic.cloud.repository;
+
+import java.util.List;
+
+import ro.linic.cloud.entity.SyncLine;
+
+public interface SyncProductRepositoryCustom {
+	/**
+	 * Persists the new lines of a reconciliation in jdbc batches of hibernate.jdbc.batch_size. Unlike saveAll,
+	 * it is not audited: a javers snapshot per line would cost a few more statements per line, so these lines
+	 * do not show up in /audit/syncLine.
+	 */
+	void insertAll(List<SyncLine> lines);
+	
+	/**
+	 * Stores the fingerprints of the lines, found by their woocommerce ids, in one jdbc batch; without
+	 * loading the lines, nor auditing them
+	 */
+	void updateFingerprints(Integer syncConnectionId, List<SyncLine> lines);
+}
@@ -0,0 +1,34 @@
+package ro.linic.cloud.repository;
+
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import ro.linic.cloud.entity.SyncLine;
+
+class SyncProductRepositoryCustomImpl implements SyncProductRepositoryCustom {
+	@Autowired private JdbcTemplate jdbcTemplate;
+	@PersistenceContext private EntityManager entityManager;
+	
+	@Override
+	public void insertAll(final List<SyncLine> lines) {
+		lines.forEach(entityManager::persist);
+	}
+	
+	@Override
+	public void updateFingerprints(final Integer syncConnectionId, final List<SyncLine> lines) {
+		if (lines.isEmpty())
+			return;
+		
+		jdbcTemplate.batchUpdate("update sync_line set fingerprint = ? where sync_connection_id = ? and woo_id = ?",
+				lines, lines.size(), (statement, line) ->
+				{
+					statement.setObject(1, line.getFingerprint());
+					statement.setInt(2, syncConnectionId);
+					statement.setInt(3, line.getWooId());
+				});
+	}
+}
@@ -0,0 +1,14 @@
+package ro.linic.cloud.service;
+
+/**
+ * No call slot of the {@link WebsiteLimiter} freed up in time. The call was queued locally and never reached
+ * the website, so it says nothing about its health: {@link ResilientCalls} neither retries it nor counts it
+ * against the circuit of the website.
+ */
+class CallSlotUnavailableException extends RuntimeException {
+	private static final long serialVersionUID = 1L;
+	
+	CallSlotUnavailableException(final String message) {
+		super(message);
+	}
+}
@@ -0,0 +1,34 @@
+package ro.linic.cloud.service;
+
+import java.util.logging.Level;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.java.Log;
+import ro.linic.cloud.entity.SyncConnection;
+
+/**
+ * Runs the delta sync of every connection each <code>sync.delta.interval</code>, one connection after the other.
+ * A failed connection keeps its mark and is retried on the next round.
+ */
+@Log
+@Component
+@ConditionalOnProperty(name = "sync.delta.enabled", havingValue = "true")
+public class DeltaSyncScheduler {
+	@Autowired private SyncService syncService;
+	
+	@Scheduled(fixedDelayString = "${sync.delta.interval:PT15M}", initialDelayString = "${sync.delta.initial-delay:PT1M}")
+	public void syncAll() {
+		for (final SyncConnection syncConnection : syncService.findAll())
+		{
+			try {
+				log.info(syncService.deltaSync(syncConnection));
+			} catch (final RuntimeException e) {
+				log.log(Level.SEVERE, "Delta sync of company id "+syncConnection.getCompanyId()+" failed", e);
+			}
+		}
+	}
+}
@@ -0,0 +1,143 @@
+package ro.linic.cloud.service;
+
+import java.io.StringWriter;
+import java.text.MessageFormat;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.stream.StreamSupport;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.java.Log;
+import ro.linic.cloud.entity.ReconciliationRun;
+import ro.linic.cloud.entity.SyncConnection;
+
+/**
+ * Compares every onboarded connection with its inventory again on <code>sync.drift.cron</code>, to catch what the
+ * /update path missed: edits in the wordpress admin, dropped writes, etc. The checks of a round start
+ * <code>sync.drift.stagger</code> apart, at most <code>sync.drift.concurrency</code> at a time; each one is recorded
+ * as a DRIFT {@link ReconciliationRun} and published as <code>sync.drift.duration{company}</code> and
+ * <code>sync.drift.differences{company,kind}</code>.
+ */
+@Log
+@Component
+@ConditionalOnProperty(name = "sync.drift.enabled", havingValue = "true")
+public class DriftScheduler {
+	@Autowired private SyncService syncService;
+	@Autowired private MeterRegistry meterRegistry;
+	
+	@Value("${sync.drift.repair:true}") private boolean repair;
+	@Value("${sync.drift.concurrency:2}") private int concurrency;
+	@Value("${sync.drift.stagger:PT30S}") private Duration stagger;
+	
+	private ScheduledThreadPoolExecutor executor;
+	private final AtomicBoolean roundRunning = new AtomicBoolean();
+	private volatile boolean stopping;
+	
+	@PostConstruct
+	void startExecutor() {
+		executor = new ScheduledThreadPoolExecutor(Math.max(1, concurrency), new CustomizableThreadFactory("drift-"));
+	}
+	
+	@PreDestroy
+	void stopExecutor() {
+		// the running checks end up CANCELLED before their next page
+		stopping = true;
+		executor.shutdownNow();
+	}
+	
+	@Scheduled(cron = "${sync.drift.cron:0 0 2 * * *}")
+	public void checkAll() {
+		if (!roundRunning.compareAndSet(false, true))
+		{
+			log.warning("Drift check round skipped, the previous one is still running");
+			return;
+		}
+		
+		final List<SyncConnection> connections;
+		try {
+			connections = StreamSupport.stream(syncService.findAll().spliterator(), false).toList();
+		} catch (final RuntimeException e) {
+			roundRunning.set(false);
+			throw e;
+		}
+		if (connections.isEmpty())
+		{
+			roundRunning.set(false);
+			return;
+		}
+		
+		final AtomicInteger remaining = new AtomicInteger(connections.size());
+		int scheduled = 0;
+		try {
+			for (; scheduled < connections.size(); scheduled++)
+			{
+				final SyncConnection syncConnection = connections.get(scheduled);
+				executor.schedule(() ->
+				{
+					try {
+						check(syncConnection);
+					} finally {
+						if (remaining.decrementAndGet() == 0)
+							roundRunning.set(false);
+					}
+				}, stagger.toMillis() * scheduled, TimeUnit.MILLISECONDS);
+			}
+		} catch (final RuntimeException e) {
+			log.log(Level.SEVERE, "Drift check round stopped after scheduling "+scheduled+" of "+connections.size()+" connections", e);
+			// the unscheduled checks never count down, so the round ends with the last scheduled one
+			if (remaining.addAndGet(scheduled - connections.size()) == 0)
+				roundRunning.set(false);
+		}
+	}
+	
+	void check(final SyncConnection syncConnection) {
+		final StringWriter report = new StringWriter();
+		try {
+			final Optional<ReconciliationRun> run = syncService.detectDrift(syncConnection, repair, report, () -> stopping);
+			if (run.isEmpty())
+			{
+				log.info("Drift check of company id "+syncConnection.getCompanyId()+" skipped, its onboarding is not completed");
+				return;
+			}
+			record(run.get());
+			log.info(MessageFormat.format("Drift check of company id {0,number,#}: {1}{2}", syncConnection.getCompanyId(),
+					run.get().getStatus(), report));
+		} catch (final RuntimeException e) {
+			log.log(Level.SEVERE, "Drift check of company id "+syncConnection.getCompanyId()+" failed", e);
+		}
+	}
+	
+	private void record(final ReconciliationRun run) {
+		final String company = String.valueOf(run.getSyncConnection().getCompanyId());
+		if (run.getFinishedAt() != null)
+			Timer.builder("sync.drift.duration")
+			.tag("company", company)
+			.description("Duration of the drift checks")
+			.register(meterRegistry)
+			.record(Duration.between(run.getStartedAt(), run.getFinishedAt()));
+		differences(company, "deactivated", run.getDeactivated());
+		differences(company, "name", run.getNameDifferences());
+		differences(company, "price", run.getPriceChanges());
+		differences(company, "stock", run.getStockChanges());
+	}
+	
+	private void differences(final String company, final String kind, final int count) {
+		meterRegistry.counter("sync.drift.differences", "company", company, "kind", kind).increment(count);
+	}
+}
@@ -0,0 +1,41 @@
+package ro.linic.cloud.service;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+
+import ro.linic.cloud.pojo.Product;
+
+/**
+ * 64 bit FNV-1a hash of the woocommerce state of a product that the sync writes or compares: barcode, name,
+ * price, stock and visibility. Numbers are hashed without their trailing zeros, so "29.50" and 29.5 match.
+ */
+final class Fingerprints {
+	private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+	// separates the fields, so ("ab", "c") and ("a", "bc") differ
+	private static final char SEPARATOR = '\u001f';
+	
+	private Fingerprints() {
+	}
+	
+	static long of(final Product product) {
+		final String state = new StringBuilder()
+				.append(product.getBarcode()).append(SEPARATOR)
+				.append(product.getName()).append(SEPARATOR)
+				.append(number(product.getPricePerUom())).append(SEPARATOR)
+				.append(number(product.getStock())).append(SEPARATOR)
+				.append(product.getVisible())
+				.toString();
+		long hash = FNV_OFFSET;
+		for (final byte b : state.getBytes(StandardCharsets.UTF_8))
+		{
+			hash ^= b & 0xff;
+			hash *= FNV_PRIME;
+		}
+		return hash;
+	}
+	
+	private static String number(final BigDecimal number) {
+		return number != null ? number.stripTrailingZeros().toPlainString() : null;
+	}
+}
@@ -0,0 +1,34 @@
+package ro.linic.cloud.service;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+
+import ro.linic.cloud.pojo.Product;
+
+/**
+ * In memory index of the Linic inventory products of one company, used to match woocommerce products
+ * locally instead of searching the inventory service for each of them.<br>
+ * Matching mirrors the remote searches: exact barcode first, then case insensitive name.
+ */
+class InventoryIndex {
+	private final Map<String, Product> byBarcode = new HashMap<>();
+	private final Map<String, Product> byName = new HashMap<>();
+	
+	void add(final Product product) {
+		if (product.getBarcode() != null)
+			byBarcode.putIfAbsent(product.getBarcode(), product);
+		if (product.getName() != null)
+			byName.putIfAbsent(fold(product.getName()), product);
+	}
+	
+	Optional<Product> match(final Product wooProduct) {
+		return Optional.ofNullable(wooProduct.getBarcode()).map(byBarcode::get)
+				.or(() -> Optional.ofNullable(wooProduct.getName()).map(name -> byName.get(fold(name))));
+	}
+	
+	private static String fold(final String name) {
+		return name.toLowerCase(Locale.ROOT);
+	}
+}
@@ -3,6 +3,7 @@ package ro.linic.cloud.service;
 import java.nio.charset.Charset;
 import java.util.Base64;
 import java.util.Map;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 
 import org.springframework.beans.factory.annotation.Autowired;
@@ -15,6 +16,7 @@ import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
 
 import lombok.extern.java.Log;
+import ro.linic.cloud.OutboundMetrics;
 import ro.linic.cloud.command.ChangeNameCommand;
 import ro.linic.cloud.command.ChangePriceCommand;
 import ro.linic.cloud.command.CreateProductCommand;
@@ -31,6 +33,7 @@ public class MoquiApiImpl implements MoquiApi {
 	@Value("${moqui.ignoreall:false}") private boolean ignoreall;
 	
 	@Autowired private RestTemplate restTemplate;
+	@Autowired private ResilientCalls resilientCalls;
 	
 	private static String mapUom(final String uom) {
         switch (uom) {
@@ -99,17 +102,18 @@ public class MoquiApiImpl implements MoquiApi {
 //				"price", command.getPricePerUom());
 		
 		try {
-			final ResponseEntity<String> response = restTemplate.exchange(
+			final ResponseEntity<String> response = moquiCall("product", command.getCompanyId(), true, () -> restTemplate.exchange(
 					moquiUrl + "/rest/s1/mantle/products/" + command.getProductId(), HttpMethod.PATCH,
 					new HttpEntity<Map<String, Object>>(jsonProductMap, headers),
-					String.class);
+					String.class));
 			if (response.getStatusCode().isError())
 				return response;
 			
-			return restTemplate.exchange(
+			// a lost answer may still have added the identification, so it is not retried
+			return moquiCall("identification", command.getCompanyId(), false, () -> restTemplate.exchange(
 					moquiUrl + "/rest/s1/mantle/products/" + command.getProductId() + "/identifications", HttpMethod.POST,
 					new HttpEntity<Map<String, Object>>(jsonIdMap, headers),
-					String.class);
+					String.class));
 		} catch (final Exception e) {
 			log.severe("Failed createProduct Moqui invocation for: " + command);
 			log.log(Level.SEVERE, e.getMessage(), e);
@@ -130,10 +134,10 @@ public class MoquiApiImpl implements MoquiApi {
 				"productName", command.getName());
 		
 		try {
-			return restTemplate.exchange(
+			return moquiCall("name", command.getCompanyId(), true, () -> restTemplate.exchange(
 					moquiUrl + "/rest/s1/mantle/products/" + command.getProductId(), HttpMethod.PATCH,
 					new HttpEntity<Map<String, Object>>(jsonProductMap, headers),
-					String.class);
+					String.class));
 		} catch (final Exception e) {
 			log.severe("Failed updateName Moqui invocation for: " + command);
 			log.log(Level.SEVERE, e.getMessage(), e);
@@ -178,10 +182,10 @@ public class MoquiApiImpl implements MoquiApi {
 			return ResponseEntity.ok(null);
 
 		try {
-			return restTemplate.exchange(
+			return moquiCall("delete", command.getCompanyId(), true, () -> restTemplate.exchange(
 					moquiUrl + "/rest/s1/mantle/products/" + command.getProductId(), HttpMethod.DELETE,
 					new HttpEntity<>(headers),
-					String.class);
+					String.class));
 		} catch (final Exception e) {
 			log.severe("Failed deleteProduct Moqui invocation for: " + command);
 			log.log(Level.SEVERE, e.getMessage(), e);
@@ -189,6 +193,12 @@ public class MoquiApiImpl implements MoquiApi {
 		}
 	}
 	
+	private ResponseEntity<String> moquiCall(final String operation, final Integer companyId, final boolean idempotent,
+			final Supplier<ResponseEntity<String>> call) {
+		return resilientCalls.call(ResilientCalls.MOQUI, moquiUrl, idempotent,
+				() -> OutboundMetrics.tagged(OutboundMetrics.MOQUI, operation, companyId, call));
+	}
+	
 	private HttpHeaders createHeaders() {
 		return new HttpHeaders() {{
 			final String auth = moquiUser + ":" + moquiPass;
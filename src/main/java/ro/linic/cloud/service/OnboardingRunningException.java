@@ -0,0 +1,12 @@
+package ro.linic.cloud.service;
+
+/**
+ * The company of the connection already has an onboarding job running on this instance.
+ */
+public class OnboardingRunningException extends IllegalStateException {
+	private static final long serialVersionUID = 1L;
+	
+	OnboardingRunningException(final String message) {
+		super(message);
+	}
+}
@@ -0,0 +1,31 @@
+package ro.linic.cloud.service;
+
+import java.util.Optional;
+
+import ro.linic.cloud.entity.ReconciliationRun;
+import ro.linic.cloud.entity.SyncConnection;
+import ro.linic.cloud.pojo.OnboardingProgress;
+
+/**
+ * Connection onboarding as background jobs. The id of a job is the id of its {@link ReconciliationRun}.
+ */
+public interface OnboardingService {
+	/**
+	 * Saves the connection(or picks up the interrupted onboarding of the company) and queues its reconciliation.
+	 *
+	 * @throws java.util.concurrent.RejectedExecutionException if the job queue is full
+	 * @throws OnboardingRunningException if the onboarding of the company is already running
+	 */
+	ReconciliationRun start(SyncConnection syncConnection);
+	Optional<OnboardingProgress> progress(Long jobId);
+	/**
+	 * @return the report written so far; empty for jobs that did not run on this instance since it started
+	 */
+	Optional<String> report(Long jobId);
+	/**
+	 * Asks the job to stop before its next woocommerce page.
+	 *
+	 * @return false if the job is not queued or running on this instance
+	 */
+	boolean cancel(Long jobId);
+}
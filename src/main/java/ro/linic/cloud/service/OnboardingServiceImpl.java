@@ -0,0 +1,154 @@
+package ro.linic.cloud.service;
+
+import java.io.StringWriter;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.java.Log;
+import ro.linic.cloud.entity.ReconciliationRun;
+import ro.linic.cloud.entity.ReconciliationRun.Status;
+import ro.linic.cloud.entity.SyncConnection;
+import ro.linic.cloud.pojo.OnboardingProgress;
+import ro.linic.cloud.repository.ReconciliationRunRepository;
+
+/**
+ * Runs the onboardings on their own pool of <code>sync.onboarding.workers</code> threads, so they never hold
+ * the web threads. The progress is read from the committed {@link ReconciliationRun}; the report and the
+ * cancellation flag of a job live in the memory of the instance running it.
+ */
+@Log
+@Service
+class OnboardingServiceImpl implements OnboardingService {
+	@Autowired private SyncService syncService;
+	@Autowired private ReconciliationRunRepository runRepo;
+	
+	@Value("${sync.onboarding.workers:2}") private int workers;
+	@Value("${sync.onboarding.queue-capacity:20}") private int queueCapacity;
+	@Value("${sync.onboarding.retain-finished:PT24H}") private Duration retainFinished;
+	@Value("${sync.onboarding.shutdown-timeout:PT30S}") private Duration shutdownTimeout;
+	
+	// keyed by ReconciliationRun id
+	private final Map<Long, OnboardingJob> jobs = new ConcurrentHashMap<>();
+	private final ReentrantLock startLock = new ReentrantLock();
+	private ThreadPoolExecutor executor;
+	
+	@PostConstruct
+	void startExecutor() {
+		executor = new ThreadPoolExecutor(Math.max(1, workers), Math.max(1, workers), 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), new CustomizableThreadFactory("onboarding-"));
+	}
+	
+	@PreDestroy
+	void stopExecutor() throws InterruptedException {
+		// the stopped runs end up CANCELLED and are resumed by posting their connection again
+		jobs.values().forEach(job -> job.cancelled = true);
+		executor.shutdown();
+		if (!executor.awaitTermination(shutdownTimeout.toMillis(), TimeUnit.MILLISECONDS))
+			log.warning("Onboarding jobs still running after "+shutdownTimeout);
+	}
+	
+	/**
+	 * Serialized so two posts of the same company cannot pick up the same interrupted run; by a ReentrantLock
+	 * rather than synchronized, so a virtual thread waiting on the repositories does not pin its carrier.
+	 */
+	@Override
+	public ReconciliationRun start(final SyncConnection syncConnection) {
+		startLock.lock();
+		try {
+			return startJob(syncConnection);
+		} finally {
+			startLock.unlock();
+		}
+	}
+	
+	private ReconciliationRun startJob(final SyncConnection syncConnection) {
+		pruneFinishedJobs();
+		jobs.entrySet().stream()
+		.filter(entry -> entry.getValue().finishedAt == null && entry.getValue().companyId.equals(syncConnection.getCompanyId()))
+		.findAny()
+		.ifPresent(entry ->
+		{
+			throw new OnboardingRunningException("Onboarding of company id "+syncConnection.getCompanyId()+" is already running as job "+entry.getKey());
+		});
+		
+		final ReconciliationRun run = syncService.startConnection(syncConnection);
+		final OnboardingJob job = new OnboardingJob(syncConnection.getCompanyId());
+		jobs.put(run.getId(), job);
+		try {
+			executor.execute(() -> runJob(run, job));
+		} catch (final RejectedExecutionException e) {
+			jobs.remove(run.getId());
+			// failed runs are resumed by the next post of the connection
+			run.setStatus(Status.FAILED);
+			run.setLastError("Too many onboardings queued");
+			runRepo.save(run);
+			throw e;
+		}
+		return run;
+	}
+	
+	@Override
+	public Optional<OnboardingProgress> progress(final Long jobId) {
+		final OnboardingJob job = jobs.get(jobId);
+		return runRepo.findById(jobId).map(run -> OnboardingProgress.of(run, job != null && job.cancelled));
+	}
+	
+	@Override
+	public Optional<String> report(final Long jobId) {
+		return Optional.ofNullable(jobs.get(jobId)).map(job -> job.report.toString());
+	}
+	
+	@Override
+	public boolean cancel(final Long jobId) {
+		final OnboardingJob job = jobs.get(jobId);
+		if (job == null || job.finishedAt != null)
+			return false;
+		
+		job.cancelled = true;
+		return true;
+	}
+	
+	private void runJob(final ReconciliationRun run, final OnboardingJob job) {
+		try {
+			syncService.reconcile(run, job.report, () -> job.cancelled);
+		} catch (final RuntimeException e) {
+			job.report.write(System.lineSeparator() + "ERROR: " + e.getMessage());
+			log.log(Level.SEVERE, "Onboarding job "+run.getId()+" failed", e);
+		} finally {
+			job.finishedAt = Instant.now();
+		}
+	}
+	
+	private void pruneFinishedJobs() {
+		final Instant finishedBefore = Instant.now().minus(retainFinished);
+		jobs.values().removeIf(job -> job.finishedAt != null && job.finishedAt.isBefore(finishedBefore));
+	}
+	
+	private static class OnboardingJob {
+		private final Integer companyId;
+		// StringWriter is synchronized, the report is read while the job writes it
+		private final StringWriter report = new StringWriter();
+		private volatile boolean cancelled;
+		private volatile Instant finishedAt;
+		
+		OnboardingJob(final Integer companyId) {
+			this.companyId = companyId;
+		}
+	}
+}
@@ -0,0 +1,276 @@
+package ro.linic.cloud.service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Level;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.java.Log;
+import ro.linic.cloud.command.ChangeNameCommand;
+import ro.linic.cloud.command.ChangePriceCommand;
+import ro.linic.cloud.command.ChangeStockCommand;
+import ro.linic.cloud.command.CreateProductCommand;
+import ro.linic.cloud.command.DeleteProductCommand;
+import ro.linic.cloud.entity.OutboxCommand;
+import ro.linic.cloud.entity.OutboxCommand.Type;
+import ro.linic.cloud.pojo.Product;
+
+/**
+ * Drains the outbox: sends each pending command to woocommerce and moqui, retrying with backoff
+ * until both accepted it. Unlike the synchronous /update path, failed calls are never dropped.
+ * Price and stock updates of a product are held for <code>sync.outbox.coalesce-window</code> and
+ * sent to woocommerce as one patch; the patches of different products share bulk requests.
+ */
+@Log
+@Component
+@ConditionalOnProperty(name = "sync.outbox.enabled", havingValue = "true", matchIfMissing = true)
+public class OutboxDispatcher {
+	@Value("${sync.outbox.batch-size:50}") private int batchSize;
+	
+	@Autowired private OutboxService outboxService;
+	@Autowired private WoocommerceService woocommerceService;
+	@Autowired private MoquiApi moquiApi;
+	@Autowired private MeterRegistry meterRegistry;
+	
+	@Scheduled(fixedDelayString = "${sync.outbox.poll-delay:1000}")
+	public void drain() {
+		List<OutboxCommand> batch;
+		do {
+			batch = outboxService.claimDue(batchSize);
+			dispatchAll(batch);
+		} while (batch.size() == batchSize);
+	}
+	
+	/**
+	 * Dispatches the claimed commands in waves holding at most one command per product, so the woocommerce
+	 * writes of a wave can share bulk requests while every product still sees its commands in order.
+	 */
+	void dispatchAll(final List<OutboxCommand> commands) {
+		final Map<String, Deque<OutboxCommand>> byProduct = new LinkedHashMap<>();
+		commands.forEach(command -> byProduct.computeIfAbsent(productKey(command), key -> new ArrayDeque<>()).add(command));
+		// the woocommerce ids of the whole batch, in one query per company
+		final Map<Integer, Set<Integer>> productIds = new HashMap<>();
+		commands.forEach(command -> productIds.computeIfAbsent(command.getCompanyId(), companyId -> new HashSet<>())
+				.add(command.getProductId()));
+		if (!productIds.isEmpty())
+			woocommerceService.preloadWooIds(productIds);
+		// commands already sent as part of a coalesced group
+		final Set<Long> merged = new HashSet<>();
+		
+		while (!byProduct.isEmpty())
+		{
+			final WoocommerceBatchWriter wooWriter = woocommerceService.batchWriter();
+			final Map<String, PreparedDispatch> wave = new LinkedHashMap<>();
+			byProduct.forEach((productKey, queue) ->
+			{
+				final OutboxCommand next = pollUnmerged(queue, merged);
+				if (next != null)
+					wave.put(productKey, prepare(next, wooWriter, merged));
+			});
+			wooWriter.flush();
+			
+			wave.forEach((productKey, prepared) ->
+			{
+				// keep per product ordering: once a command failed, the later ones of the same product wait for it
+				if (!prepared.finish())
+					byProduct.remove(productKey).stream()
+					.filter(command -> !merged.contains(command.getId()))
+					.forEach(outboxService::release);
+			});
+			byProduct.values().removeIf(Deque::isEmpty);
+		}
+	}
+	
+	private static OutboxCommand pollUnmerged(final Deque<OutboxCommand> queue, final Set<Long> merged) {
+		OutboxCommand next = queue.poll();
+		while (next != null && merged.contains(next.getId()))
+			next = queue.poll();
+		return next;
+	}
+	
+	private static String productKey(final OutboxCommand command) {
+		return command.getCompanyId()+"/"+command.getProductId();
+	}
+	
+	@Scheduled(cron = "${sync.outbox.purge-cron:0 0 3 * * *}")
+	public void purge() {
+		final int purged = outboxService.purgeProcessed();
+		if (purged > 0)
+			log.info("Purged "+purged+" dispatched outbox commands");
+	}
+	
+	/**
+	 * @return true if the command was accepted by all targets
+	 */
+	boolean dispatch(final OutboxCommand command) {
+		if (OutboxServiceImpl.COALESCIBLE.contains(command.getType()))
+		{
+			final WoocommerceBatchWriter wooWriter = woocommerceService.batchWriter();
+			final PreparedDispatch prepared = prepareCoalesced(command, wooWriter, new HashSet<>());
+			wooWriter.flush();
+			return prepared.finish();
+		}
+		
+		try {
+			switch (command.getType()) {
+			case CREATE_PRODUCT -> {
+				final CreateProductCommand createCommand = outboxService.payload(command, CreateProductCommand.class);
+				// woocommerceService.createProduct answers ACCEPTED when woocommerce rejected the product
+				dispatchWoo(command, () -> woocommerceService.createProduct(createCommand), HttpStatus.ACCEPTED);
+				dispatchMoqui(command, () -> moquiApi.createProduct(createCommand));
+			}
+			case DELETE_PRODUCT -> {
+				final DeleteProductCommand deleteCommand = outboxService.payload(command, DeleteProductCommand.class);
+				dispatchWoo(command, () -> woocommerceService.deleteProduct(deleteCommand), null);
+				dispatchMoqui(command, () -> moquiApi.deleteProduct(deleteCommand));
+			}
+			case PRICE, STOCK -> throw new IllegalStateException("Coalesced command "+command);
+			case NAME -> {
+				final ChangeNameCommand nameCommand = outboxService.payload(command, ChangeNameCommand.class);
+				dispatchWoo(command, () -> woocommerceService.updateName(nameCommand), null);
+				dispatchMoqui(command, () -> moquiApi.updateName(nameCommand));
+			}
+			}
+			outboxService.complete(command);
+			return true;
+		} catch (final Exception e) {
+			log.log(Level.WARNING, "Outbox dispatch failed for "+command, e);
+			outboxService.fail(command, e.getMessage());
+			return false;
+		}
+	}
+	
+	private PreparedDispatch prepare(final OutboxCommand command, final WoocommerceBatchWriter wooWriter,
+			final Set<Long> merged) {
+		if (OutboxServiceImpl.COALESCIBLE.contains(command.getType()))
+			return prepareCoalesced(command, wooWriter, merged);
+		
+		final boolean dispatched = dispatch(command);
+		return () -> dispatched;
+	}
+	
+	/**
+	 * Merges the price and stock commands queued right after <code>head</code> for the same product into a
+	 * single woocommerce patch carrying only the latest price and stock, queued on <code>wooWriter</code>.
+	 */
+	private PreparedDispatch prepareCoalesced(final OutboxCommand head, final WoocommerceBatchWriter wooWriter,
+			final Set<Long> merged) {
+		final List<OutboxCommand> group = new ArrayList<>();
+		group.add(head);
+		try {
+			group.addAll(outboxService.claimCoalescible(head));
+			group.stream().skip(1).map(OutboxCommand::getId).forEach(merged::add);
+			if (group.size() > 1)
+			{
+				// newer values were merged in, so both targets have to receive them again
+				head.setWooDispatched(false);
+				head.setMoquiDispatched(false);
+			}
+			
+			ChangePriceCommand latestPrice = null;
+			ChangeStockCommand latestStock = null;
+			for (final OutboxCommand command : group)
+			{
+				if (command.getType() == Type.PRICE)
+					latestPrice = outboxService.payload(command, ChangePriceCommand.class);
+				else
+					latestStock = outboxService.payload(command, ChangeStockCommand.class);
+			}
+			
+			final CompletableFuture<ResponseEntity<Product>> wooResult = head.isWooDispatched() ? null :
+				woocommerceService.updatePriceAndStock(wooWriter, head.getCompanyId(), head.getProductId(),
+						latestPrice == null ? null : latestPrice.getPricePerUom(),
+						latestStock == null ? null : latestStock.getStock());
+			final ChangePriceCommand moquiPrice = latestPrice;
+			return () -> finishCoalesced(head, group, wooResult, moquiPrice);
+		} catch (final Exception e) {
+			failCoalesced(head, group, e);
+			return () -> false;
+		}
+	}
+	
+	private boolean finishCoalesced(final OutboxCommand head, final List<OutboxCommand> group,
+			final CompletableFuture<ResponseEntity<Product>> wooResult, final ChangePriceCommand latestPrice) {
+		try {
+			if (wooResult != null)
+				dispatchWoo(head, wooResult::join, null);
+			// moqui keeps no stock, only the price is sent there
+			if (latestPrice != null)
+				dispatchMoqui(head, () -> moquiApi.updatePrice(latestPrice));
+			else
+				head.setMoquiDispatched(true);
+			
+			group.forEach(outboxService::complete);
+			meterRegistry.counter("sync.outbox.coalesced.commands").increment(group.size());
+			meterRegistry.counter("sync.outbox.coalesced.writes.saved").increment(group.size() - 1);
+			return true;
+		} catch (final Exception e) {
+			failCoalesced(head, group, e);
+			return false;
+		}
+	}
+	
+	private void failCoalesced(final OutboxCommand head, final List<OutboxCommand> group, final Exception e) {
+		log.log(Level.WARNING, "Outbox dispatch failed for "+head+" merged with "+(group.size()-1)+" commands", e);
+		outboxService.fail(head, e.getMessage());
+		// the merged commands stay behind the failed head of their product
+		group.stream().skip(1).forEach(outboxService::release);
+	}
+	
+	private void dispatchWoo(final OutboxCommand command, final RemoteCall call, final HttpStatus failureStatus) {
+		if (command.isWooDispatched())
+			return;
+		
+		final ResponseEntity<?> response = call.invoke();
+		if (response == null || !response.getStatusCode().is2xxSuccessful() || response.getStatusCode().equals(failureStatus))
+			throw new DispatchException("Woocommerce answered "+(response == null ? null : response.getStatusCode()));
+		command.setWooDispatched(true);
+	}
+	
+	private void dispatchMoqui(final OutboxCommand command, final RemoteCall call) {
+		if (command.isMoquiDispatched())
+			return;
+		
+		final ResponseEntity<?> response = call.invoke();
+		if (response == null || !response.getStatusCode().is2xxSuccessful())
+			throw new DispatchException("Moqui answered "+(response == null ? null : response.getStatusCode()));
+		command.setMoquiDispatched(true);
+	}
+	
+	@FunctionalInterface
+	private interface PreparedDispatch {
+		/**
+		 * @return true if the command was accepted by all targets
+		 */
+		boolean finish();
+	}
+	
+	@FunctionalInterface
+	private interface RemoteCall {
+		ResponseEntity<?> invoke();
+	}
+	
+	private static class DispatchException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		DispatchException(final String message) {
+			super(message);
+		}
+	}
+}
@@ -0,0 +1,35 @@
+package ro.linic.cloud.service;
+
+import java.util.List;
+
+import ro.linic.cloud.command.ProductCommand;
+import ro.linic.cloud.entity.OutboxCommand;
+import ro.linic.cloud.entity.OutboxCommand.Type;
+
+public interface OutboxService {
+	OutboxCommand enqueue(Type type, Integer companyId, Integer productId, Object command);
+	/**
+	 * Persists the commands in one transaction, in their order
+	 */
+	List<OutboxCommand> enqueueAll(List<? extends ProductCommand> commands);
+	/**
+	 * Claims up to <code>batchSize</code> due commands, leasing them to the caller
+	 */
+	List<OutboxCommand> claimDue(int batchSize);
+	/**
+	 * Claims the pending price and stock commands that directly follow <code>head</code> for the same product,
+	 * stopping at the first command of another type, so they can be merged into a single write.
+	 */
+	List<OutboxCommand> claimCoalescible(OutboxCommand head);
+	void complete(OutboxCommand command);
+	/**
+	 * Schedules a retry of the command, or marks it as FAILED when it ran out of attempts
+	 */
+	void fail(OutboxCommand command, String error);
+	/**
+	 * Gives back the lease of a claimed command that wasn't attempted, without consuming an attempt
+	 */
+	void release(OutboxCommand command);
+	<T> T payload(OutboxCommand command, Class<T> commandType);
+	int purgeProcessed();
+}
@@ -0,0 +1,164 @@
+package ro.linic.cloud.service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.extern.java.Log;
+import ro.linic.cloud.command.ProductCommand;
+import ro.linic.cloud.entity.OutboxCommand;
+import ro.linic.cloud.entity.OutboxCommand.Status;
+import ro.linic.cloud.entity.OutboxCommand.Type;
+import ro.linic.cloud.repository.OutboxCommandRepository;
+
+@Log
+@Service
+public class OutboxServiceImpl implements OutboxService {
+	private static final int MAX_ERROR_LENGTH = 2000;
+	static final Set<Type> COALESCIBLE = EnumSet.of(Type.PRICE, Type.STOCK);
+	
+	@Value("${sync.outbox.lease:PT5M}") private Duration lease;
+	@Value("${sync.outbox.max-attempts:10}") private int maxAttempts;
+	@Value("${sync.outbox.backoff-initial:PT2S}") private Duration backoffInitial;
+	@Value("${sync.outbox.backoff-max:PT10M}") private Duration backoffMax;
+	@Value("${sync.outbox.retention:P7D}") private Duration retention;
+	@Value("${sync.outbox.coalesce-window:PT2S}") private Duration coalesceWindow;
+	
+	@Autowired private OutboxCommandRepository outboxRepo;
+	@Autowired private ObjectMapper objectMapper;
+	
+	@Override
+	@Transactional(propagation = Propagation.REQUIRED)
+	public OutboxCommand enqueue(final Type type, final Integer companyId, final Integer productId, final Object command) {
+		return outboxRepo.save(newCommand(type, companyId, productId, command, Instant.now()));
+	}
+	
+	@Override
+	@Transactional(propagation = Propagation.REQUIRED)
+	public List<OutboxCommand> enqueueAll(final List<? extends ProductCommand> commands) {
+		final Instant now = Instant.now();
+		final List<OutboxCommand> outboxCommands = commands.stream()
+				.map(command -> newCommand(Type.of(command), command.getCompanyId(), command.getProductId(), command, now))
+				.toList();
+		outboxRepo.saveAll(outboxCommands);
+		return outboxCommands;
+	}
+	
+	private OutboxCommand newCommand(final Type type, final Integer companyId, final Integer productId, final Object command,
+			final Instant now) {
+		final OutboxCommand outboxCommand = new OutboxCommand();
+		outboxCommand.setType(type);
+		outboxCommand.setCompanyId(companyId);
+		outboxCommand.setProductId(productId);
+		outboxCommand.setPayload(toJson(command));
+		outboxCommand.setStatus(Status.PENDING);
+		outboxCommand.setCreatedAt(now);
+		// price and stock bursts of the same product are collected for the window and sent as one write
+		outboxCommand.setNextAttemptAt(COALESCIBLE.contains(type) ? now.plus(coalesceWindow) : now);
+		return outboxCommand;
+	}
+	
+	@Override
+	@Transactional(propagation = Propagation.REQUIRED)
+	public List<OutboxCommand> claimDue(final int batchSize) {
+		final Instant now = Instant.now();
+		final List<OutboxCommand> due = outboxRepo.findDue(Status.PENDING, now, PageRequest.of(0, batchSize));
+		due.forEach(command -> command.setNextAttemptAt(now.plus(lease)));
+		return due;
+	}
+	
+	@Override
+	@Transactional(propagation = Propagation.REQUIRED)
+	public List<OutboxCommand> claimCoalescible(final OutboxCommand head) {
+		final Instant leasedUntil = Instant.now().plus(lease);
+		final List<OutboxCommand> group = new ArrayList<>();
+		for (final OutboxCommand command : outboxRepo.findPendingAfter(Status.PENDING, head.getCompanyId(),
+				head.getProductId(), head.getId()))
+		{
+			if (!COALESCIBLE.contains(command.getType()))
+				break;
+			command.setNextAttemptAt(leasedUntil);
+			group.add(command);
+		}
+		return group;
+	}
+	
+	@Override
+	@Transactional(propagation = Propagation.REQUIRED)
+	public void complete(final OutboxCommand command) {
+		command.setStatus(Status.DONE);
+		command.setProcessedAt(Instant.now());
+		command.setLastError(null);
+		outboxRepo.save(command);
+	}
+	
+	@Override
+	@Transactional(propagation = Propagation.REQUIRED)
+	public void fail(final OutboxCommand command, final String error) {
+		command.setAttempts(command.getAttempts() + 1);
+		command.setLastError(error != null && error.length() > MAX_ERROR_LENGTH ? error.substring(0, MAX_ERROR_LENGTH) : error);
+		
+		if (command.getAttempts() >= maxAttempts)
+		{
+			command.setStatus(Status.FAILED);
+			command.setProcessedAt(Instant.now());
+			log.severe("Outbox command gave up after "+command.getAttempts()+" attempts: "+command);
+		}
+		else
+			command.setNextAttemptAt(Instant.now().plus(backoff(command.getAttempts())));
+		outboxRepo.save(command);
+	}
+	
+	@Override
+	@Transactional(propagation = Propagation.REQUIRED)
+	public void release(final OutboxCommand command) {
+		command.setNextAttemptAt(Instant.now());
+		outboxRepo.save(command);
+	}
+	
+	@Override
+	public <T> T payload(final OutboxCommand command, final Class<T> commandType) {
+		try {
+			return objectMapper.readValue(command.getPayload(), commandType);
+		} catch (final JsonProcessingException e) {
+			throw new IllegalStateException("Unreadable outbox payload: "+command, e);
+		}
+	}
+	
+	@Override
+	@Transactional(propagation = Propagation.REQUIRED)
+	public int purgeProcessed() {
+		return outboxRepo.deleteProcessedBefore(Status.DONE, Instant.now().minus(retention));
+	}
+	
+	/**
+	 * Exponential backoff, capped at backoffMax, randomized over its upper half
+	 */
+	private Duration backoff(final int attempts) {
+		final long exponential = backoffInitial.toMillis() << Math.min(attempts - 1, 20);
+		final long capped = Math.min(exponential, backoffMax.toMillis());
+		return Duration.ofMillis(capped / 2 + ThreadLocalRandom.current().nextLong(capped / 2 + 1));
+	}
+	
+	private String toJson(final Object command) {
+		try {
+			return objectMapper.writeValueAsString(command);
+		} catch (final JsonProcessingException e) {
+			throw new IllegalArgumentException("Command can't be serialized: "+command, e);
+		}
+	}
+}
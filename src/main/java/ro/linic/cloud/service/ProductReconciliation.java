@@ -0,0 +1,21 @@
+package ro.linic.cloud.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import lombok.Data;
+import ro.linic.cloud.entity.SyncLine;
+
+/**
+ * Outcome of reconciling a single woocommerce product: the report lines it produced
+ * and the SyncLine that should be persisted for it, if any.
+ */
+@Data
+class ProductReconciliation {
+	private final List<String> reportLines = new ArrayList<>();
+	private SyncLine syncLine;
+	
+	void report(final String line) {
+		reportLines.add(line);
+	}
+}
@@ -0,0 +1,97 @@
+package ro.linic.cloud.service;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import lombok.Getter;
+import ro.linic.cloud.OutboundMetrics;
+import ro.linic.cloud.OutboundMetrics.CallCounts;
+import ro.linic.cloud.entity.ReconciliationRun;
+
+/**
+ * Per category counters of a reconciliation run, the time of its phases and its http requests.
+ * Updated concurrently by the reconcile workers.
+ */
+@Getter
+class ReconcileCounters {
+	private final AtomicInteger products = new AtomicInteger(0);
+	private final AtomicInteger deactivated = new AtomicInteger(0);
+	private final AtomicInteger nameDifference = new AtomicInteger(0);
+	private final AtomicInteger priceChange = new AtomicInteger(0);
+	private final AtomicInteger stockChange = new AtomicInteger(0);
+	// skipped by the delta sync on their fingerprint; not stored on the runs, which never skip
+	private final AtomicInteger unchanged = new AtomicInteger(0);
+	
+	private final AtomicLong fetchNanos = new AtomicLong(0);
+	private final AtomicLong matchNanos = new AtomicLong(0);
+	private final AtomicLong writeNanos = new AtomicLong(0);
+	private final AtomicLong persistNanos = new AtomicLong(0);
+	/**
+	 * Filled by the calls made within {@link OutboundMetrics#counted}
+	 */
+	private final CallCounts calls;
+	
+	ReconcileCounters() {
+		calls = new CallCounts(0, 0);
+	}
+	
+	/**
+	 * Continues the counts of a run
+	 */
+	ReconcileCounters(final ReconciliationRun run) {
+		products.set(run.getProducts());
+		deactivated.set(run.getDeactivated());
+		nameDifference.set(run.getNameDifferences());
+		priceChange.set(run.getPriceChanges());
+		stockChange.set(run.getStockChanges());
+		fetchNanos.set(TimeUnit.MILLISECONDS.toNanos(run.getFetchMillis()));
+		matchNanos.set(TimeUnit.MILLISECONDS.toNanos(run.getMatchMillis()));
+		writeNanos.set(TimeUnit.MILLISECONDS.toNanos(run.getWriteMillis()));
+		persistNanos.set(TimeUnit.MILLISECONDS.toNanos(run.getPersistMillis()));
+		calls = new CallCounts(run.getHttpRequests(), run.getHttpErrors());
+	}
+	
+	void copyTo(final ReconciliationRun run) {
+		run.setProducts(products.get());
+		run.setDeactivated(deactivated.get());
+		run.setNameDifferences(nameDifference.get());
+		run.setPriceChanges(priceChange.get());
+		run.setStockChanges(stockChange.get());
+		copyUsageTo(run);
+	}
+	
+	/**
+	 * Copies only the phase times and the http requests; unlike the counters, they include the work of the
+	 * pages that were not committed
+	 */
+	void copyUsageTo(final ReconciliationRun run) {
+		run.setFetchMillis(TimeUnit.NANOSECONDS.toMillis(fetchNanos.get()));
+		run.setMatchMillis(TimeUnit.NANOSECONDS.toMillis(matchNanos.get()));
+		run.setWriteMillis(TimeUnit.NANOSECONDS.toMillis(writeNanos.get()));
+		run.setPersistMillis(TimeUnit.NANOSECONDS.toMillis(persistNanos.get()));
+		run.setHttpRequests(calls.requests());
+		run.setHttpErrors(calls.errors());
+	}
+	
+	/**
+	 * Adds the duration of the call to the phase
+	 */
+	static <T> T timed(final AtomicLong phaseNanos, final Supplier<T> call) {
+		final long start = System.nanoTime();
+		try {
+			return call.get();
+		} finally {
+			phaseNanos.addAndGet(System.nanoTime() - start);
+		}
+	}
+	
+	static void timed(final AtomicLong phaseNanos, final Runnable call) {
+		timed(phaseNanos, () ->
+		{
+			call.run();
+			return null;
+		});
+	}
+}
@@ -0,0 +1,66 @@
+package ro.linic.cloud.service;
+
+import java.time.Duration;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import ro.linic.cloud.entity.ReconciliationRun;
+import ro.linic.cloud.entity.ReconciliationRun.Status;
+
+/**
+ * Publishes the reconciliation runs, tagged by company and kind:
+ * <ul>
+ * <li><code>sync.reconcile.attempts{status}</code>: duration of every attempt, resumed ones included</li>
+ * <li><code>sync.reconcile.phase{phase}</code>: time of the fetch, match, write and persist phases</li>
+ * <li><code>sync.reconcile.products{category}</code>: processed products and their differences</li>
+ * <li><code>sync.reconcile.http.requests</code>, <code>sync.reconcile.http.errors</code>: outbound requests</li>
+ * </ul>
+ * The totals of a run are published once, when it completes; the history of every run, finished or not,
+ * stays on its {@link ReconciliationRun}.
+ */
+@Component
+class ReconciliationMetrics {
+	@Autowired private MeterRegistry meterRegistry;
+	
+	void attemptEnded(final ReconciliationRun run, final Duration attempt) {
+		final Tags tags = Tags.of("company", String.valueOf(run.getSyncConnection().getCompanyId()),
+				"kind", run.getKind().name());
+		Timer.builder("sync.reconcile.attempts")
+		.description("Duration of the reconciliation attempts")
+		.tags(tags)
+		.tag("status", run.getStatus().name())
+		.register(meterRegistry)
+		.record(attempt);
+		if (run.getStatus() != Status.COMPLETED)
+			return;
+		
+		phase(tags, "fetch", run.getFetchMillis());
+		phase(tags, "match", run.getMatchMillis());
+		phase(tags, "write", run.getWriteMillis());
+		phase(tags, "persist", run.getPersistMillis());
+		products(tags, "processed", run.getProducts());
+		products(tags, "deactivated", run.getDeactivated());
+		products(tags, "name", run.getNameDifferences());
+		products(tags, "price", run.getPriceChanges());
+		products(tags, "stock", run.getStockChanges());
+		meterRegistry.counter("sync.reconcile.http.requests", tags).increment(run.getHttpRequests());
+		meterRegistry.counter("sync.reconcile.http.errors", tags).increment(run.getHttpErrors());
+	}
+	
+	private void phase(final Tags tags, final String phase, final long millis) {
+		Timer.builder("sync.reconcile.phase")
+		.description("Time of the reconciliation phases, summed over the concurrent workers")
+		.tags(tags)
+		.tag("phase", phase)
+		.register(meterRegistry)
+		.record(Duration.ofMillis(millis));
+	}
+	
+	private void products(final Tags tags, final String category, final int count) {
+		meterRegistry.counter("sync.reconcile.products", tags.and("category", category)).increment(count);
+	}
+}
@@ -0,0 +1,41 @@
+package ro.linic.cloud.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+
+/**
+ * Writes the reconciliation report line by line to the underlying writer(HTTP response, file, etc.),
+ * so the report never has to be held in memory as a whole.
+ */
+class ReportWriter {
+	private final Writer out;
+	
+	ReportWriter(final Writer out) {
+		this.out = out;
+	}
+	
+	/**
+	 * Appends a line separator followed by the text, matching the original report layout.
+	 */
+	ReportWriter line(final String text) {
+		return write(System.lineSeparator()).write(text);
+	}
+	
+	ReportWriter write(final String text) {
+		try {
+			out.write(text);
+			return this;
+		} catch (final IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+	
+	void flush() {
+		try {
+			out.flush();
+		} catch (final IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+}
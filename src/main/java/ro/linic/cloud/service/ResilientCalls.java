@@ -0,0 +1,83 @@
+package ro.linic.cloud.service;
+
+import java.net.URI;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.ResourceAccessException;
+
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.retry.Retry;
+import io.github.resilience4j.retry.RetryConfig;
+import io.github.resilience4j.retry.RetryRegistry;
+
+/**
+ * Retry and circuit breaker of the outbound woocommerce and moqui calls, one instance of each per api and host
+ * (eg. <code>woocommerce-shop.ro</code>). Thresholds and backoff come from the <code>resilience4j.circuitbreaker.configs</code>
+ * and <code>resilience4j.retry.configs</code> named after the api, falling back to <code>default</code>; which errors
+ * are transient is decided here: timeouts, refused connections, 5xx and 429. Any other error is the answer
+ * of a healthy host and is neither retried nor counted against it. The instances show up in
+ * <code>/actuator/circuitbreakers</code> and <code>/actuator/retries</code>.
+ */
+@Component
+class ResilientCalls {
+	static final String WOOCOMMERCE = "woocommerce";
+	static final String MOQUI = "moqui";
+	
+	private final CircuitBreakerRegistry circuitBreakers;
+	private final RetryRegistry retries;
+	
+	@Autowired
+	ResilientCalls(final CircuitBreakerRegistry circuitBreakers, final RetryRegistry retries) {
+		this.circuitBreakers = circuitBreakers;
+		this.retries = retries;
+	}
+	
+	/**
+	 * Runs the call through the circuit breaker of the host, retrying the transient errors.
+	 * While the circuit is open the call fails fast with {@link CallNotPermittedException}.
+	 *
+	 * @param idempotent false for calls that may have taken effect even if they failed(eg. creates);
+	 * these are never retried
+	 */
+	<T> T call(final String api, final String url, final boolean idempotent, final Supplier<T> call) {
+		final String instance = api + "-" + host(url);
+		final Supplier<T> guarded = CircuitBreaker.decorateSupplier(circuitBreakers.circuitBreaker(instance,
+				() -> CircuitBreakerConfig.from(circuitBreakers.getConfiguration(api).orElse(circuitBreakers.getDefaultConfig()))
+				.recordException(ResilientCalls::isTransient)
+				.ignoreException(CallSlotUnavailableException.class::isInstance)
+				.build()), call);
+		if (!idempotent)
+			return guarded.get();
+		
+		final Retry retry = retries.retry(instance,
+				() -> RetryConfig.from(retries.getConfiguration(api).orElse(retries.getDefaultConfig()))
+				.retryOnException(ResilientCalls::isTransient)
+				.build());
+		return Retry.decorateSupplier(retry, guarded).get();
+	}
+	
+	static boolean isTransient(final Throwable e) {
+		if (e instanceof HttpStatusCodeException statusException)
+			return statusException.getStatusCode().is5xxServerError() ||
+					statusException.getStatusCode().value() == HttpStatus.TOO_MANY_REQUESTS.value();
+		// timeouts and refused connections; CallNotPermittedException is not, retrying an open circuit is pointless,
+		// nor is CallSlotUnavailableException, which never left the local limiter
+		return e instanceof ResourceAccessException;
+	}
+	
+	private static String host(final String url) {
+		try {
+			final String authority = URI.create(url).getAuthority();
+			return authority != null ? authority : url;
+		} catch (final IllegalArgumentException e) {
+			return url;
+		}
+	}
+}
@@ -0,0 +1,37 @@
+package ro.linic.cloud.service;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Creates the executors of the outbound HTTP fan-out. With <code>sync.virtual-threads.enabled</code> every task
+ * gets its own virtual thread, so blocking calls cost no platform thread and the concurrency is bounded only by
+ * the callers' permits and the HTTP connection pool; otherwise a fixed pool of platform threads is used.
+ */
+@Component
+class SyncExecutors {
+	private final boolean virtualThreads;
+	
+	@Autowired
+	SyncExecutors(@Value("${sync.virtual-threads.enabled:false}") final boolean virtualThreads) {
+		this.virtualThreads = virtualThreads;
+	}
+	
+	boolean isVirtual() {
+		return virtualThreads;
+	}
+	
+	/**
+	 * @param platformThreads size of the pool when virtual threads are disabled
+	 */
+	ExecutorService newExecutor(final int platformThreads, final String threadNamePrefix) {
+		if (virtualThreads)
+			return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(threadNamePrefix, 0).factory());
+		return Executors.newFixedThreadPool(platformThreads, new CustomizableThreadFactory(threadNamePrefix));
+	}
+}
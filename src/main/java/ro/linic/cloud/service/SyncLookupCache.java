@@ -0,0 +1,129 @@
+package ro.linic.cloud.service;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import ro.linic.cloud.entity.SyncConnection;
+
+/**
+ * Read-through cache of the lookups done for every /update command: companyId -> SyncConnection and
+ * (syncConnectionId, productId) -> wooId. Misses are cached as well, so products that are not synced
+ * cost no database round trip either. Entries are evicted least recently used above <code>maxSize</code>
+ * and expire after <code>ttl</code>; the services that change connections or sync lines invalidate them.
+ */
+@Component
+class SyncLookupCache {
+	private final ExpiringLruMap<Integer, Optional<SyncConnection>> connections;
+	private final ExpiringLruMap<LineKey, Optional<Integer>> wooIds;
+
+	@Autowired
+	SyncLookupCache(@Value("${sync.lookup-cache.max-size:10000}") final int maxSize,
+			@Value("${sync.lookup-cache.ttl:PT10M}") final Duration ttl) {
+		connections = new ExpiringLruMap<>(maxSize, ttl);
+		wooIds = new ExpiringLruMap<>(maxSize, ttl);
+	}
+
+	public Optional<SyncConnection> connection(final Integer companyId, final Supplier<Optional<SyncConnection>> loader) {
+		return connections.get(companyId, loader);
+	}
+
+	public Optional<Integer> wooId(final Integer syncConnectionId, final Integer productId,
+			final Supplier<Optional<Integer>> loader) {
+		return wooIds.get(new LineKey(syncConnectionId, productId), loader);
+	}
+
+	public void invalidateLine(final Integer syncConnectionId, final Integer productId) {
+		final LineKey key = new LineKey(syncConnectionId, productId);
+		wooIds.remove(key);
+		afterTransaction(() -> wooIds.remove(key));
+	}
+
+	/**
+	 * Drops everything; used when a whole connection is created, changed or deleted
+	 */
+	public void invalidateAll() {
+		connections.clear();
+		wooIds.clear();
+		afterTransaction(() ->
+		{
+			connections.clear();
+			wooIds.clear();
+		});
+	}
+
+	/**
+	 * Invalidates again once the surrounding transaction ended, as a concurrent lookup may have
+	 * cached the not yet committed state in the meantime
+	 */
+	private static void afterTransaction(final Runnable invalidation) {
+		if (!TransactionSynchronizationManager.isSynchronizationActive())
+			return;
+
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+			@Override
+			public void afterCompletion(final int status) {
+				invalidation.run();
+			}
+		});
+	}
+
+	private record LineKey(Integer syncConnectionId, Integer productId) {}
+
+	private static class ExpiringLruMap<K, V> {
+		private final long ttlNanos;
+		private final Map<K, Entry<V>> entries;
+		// bumped by every invalidation, so a value loaded before it is not cached afterwards
+		private long generation;
+
+		ExpiringLruMap(final int maxSize, final Duration ttl) {
+			this.ttlNanos = ttl.toNanos();
+			this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(final Map.Entry<K, Entry<V>> eldest) {
+					return size() > maxSize;
+				}
+			};
+		}
+
+		V get(final K key, final Supplier<V> loader) {
+			final long loadGeneration;
+			synchronized (this) {
+				final Entry<V> entry = entries.get(key);
+				if (entry != null && System.nanoTime() - entry.loadedAt < ttlNanos)
+					return entry.value;
+				loadGeneration = generation;
+			}
+
+			// loaded outside the lock, concurrent misses of the same key may both hit the database
+			final V value = loader.get();
+			synchronized (this) {
+				if (loadGeneration == generation)
+					entries.put(key, new Entry<>(value, System.nanoTime()));
+			}
+			return value;
+		}
+
+		synchronized void remove(final K key) {
+			entries.remove(key);
+			generation++;
+		}
+
+		synchronized void clear() {
+			entries.clear();
+			generation++;
+		}
+	}
+
+	private record Entry<V>(V value, long loadedAt) {}
+}
@@ -1,5 +1,10 @@
 package ro.linic.cloud.service;
 
+import java.io.Writer;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.BooleanSupplier;
+
 import org.springframework.http.ResponseEntity;
 
 import ro.linic.cloud.command.ChangeNameCommand;
@@ -7,19 +12,67 @@ import ro.linic.cloud.command.ChangePriceCommand;
 import ro.linic.cloud.command.ChangeStockCommand;
 import ro.linic.cloud.command.CreateProductCommand;
 import ro.linic.cloud.command.DeleteProductCommand;
+import ro.linic.cloud.command.ProductCommand;
+import ro.linic.cloud.entity.ReconciliationRun;
 import ro.linic.cloud.entity.SyncConnection;
+import ro.linic.cloud.pojo.CommandResult;
 import ro.linic.cloud.pojo.Product;
 
 public interface SyncService {
 
 	Object createConnection(SyncConnection syncConnection);
+	/**
+	 * Same as {@link #createConnection(SyncConnection)}, but the report is written to <code>report</code>
+	 * while the products are being reconciled.
+	 */
+	void createConnection(SyncConnection syncConnection, Writer report);
+	/**
+	 * Saves the connection, or picks up the interrupted onboarding of the company, without reconciling anything yet.
+	 * 
+	 * @return the run to pass to {@link #reconcile(ReconciliationRun, Writer, BooleanSupplier)}
+	 */
+	ReconciliationRun startConnection(SyncConnection syncConnection);
+	/**
+	 * Reconciles the woocommerce pages of the run that are not committed yet, writing the report to <code>report</code>.
+	 * Once <code>cancelled</code> returns true the run stops before the next page and is marked CANCELLED.
+	 */
+	void reconcile(ReconciliationRun run, Writer report, BooleanSupplier cancelled);
+	/**
+	 * Reconciles only the woocommerce products modified since the previous delta sync of the connection
+	 * (or since its onboarding started) and advances its high-water mark.
+	 * 
+	 * @return the report
+	 */
+	String deltaSync(SyncConnection syncConnection);
+	/**
+	 * Compares the whole woocommerce catalog of an onboarded connection with the inventory again, recording it as
+	 * a DRIFT run. The differences are written to the website when <code>repair</code>, only reported otherwise.
+	 * 
+	 * @return the completed or cancelled run; empty, without checking anything, while the onboarding is not completed
+	 */
+	Optional<ReconciliationRun> detectDrift(SyncConnection syncConnection, boolean repair, Writer report, BooleanSupplier cancelled);
+	/**
+	 * @param kind null for the runs of every kind
+	 * @return the latest runs of the connection, newest first
+	 */
+	List<ReconciliationRun> findRuns(Integer syncConnectionId, ReconciliationRun.Kind kind, int limit);
 	void deleteConnection(Integer syncConnectionId);
 	Iterable<SyncConnection> findAll();
 	ResponseEntity<String> updatePrice(ChangePriceCommand command);
 	ResponseEntity<Product> updateStock(ChangeStockCommand command);
+	/**
+	 * @param pageFetchConcurrency null keeps the stored value
+	 */
 	Object updateConnection(Integer syncConnectionId, String inventoryServiceUrl, String websiteUrl, String key,
-			String secret);
+			String secret, Integer pageFetchConcurrency);
 	ResponseEntity<String> createProduct(CreateProductCommand command);
 	ResponseEntity<String> deleteProduct(DeleteProductCommand command);
 	ResponseEntity<String> updateName(ChangeNameCommand command);
+	/**
+	 * Applies the commands of a bulk /update request synchronously: the woocommerce writes go out grouped per
+	 * connection, then each command is sent to moqui. A failed command doesn't stop the others.
+	 * 
+	 * @return the result of each command, in their order
+	 */
+	List<CommandResult> applyAll(List<? extends ProductCommand> commands);
 }
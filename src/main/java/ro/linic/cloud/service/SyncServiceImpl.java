@@ -1,152 +1,662 @@
 package ro.linic.cloud.service;
 
+import java.io.StringWriter;
+import java.io.Writer;
 import java.net.URI;
 import java.text.MessageFormat;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.hateoas.CollectionModel;
 import org.springframework.hateoas.MediaTypes;
+import org.springframework.hateoas.PagedModel;
 import org.springframework.hateoas.client.Traverson;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.ClientHttpRequestFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.client.RestTemplate;
 
 import lombok.extern.java.Log;
+import ro.linic.cloud.OutboundMetrics;
 import ro.linic.cloud.command.ChangeNameCommand;
 import ro.linic.cloud.command.ChangePriceCommand;
 import ro.linic.cloud.command.ChangeStockCommand;
 import ro.linic.cloud.command.CreateProductCommand;
 import ro.linic.cloud.command.DeleteProductCommand;
+import ro.linic.cloud.command.ProductCommand;
+import ro.linic.cloud.entity.ReconciliationRun;
+import ro.linic.cloud.entity.ReconciliationRun.Status;
 import ro.linic.cloud.entity.SyncConnection;
 import ro.linic.cloud.entity.SyncLine;
+import ro.linic.cloud.pojo.CommandResult;
 import ro.linic.cloud.pojo.Product;
+import ro.linic.cloud.pojo.ProductWrite;
+import ro.linic.cloud.pojo.ProductWrite.Kind;
+import ro.linic.cloud.repository.ReconciliationRunRepository;
 import ro.linic.cloud.repository.SyncConnectionRepository;
 import ro.linic.cloud.repository.SyncProductRepository;
 
 @Log
 @Service
 class SyncServiceImpl implements SyncService {
+	private static final int MAX_ERROR_LENGTH = 2000;
+	
 	@Autowired private WoocommerceService woocommerceService;
 	@Autowired private MoquiApi moquiApi;
 	@Autowired private SyncProductRepository syncProductRepo;
 	@Autowired private SyncConnectionRepository syncConnRepo;
+	@Autowired private ReconciliationRunRepository runRepo;
+	@Autowired private SyncLookupCache lookupCache;
+	@Autowired private TransactionTemplate transactionTemplate;
+	@Autowired private SyncExecutors syncExecutors;
+	@Autowired private ClientHttpRequestFactory httpRequestFactory;
+	@Autowired private ReconciliationMetrics reconciliationMetrics;
+	
+	@Value("${sync.reconcile.workers:8}") private int reconcileWorkers;
+	@Value("${sync.reconcile.inventory-concurrency:4}") private int inventoryConcurrency;
+	@Value("${sync.reconcile.website-concurrency:4}") private int websiteConcurrency;
+	@Value("${sync.inventory.bulk-lookup:true}") private boolean bulkInventoryLookup;
+	@Value("${sync.inventory.page-size:500}") private int inventoryPageSize;
+	@Value("${sync.reconcile.batch-writes:true}") private boolean batchWebsiteWrites;
+	@Value("${sync.reconcile.stale-after:PT10M}") private Duration staleRunAfter;
+	@Value("${sync.delta.overlap:PT5M}") private Duration deltaOverlap;
 	
 	@Override
-	@Transactional(propagation = Propagation.REQUIRED)
 	public String createConnection(final SyncConnection syncConnection) {
-		if (syncConnRepo.findByCompanyId(syncConnection.getCompanyId()).isPresent())
-			throw new RuntimeException("SyncConnection already exists for company id: "+syncConnection.getCompanyId());
+		final StringWriter report = new StringWriter();
+		createConnection(syncConnection, report);
+		return report.toString();
+	}
+	
+	@Override
+	public void createConnection(final SyncConnection syncConnection, final Writer report) {
+		reconcile(startConnection(syncConnection), report, () -> false);
+	}
+	
+	@Override
+	public ReconciliationRun startConnection(final SyncConnection syncConnection) {
+		return transactionTemplate.execute(status -> startRun(syncConnection));
+	}
+	
+	@Override
+	public void reconcile(final ReconciliationRun run, final Writer report, final BooleanSupplier cancelled) {
+		reconcile(run, report, cancelled, true);
+	}
+	
+	@Override
+	public Optional<ReconciliationRun> detectDrift(final SyncConnection syncConnection, final boolean repair, final Writer report,
+			final BooleanSupplier cancelled) {
+		final boolean onboarded = runRepo.findFirstBySyncConnectionIdAndKindOrderByIdDesc(syncConnection.getId(),
+				ReconciliationRun.Kind.ONBOARDING)
+				.map(onboarding -> onboarding.getStatus() == Status.COMPLETED)
+				.orElse(true);
+		if (!onboarded)
+			return Optional.empty();
+		
+		final ReconciliationRun run = transactionTemplate.execute(status ->
+				runRepo.save(new ReconciliationRun(syncConnection, ReconciliationRun.Kind.DRIFT, Instant.now())));
+		if (!repair)
+			new ReportWriter(report).write(MessageFormat.format("Drift check of company {0,number,#}, nothing is written to the website",
+					syncConnection.getCompanyId()));
+		reconcile(run, report, cancelled, repair);
+		return Optional.of(run);
+	}
+	
+	/**
+	 * @param repair false to only count and report the differences, without writing them to the website
+	 */
+	private void reconcile(final ReconciliationRun run, final Writer report, final BooleanSupplier cancelled, final boolean repair) {
+		final ReportWriter reportWriter = new ReportWriter(report);
+		if (run.getLastPage() > 0)
+			reportWriter.line(MessageFormat.format("Resuming the onboarding of company {0,number,#} after Woo page {1,number,#}",
+					run.getSyncConnection().getCompanyId(), run.getLastPage()));
+		
+		final long attemptStart = System.nanoTime();
+		final ReconcileCounters counters = new ReconcileCounters(run);
+		try {
+			OutboundMetrics.counted(counters.getCalls(), () -> reconcilePages(run, counters, reportWriter, cancelled, repair));
+			run.setStatus(Status.COMPLETED);
+		} catch (final CancellationException e) {
+			run.setStatus(Status.CANCELLED);
+			reportWriter.line(MessageFormat.format("Cancelled after Woo page {0,number,#}", run.getLastPage()));
+		} catch (final RuntimeException e) {
+			run.setStatus(Status.FAILED);
+			final String error = e.getMessage();
+			run.setLastError(error != null && error.length() > MAX_ERROR_LENGTH ? error.substring(0, MAX_ERROR_LENGTH) : error);
+			counters.copyUsageTo(run);
+			transactionTemplate.execute(status -> runRepo.save(run));
+			reconciliationMetrics.attemptEnded(run, Duration.ofNanos(System.nanoTime() - attemptStart));
+			throw e;
+		}
+		
+		run.setFinishedAt(Instant.now());
+		counters.copyUsageTo(run);
+		transactionTemplate.execute(status ->
+		{
+			// the delta sync picks up what changed since the onboarding started
+			if (run.getStatus() == Status.COMPLETED && run.getSyncConnection().getDeltaSyncedAt() == null)
+				syncConnRepo.updateDeltaSyncedAt(run.getSyncConnection().getId(), run.getStartedAt());
+			return runRepo.save(run);
+		});
+		reconciliationMetrics.attemptEnded(run, Duration.ofNanos(System.nanoTime() - attemptStart));
+		
+		reportWriter.line("").line(MessageFormat.format("Woocommerce products deactivated {2}/{0}{1}"
+				+ "Name differences {3}/{0}{1}"
+				+ "Woocommerce price updated {4}/{0}{1}"
+				+ "Woocommerce stock updated {5}/{0}{1}",
+				run.getProducts(), System.lineSeparator(),
+				run.getDeactivated(), run.getNameDifferences(),
+				run.getPriceChanges(), run.getStockChanges()));
+		reportWriter.flush();
+	}
+	
+	/**
+	 * Saves the new connection with a new run or, when the connection of the company exists and its last run
+	 * was interrupted, picks that run up again; the stored connection is used then.
+	 */
+	private ReconciliationRun startRun(final SyncConnection syncConnection) {
+		final Optional<SyncConnection> existingConn = syncConnRepo.findByCompanyId(syncConnection.getCompanyId());
+		if (existingConn.isPresent())
+		{
+			final ReconciliationRun interruptedRun = runRepo.findFirstBySyncConnectionIdAndKindOrderByIdDesc(existingConn.get().getId(),
+					ReconciliationRun.Kind.ONBOARDING)
+					.filter(this::isInterrupted)
+					.orElseThrow(() -> new RuntimeException("SyncConnection already exists for company id: "+syncConnection.getCompanyId()));
+			interruptedRun.setStatus(Status.RUNNING);
+			interruptedRun.setHeartbeatAt(Instant.now());
+			interruptedRun.setLastError(null);
+			return runRepo.save(interruptedRun);
+		}
 		
 		final SyncConnection savedConn = syncConnRepo.save(syncConnection);
-		final List<Product> wooProducts = woocommerceService.allProducts(savedConn);
-		final int companyId = savedConn.getCompanyId();
+		lookupCache.invalidateAll();
+		return runRepo.save(new ReconciliationRun(savedConn, Instant.now()));
+	}
+	
+	private boolean isInterrupted(final ReconciliationRun run) {
+		return run.getStatus() == Status.FAILED || run.getStatus() == Status.CANCELLED ||
+				run.getStatus() == Status.RUNNING && run.getHeartbeatAt().isBefore(Instant.now().minus(staleRunAfter));
+	}
+	
+	/**
+	 * Reconciles the woocommerce pages after the cursor of the run. The remote calls are made outside of any
+	 * database transaction; each page's sync lines are committed together with the advanced cursor.
+	 * 
+	 * @param counters continuing the counts of the run; the time of the phases is added to them
+	 */
+	private void reconcilePages(final ReconciliationRun run, final ReconcileCounters counters, final ReportWriter reportWriter,
+			final BooleanSupplier cancelled, final boolean repair) {
+		// cancelled while it was queued
+		if (cancelled.getAsBoolean())
+			throw new CancellationException();
 		
-		final StringBuilder sb = new StringBuilder();
-		final AtomicInteger deactivated = new AtomicInteger(0);
-		final AtomicInteger nameDifference = new AtomicInteger(0);
-		final AtomicInteger priceChange = new AtomicInteger(0);
-		final AtomicInteger stockChange = new AtomicInteger(0);
+		final SyncConnection syncConnection = run.getSyncConnection();
+		final int companyId = syncConnection.getCompanyId();
+		
+		// the progress reference, committed with the first page
+		if (run.getTotalProducts() == null)
+			run.setTotalProducts(ReconcileCounters.timed(counters.getFetchNanos(), () -> woocommerceService.productCount(syncConnection)));
+		final Semaphore inventoryPermits = new Semaphore(Math.max(1, inventoryConcurrency));
 		
 		final Traverson client = createTraverson(syncConnection.getInventoryServiceUrl());
-		wooProducts.forEach(wooProd ->
+		final Function<Product, Optional<Product>> inventorySearch;
+		if (bulkInventoryLookup)
+			inventorySearch = ReconcileCounters.timed(counters.getMatchNanos(), () -> loadInventoryIndex(client, companyId))::match;
+		else
+			inventorySearch = wooProd -> withPermit(inventoryPermits, () -> searchInventory(client, companyId, wooProd));
+		final Function<Product, Optional<Product>> inventoryLookup =
+				wooProd -> ReconcileCounters.timed(counters.getMatchNanos(), () -> inventorySearch.apply(wooProd));
+		
+		final WoocommerceBatchWriter batchWriter = batchWebsiteWrites && repair ? woocommerceService.batchWriter() : null;
+		final Consumer<ProductWrite> websiteWriter = repair ? websiteWriter(syncConnection, batchWriter) : write -> {};
+		final Consumer<ProductWrite> timedWebsiteWriter =
+				write -> ReconcileCounters.timed(counters.getWriteNanos(), () -> websiteWriter.accept(write));
+		
+		// productId -> wooId of the lines already stored for the connection and of the ones created so far
+		final Map<Integer, Integer> linkedWooIds = new HashMap<>();
+		// wooId -> fingerprint of the stored lines; a full pass never skips on them, it only refreshes them
+		final Map<Integer, Long> fingerprints = new HashMap<>();
+		syncProductRepo.findBySyncConnectionId(syncConnection.getId())
+		.forEach(line ->
 		{
-			final CollectionModel<Product> foundLProduct = client
-					.follow("products", "search", "findByCompanyIdAndBarcode")
-					.withTemplateParameters(Map.of("companyId", companyId, "barcode", wooProd.getBarcode()))
-					.toObject(new ParameterizedTypeReference<CollectionModel<Product>>(){});
-			final Optional<Product> lProdO = foundLProduct.getContent().stream().findFirst().or(() ->
-			{
-				// alternate search for name
-				return client.follow("products", "search", "findByCompanyIdAndNameIgnoreCase")
-				.withTemplateParameters(Map.of("companyId", companyId, "name", wooProd.getName()))
-				.toObject(new ParameterizedTypeReference<CollectionModel<Product>>(){})
-				.getContent().stream().findFirst();
-			});
-			
-			if (lProdO.isEmpty())
+			linkedWooIds.put(line.getProductId(), line.getWooId());
+			fingerprints.put(line.getWooId(), line.getFingerprint());
+		});
+		// on virtual threads all the products of a page run at once, bounded by the inventory and website permits
+		final ExecutorService executor = reconcileWorkers > 1 || syncExecutors.isVirtual() ?
+				syncExecutors.newExecutor(reconcileWorkers, "reconcile-") : null;
+		// the time spent outside of the page consumer is the wait for the next woocommerce page
+		final AtomicLong pageAwaitedSince = new AtomicLong(System.nanoTime());
+		final AtomicInteger lastFetchedPage = new AtomicInteger(run.getLastPage());
+		try {
+			// products are reconciled page by page, as they arrive from woocommerce
+			woocommerceService.forEachProductPage(syncConnection, run.getLastPage() + 1, (wooProducts, pageNo) ->
 			{
-				if (wooProd.getVisible())
+				counters.getFetchNanos().addAndGet(System.nanoTime() - pageAwaitedSince.get());
+				// the fetched page is dropped; a resumed run fetches it again
+				if (cancelled.getAsBoolean())
+					throw new CancellationException();
+				
+				counters.getProducts().addAndGet(wooProducts.size());
+				final List<ProductReconciliation> results = fanOut(executor, wooProducts, wooProd ->
+						reconcileProduct(inventoryLookup, syncConnection, wooProd, null, counters, timedWebsiteWriter));
+				flushFullBatch(batchWriter, wooProducts.size(), counters);
+				
+				final List<SyncLine> changedFingerprints = changedFingerprints(results, fingerprints);
+				final List<SyncLine> newLines = newSyncLines(results, syncConnection, linkedWooIds, reportWriter);
+				
+				lastFetchedPage.set(pageNo);
+				// the cursor and the counts only move past a page once its website writes went out;
+				// a resumed run reconciles the pages after it again
+				if (batchWriter == null || batchWriter.pending() == 0)
 				{
-					woocommerceService.deactivateProduct(syncConnection, wooProd.getId());
-					sb.append(System.lineSeparator())
-					.append(MessageFormat.format("Deactivating Woo SKU {0}: {1}", wooProd.getBarcode(), wooProd.getName(),
-							deactivated.incrementAndGet()));
+					run.setLastPage(pageNo);
+					counters.copyTo(run);
 				}
+				run.setHeartbeatAt(Instant.now());
+				ReconcileCounters.timed(counters.getPersistNanos(), () -> transactionTemplate.execute(status ->
+				{
+					saveNewLines(syncConnection, newLines);
+					syncProductRepo.updateFingerprints(syncConnection.getId(), changedFingerprints);
+					return runRepo.save(run);
+				}));
+				reportWriter.flush();
+				pageAwaitedSince.set(System.nanoTime());
+			});
+		} finally {
+			// the writes of a failed or cancelled run are sent too, they are right regardless
+			if (batchWriter != null)
+				ReconcileCounters.timed(counters.getWriteNanos(), batchWriter::flush);
+			if (executor != null)
+				executor.shutdownNow();
+		}
+		run.setLastPage(lastFetchedPage.get());
+		counters.copyTo(run);
+	}
+	
+	/**
+	 * The website writes accumulate over the pages into bulk requests of up to <code>woocommerce.batch.size</code>
+	 * products; they are sent once the next page, of at most one write per product, might not fit anymore.
+	 */
+	private static void flushFullBatch(final WoocommerceBatchWriter batchWriter, final int pageSize,
+			final ReconcileCounters counters) {
+		if (batchWriter != null && batchWriter.pending() + pageSize > batchWriter.batchSize())
+			ReconcileCounters.timed(counters.getWriteNanos(), batchWriter::flush);
+	}
+	
+	/**
+	 * Reconciles the woocommerce products modified since the delta mark of the connection(less
+	 * <code>sync.delta.overlap</code>, for the clock skew) and moves the mark to the start of this sync.
+	 * The inventory is searched product by product, so the cost follows the changes rather than the catalog size;
+	 * linked products still matching the fingerprint of their line are only echoes of the sync's own writes
+	 * and are skipped without searching.
+	 */
+	@Override
+	public String deltaSync(final SyncConnection syncConnection) {
+		final StringWriter report = new StringWriter();
+		final ReportWriter reportWriter = new ReportWriter(report);
+		final int companyId = syncConnection.getCompanyId();
+		final Optional<Instant> deltaMark = deltaMark(syncConnection);
+		if (deltaMark.isEmpty())
+		{
+			reportWriter.write(MessageFormat.format("Delta sync of company {0,number,#} skipped, its onboarding is not completed", companyId));
+			return report.toString();
+		}
+		
+		final Instant syncStartedAt = Instant.now();
+		final Instant modifiedSince = deltaMark.get().minus(deltaOverlap);
+		final ReconcileCounters counters = new ReconcileCounters();
+		final Semaphore inventoryPermits = new Semaphore(Math.max(1, inventoryConcurrency));
+		final Traverson client = createTraverson(syncConnection.getInventoryServiceUrl());
+		final Function<Product, Optional<Product>> inventoryLookup =
+				wooProd -> withPermit(inventoryPermits, () -> searchInventory(client, companyId, wooProd));
+		final WoocommerceBatchWriter batchWriter = batchWebsiteWrites ? woocommerceService.batchWriter() : null;
+		final Consumer<ProductWrite> websiteWriter = websiteWriter(syncConnection, batchWriter);
+		final ExecutorService executor = reconcileWorkers > 1 || syncExecutors.isVirtual() ?
+				syncExecutors.newExecutor(reconcileWorkers, "delta-") : null;
+		try {
+			woocommerceService.forEachModifiedProductPage(syncConnection, modifiedSince, (wooProducts, pageNo) ->
+			{
+				counters.getProducts().addAndGet(wooProducts.size());
+				final Map<Integer, Long> fingerprints = new HashMap<>();
+				syncProductRepo.findBySyncConnectionIdAndWooIdIn(syncConnection.getId(),
+						wooProducts.stream().map(Product::getId).toList())
+				.forEach(line -> fingerprints.put(line.getWooId(), line.getFingerprint()));
+				
+				final List<ProductReconciliation> results = fanOut(executor, wooProducts, wooProd ->
+						reconcileProduct(inventoryLookup, syncConnection, wooProd, fingerprints.get(wooProd.getId()),
+								counters, websiteWriter));
+				flushFullBatch(batchWriter, wooProducts.size(), counters);
+				
+				final List<SyncLine> changedFingerprints = changedFingerprints(results, fingerprints);
+				// only the lines of the matched products are loaded
+				final List<Integer> matchedProductIds = results.stream()
+						.filter(result -> result.getSyncLine() != null)
+						.map(result -> result.getSyncLine().getProductId())
+						.toList();
+				final Map<Integer, Integer> linkedWooIds = new HashMap<>();
+				if (!matchedProductIds.isEmpty())
+					syncProductRepo.findBySyncConnectionIdAndProductIdIn(syncConnection.getId(), matchedProductIds)
+					.forEach(line -> linkedWooIds.put(line.getProductId(), line.getWooId()));
+				
+				final List<SyncLine> newLines = newSyncLines(results, syncConnection, linkedWooIds, reportWriter);
+				if (!newLines.isEmpty() || !changedFingerprints.isEmpty())
+					transactionTemplate.execute(status ->
+					{
+						saveNewLines(syncConnection, newLines);
+						syncProductRepo.updateFingerprints(syncConnection.getId(), changedFingerprints);
+						return null;
+					});
+			});
+		} finally {
+			if (batchWriter != null)
+				batchWriter.flush();
+			if (executor != null)
+				executor.shutdownNow();
+		}
+		
+		// not moved when the sync failed, the next one starts from the same mark
+		transactionTemplate.execute(status -> syncConnRepo.updateDeltaSyncedAt(syncConnection.getId(), syncStartedAt));
+		syncConnection.setDeltaSyncedAt(syncStartedAt);
+		
+		reportWriter.line(MessageFormat.format("Delta sync of company {0,number,#}: {1} Woo products modified since {2}{3}"
+				+ "Woocommerce products deactivated {4}/{1}{3}"
+				+ "Name differences {5}/{1}{3}"
+				+ "Woocommerce price updated {6}/{1}{3}"
+				+ "Woocommerce stock updated {7}/{1}{3}"
+				+ "Unchanged since the last sync {8}/{1}",
+				companyId, counters.getProducts().get(), modifiedSince, System.lineSeparator(),
+				counters.getDeactivated().get(), counters.getNameDifference().get(),
+				counters.getPriceChange().get(), counters.getStockChange().get(), counters.getUnchanged().get()));
+		return report.toString();
+	}
+	
+	/**
+	 * The stored mark or, for connections onboarded before the delta sync existed, the start of their last
+	 * completed run(now if they have no runs); empty while the onboarding did not complete.
+	 */
+	private Optional<Instant> deltaMark(final SyncConnection syncConnection) {
+		if (syncConnection.getDeltaSyncedAt() != null)
+			return Optional.of(syncConnection.getDeltaSyncedAt());
+		
+		final Optional<ReconciliationRun> lastRun = runRepo.findFirstBySyncConnectionIdAndKindOrderByIdDesc(syncConnection.getId(),
+				ReconciliationRun.Kind.ONBOARDING);
+		if (lastRun.isEmpty())
+			return Optional.of(Instant.now());
+		return lastRun.filter(run -> run.getStatus() == Status.COMPLETED).map(ReconciliationRun::getStartedAt);
+	}
+	
+	/**
+	 * Writes to the website through the batch writer, when batching, with at most <code>sync.reconcile.website-concurrency</code>
+	 * writes in flight.
+	 */
+	private Consumer<ProductWrite> websiteWriter(final SyncConnection syncConnection, final WoocommerceBatchWriter batchWriter) {
+		final Semaphore websitePermits = new Semaphore(Math.max(1, websiteConcurrency));
+		return write -> withPermit(websitePermits, () ->
+		{
+			if (batchWriter != null)
+				return batchWriter.submit(syncConnection, write);
+			if (write.getKind() == Kind.DEACTIVATE)
+				return woocommerceService.deactivateProduct(syncConnection, write.getWooId());
+			return woocommerceService.patchProduct(syncConnection, write.getProduct());
+		});
+	}
+	
+	/**
+	 * Writes the report lines of the page and returns the sync lines to create, both in the original product order,
+	 * on the calling thread. Products already linked to the same woocommerce product are skipped silently.
+	 * 
+	 * @param linkedWooIds productId -> wooId of the stored lines; the returned lines are added to it
+	 */
+	private List<SyncLine> newSyncLines(final List<ProductReconciliation> results, final SyncConnection syncConnection,
+			final Map<Integer, Integer> linkedWooIds, final ReportWriter reportWriter) {
+		final List<SyncLine> newLines = new ArrayList<>();
+		results.forEach(result ->
+		{
+			result.getReportLines().forEach(reportWriter::line);
+			if (result.getSyncLine() == null)
 				return;
-			}
-			// woo barcode exists in Linic platform
-			final Product lProd = lProdO.get();
 			
-			boolean triggerUpdate = false;
-			// update woo barcode(in case product was found by name matching)
-			if (!wooProd.getBarcode().equalsIgnoreCase(lProd.getBarcode()))
+			final SyncLine syncLine = result.getSyncLine();
+			// duplicates are resolved in memory; uk_sync_line_connection_product rejects any concurrent one
+			final Integer linkedWooId = linkedWooIds.putIfAbsent(syncLine.getProductId(), syncLine.getWooId());
+			if (linkedWooId != null)
 			{
-				triggerUpdate = true;
-				wooProd.setBarcode(lProd.getBarcode());
+				if (!linkedWooId.equals(syncLine.getWooId()))
+					reportWriter.line(MessageFormat.format("Woo id {0,number,#} not linked, its product {1,number,#} is already linked to Woo id {2,number,#}",
+							syncLine.getWooId(), syncLine.getProductId(), linkedWooId));
+				return;
 			}
+			syncLine.setSyncConnection(syncConnection);
+			newLines.add(syncLine);
+		});
+		return newLines;
+	}
+	
+	/**
+	 * The reconciled lines whose fingerprint differs from the stored line of their woocommerce product.
+	 * 
+	 * @param fingerprints wooId -> fingerprint of the stored lines; updated with the returned ones
+	 */
+	private static List<SyncLine> changedFingerprints(final List<ProductReconciliation> results, final Map<Integer, Long> fingerprints) {
+		final List<SyncLine> changed = new ArrayList<>();
+		for (final ProductReconciliation result : results)
+		{
+			final SyncLine syncLine = result.getSyncLine();
+			if (syncLine == null || !fingerprints.containsKey(syncLine.getWooId()))
+				continue;
 			
-			// update woo name
-			if (!wooProd.getName().equalsIgnoreCase(lProd.getName()))
-				sb.append(System.lineSeparator())
-				.append(MessageFormat.format("{0} Woo name({1}) != {2}", lProd.getBarcode(), wooProd.getName(), lProd.getName(),
-						nameDifference.incrementAndGet()));
-			
-			// update woo price
-			if (wooProd.getPricePerUom().compareTo(lProd.getPricePerUom()) != 0)
+			final Long stored = fingerprints.put(syncLine.getWooId(), syncLine.getFingerprint());
+			if (!syncLine.getFingerprint().equals(stored))
+				changed.add(syncLine);
+		}
+		return changed;
+	}
+	
+	/**
+	 * Inserts the lines in jdbc batches of hibernate.jdbc.batch_size, without auditing them. An /update that
+	 * arrived before they were committed may have cached its product as not linked, so those lookups are
+	 * dropped, again once the transaction ended.
+	 */
+	private void saveNewLines(final SyncConnection syncConnection, final List<SyncLine> newLines) {
+		if (newLines.isEmpty())
+			return;
+		
+		syncProductRepo.insertAll(newLines);
+		newLines.forEach(line -> lookupCache.invalidateLine(syncConnection.getId(), line.getProductId()));
+	}
+	
+	
+	/**
+	 * Matches one woocommerce product against the Linic inventory and updates the website if needed.
+	 * Safe to call concurrently: it only touches the remote services and the thread safe counters;
+	 * the SyncLine to create is returned instead of being persisted, carrying the fingerprint of the
+	 * product as it is on the website after the writes.
+	 * 
+	 * @param storedFingerprint fingerprint of the stored line of the product; the product is skipped
+	 * when it still matches. null to always reconcile
+	 */
+	private ProductReconciliation reconcileProduct(final Function<Product, Optional<Product>> inventoryLookup,
+			final SyncConnection syncConnection, final Product wooProd, final Long storedFingerprint,
+			final ReconcileCounters counters, final Consumer<ProductWrite> websiteWriter) {
+		final ProductReconciliation result = new ProductReconciliation();
+		// nobody touched it since the sync wrote or confirmed it
+		if (storedFingerprint != null && storedFingerprint == Fingerprints.of(wooProd))
+		{
+			counters.getUnchanged().incrementAndGet();
+			return result;
+		}
+		
+		final Optional<Product> lProdO = inventoryLookup.apply(wooProd);
+		
+		if (lProdO.isEmpty())
+		{
+			if (wooProd.getVisible())
 			{
-				sb.append(System.lineSeparator())
-				.append(MessageFormat.format("Set price of {0} {1} from {2} to {3}", wooProd.getBarcode(), wooProd.getName(),
-						wooProd.getPricePerUom(), lProd.getPricePerUom(), priceChange.incrementAndGet()));
-				triggerUpdate = true;
-				wooProd.setPricePerUom(lProd.getPricePerUom());
+				websiteWriter.accept(ProductWrite.deactivate(wooProd.getId()));
+				result.report(MessageFormat.format("Deactivating Woo SKU {0}: {1}", wooProd.getBarcode(), wooProd.getName(),
+						counters.getDeactivated().incrementAndGet()));
 			}
-			
-			// update woo stock
-			if (wooProd.getStock().compareTo(lProd.getStock()) != 0)
+			return result;
+		}
+		// woo barcode exists in Linic platform
+		final Product lProd = lProdO.get();
+		
+		// only the changed fields are sent; the woo name is never overwritten, it may be kept different on purpose
+		final Product wooPatch = Product.builder().id(wooProd.getId()).build();
+		boolean triggerUpdate = false;
+		// update woo barcode(in case product was found by name matching)
+		if (!wooProd.getBarcode().equalsIgnoreCase(lProd.getBarcode()))
+		{
+			triggerUpdate = true;
+			wooProd.setBarcode(lProd.getBarcode());
+			wooPatch.setBarcode(lProd.getBarcode());
+		}
+		
+		// update woo name
+		if (!wooProd.getName().equalsIgnoreCase(lProd.getName()))
+			result.report(MessageFormat.format("{0} Woo name({1}) != {2}", lProd.getBarcode(), wooProd.getName(), lProd.getName(),
+					counters.getNameDifference().incrementAndGet()));
+		
+		// update woo price
+		if (wooProd.getPricePerUom().compareTo(lProd.getPricePerUom()) != 0)
+		{
+			result.report(MessageFormat.format("Set price of {0} {1} from {2} to {3}", wooProd.getBarcode(), wooProd.getName(),
+					wooProd.getPricePerUom(), lProd.getPricePerUom(), counters.getPriceChange().incrementAndGet()));
+			triggerUpdate = true;
+			wooProd.setPricePerUom(lProd.getPricePerUom());
+			wooPatch.setPricePerUom(lProd.getPricePerUom());
+		}
+		
+		// update woo stock
+		if (wooProd.getStock().compareTo(lProd.getStock()) != 0)
+		{
+			result.report(MessageFormat.format("Set stock of {0} {1} from {2} to {3}", wooProd.getBarcode(), wooProd.getName(),
+					wooProd.getStock(), lProd.getStock(), counters.getStockChange().incrementAndGet()));
+			triggerUpdate = true;
+			wooProd.setStock(lProd.getStock());
+			wooPatch.setStock(lProd.getStock());
+		}
+		
+		// update WOO
+		if (triggerUpdate)
+			websiteWriter.accept(ProductWrite.patch(wooPatch));
+		
+		// sync connection to create
+		final SyncLine syncLine = new SyncLine(null, syncConnection, lProd.getId(), wooProd.getId(), null);
+		if (!wooProd.getName().equalsIgnoreCase(lProd.getName()))
+			syncLine.setWooName(wooProd.getName());
+		syncLine.setFingerprint(Fingerprints.of(wooProd));
+		result.setSyncLine(syncLine);
+		return result;
+	}
+	
+	/**
+	 * Pages through all the inventory products of the company once and indexes them in memory.
+	 */
+	private InventoryIndex loadInventoryIndex(final Traverson client, final int companyId) {
+		final InventoryIndex index = new InventoryIndex();
+		int page = 0;
+		long totalPages;
+		do {
+			final int currentPage = page;
+			final PagedModel<Product> foundLProducts = OutboundMetrics.tagged(OutboundMetrics.INVENTORY, "index-page", companyId,
+					() -> client.follow("products", "search", "findByCompanyId")
+					.withTemplateParameters(Map.of("companyId", companyId, "page", currentPage, "size", inventoryPageSize))
+					.toObject(new ParameterizedTypeReference<PagedModel<Product>>(){}));
+			foundLProducts.getContent().forEach(index::add);
+			totalPages = foundLProducts.getMetadata() != null ? foundLProducts.getMetadata().getTotalPages() : 1;
+			page++;
+		} while (page < totalPages);
+		
+		return index;
+	}
+	
+	private Optional<Product> searchInventory(final Traverson client, final int companyId, final Product wooProd) {
+		return OutboundMetrics.tagged(OutboundMetrics.INVENTORY, "search", companyId, () ->
+		{
+			final CollectionModel<Product> foundLProduct = client
+					.follow("products", "search", "findByCompanyIdAndBarcode")
+					.withTemplateParameters(Map.of("companyId", companyId, "barcode", wooProd.getBarcode()))
+					.toObject(new ParameterizedTypeReference<CollectionModel<Product>>(){});
+			return foundLProduct.getContent().stream().findFirst().or(() ->
 			{
-				sb.append(System.lineSeparator())
-				.append(MessageFormat.format("Set stock of {0} {1} from {2} to {3}", wooProd.getBarcode(), wooProd.getName(),
-						wooProd.getStock(), lProd.getStock(), stockChange.incrementAndGet()));
-				triggerUpdate = true;
-				wooProd.setStock(lProd.getStock());
-			}
-			
-			// update WOO
-			if (triggerUpdate)
-				woocommerceService.putProduct(syncConnection, wooProd);
-			
-			// create sync connections
-			final List<SyncLine> foundSyncLine = syncProductRepo.findBySyncConnectionIdAndProductIdAndWooId(savedConn.getId(),
-					lProd.getId(), wooProd.getId());
-			
-			if (!foundSyncLine.isEmpty())
-				return;
-			final SyncLine syncLine = new SyncLine(null, savedConn, lProd.getId(), wooProd.getId(), null);
-			if (!wooProd.getName().equalsIgnoreCase(lProd.getName()))
-				syncLine.setWooName(wooProd.getName());
-			syncProductRepo.save(syncLine);
+				// alternate search for name
+				return client.follow("products", "search", "findByCompanyIdAndNameIgnoreCase")
+				.withTemplateParameters(Map.of("companyId", companyId, "name", wooProd.getName()))
+				.toObject(new ParameterizedTypeReference<CollectionModel<Product>>(){})
+				.getContent().stream().findFirst();
+			});
 		});
+	}
+	
+	/**
+	 * Applies the task to every item on the executor and returns the results in the input order.
+	 * Without an executor the items are processed serially on the calling thread.
+	 */
+	private static <T, R> List<R> fanOut(final ExecutorService executor, final List<T> items, final Function<T, R> task) {
+		if (executor == null || items.size() <= 1)
+			return items.stream().map(task).toList();
 		
-		sb.append(System.lineSeparator()).append(System.lineSeparator())
-		.append(MessageFormat.format("Woocommerce products deactivated {2}/{0}{1}"
-				+ "Name differences {3}/{0}{1}"
-				+ "Woocommerce price updated {4}/{0}{1}"
-				+ "Woocommerce stock updated {5}/{0}{1}",
-				wooProducts.size(), System.lineSeparator(),
-				deactivated.get(), nameDifference.get(), priceChange.get(), stockChange.get()));
-		return sb.toString();
+		final List<Future<R>> futures = items.stream()
+				.map(item -> executor.submit(OutboundMetrics.inheritCounts(() -> task.apply(item))))
+				.toList();
+		try {
+			final List<R> results = new ArrayList<>(items.size());
+			for (final Future<R> future : futures)
+				results.add(future.get());
+			return results;
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (final ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw new RuntimeException(e.getCause());
+		} finally {
+			futures.forEach(future -> future.cancel(true));
+		}
+	}
+	
+	private static <T> T withPermit(final Semaphore permits, final Supplier<T> call) {
+		permits.acquireUninterruptibly();
+		try {
+			return call.get();
+		} finally {
+			permits.release();
+		}
 	}
 	
 	@Override
 	public Object updateConnection(final Integer syncConnectionId, final String inventoryServiceUrl, final String websiteUrl,
-			final String key, final String secret) {
+			final String key, final String secret, final Integer pageFetchConcurrency) {
 		final Optional<SyncConnection> sync = syncConnRepo.findById(syncConnectionId);
 		return sync.map(s ->
 		{
@@ -154,15 +664,28 @@ class SyncServiceImpl implements SyncService {
 			s.setWebsiteUrl(websiteUrl);
 			s.setWebsiteKey(key);
 			s.setWebsiteSecret(secret);
-			return syncConnRepo.save(s);
+			if (pageFetchConcurrency != null)
+				s.setPageFetchConcurrency(pageFetchConcurrency);
+			final SyncConnection saved = syncConnRepo.save(s);
+			lookupCache.invalidateAll();
+			return saved;
 		}).orElse(null);
 	}
 
+	@Override
+	public List<ReconciliationRun> findRuns(final Integer syncConnectionId, final ReconciliationRun.Kind kind, final int limit) {
+		final PageRequest page = PageRequest.of(0, limit);
+		return kind == null ? runRepo.findBySyncConnectionIdOrderByIdDesc(syncConnectionId, page) :
+			runRepo.findBySyncConnectionIdAndKindOrderByIdDesc(syncConnectionId, kind, page);
+	}
+
 	@Override
 	@Transactional(propagation = Propagation.REQUIRED)
 	public void deleteConnection(final Integer syncConnectionId) {
 		syncProductRepo.deleteAll(syncProductRepo.findBySyncConnectionId(syncConnectionId));
+		runRepo.deleteAll(runRepo.findBySyncConnectionId(syncConnectionId));
 		syncConnRepo.deleteById(syncConnectionId);
+		lookupCache.invalidateAll();
 	}
 	
 	@Override
@@ -226,8 +749,61 @@ class SyncServiceImpl implements SyncService {
 		
 		return moquiApi.deleteProduct(command);
 	}
+	
+	@Override
+	public List<CommandResult> applyAll(final List<? extends ProductCommand> commands) {
+		final List<CompletableFuture<ResponseEntity<Product>>> wooResults = woocommerceService.applyAll(commands);
+		final List<CommandResult> results = new ArrayList<>(commands.size());
+		for (int i = 0; i < commands.size(); i++)
+		{
+			final ProductCommand command = commands.get(i);
+			final CommandResult result = CommandResult.of(command, HttpStatus.OK.value());
+			try {
+				final ResponseEntity<Product> wooResponse = wooResults.get(i).join();
+				result.setStatus(wooResponse.getStatusCode().value());
+				if (!wooResponse.getStatusCode().is2xxSuccessful())
+					result.setError("Woocommerce answered "+wooResponse.getStatusCode());
+			} catch (final CompletionException e) {
+				log.log(Level.SEVERE, e.getCause().getMessage(), e.getCause());
+				result.setStatus(HttpStatus.BAD_GATEWAY.value());
+				result.setError("Woocommerce: "+e.getCause().getMessage());
+			}
+			
+			// like the single endpoints, the moqui answer decides the status, unless the website write failed
+			try {
+				final ResponseEntity<String> moquiResponse = moquiWrite(command);
+				if (moquiResponse != null && result.getError() == null)
+					result.setStatus(moquiResponse.getStatusCode().value());
+			} catch (final RuntimeException e) {
+				log.log(Level.SEVERE, e.getMessage(), e);
+				if (result.getError() == null)
+				{
+					result.setStatus(HttpStatus.BAD_GATEWAY.value());
+					result.setError("Moqui: "+e.getMessage());
+				}
+			}
+			results.add(result);
+		}
+		return results;
+	}
+	
+	/**
+	 * @return the moqui response, null for the stock, which moqui doesn't keep
+	 */
+	private ResponseEntity<String> moquiWrite(final ProductCommand command) {
+		return switch (command) {
+		case CreateProductCommand createCommand -> moquiApi.createProduct(createCommand);
+		case DeleteProductCommand deleteCommand -> moquiApi.deleteProduct(deleteCommand);
+		case ChangePriceCommand priceCommand -> moquiApi.updatePrice(priceCommand);
+		case ChangeNameCommand nameCommand -> moquiApi.updateName(nameCommand);
+		default -> null;
+		};
+	}
 
 	protected Traverson createTraverson(final String url) {
-		return new Traverson(URI.create(url), MediaTypes.HAL_JSON);
+		// through the pooled http client instead of a new connection per request
+		final RestTemplate halTemplate = new RestTemplate(Traverson.getDefaultMessageConverters(MediaTypes.HAL_JSON));
+		halTemplate.setRequestFactory(httpRequestFactory);
+		return new Traverson(URI.create(url), MediaTypes.HAL_JSON).setRestOperations(halTemplate);
 	}
 }
@@ -0,0 +1,179 @@
+package ro.linic.cloud.service;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.ResourceAccessException;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Adaptive(AIMD) concurrency limit of the calls to each woocommerce website. The limit grows by one for every
+ * window of fast successful calls and is multiplied by <code>backoff-ratio</code> when the website answers with
+ * 429 or 5xx, times out, or gets slower than <code>latency-tolerance</code> times its usual latency of the operation.
+ * Calls over the limit wait, at most <code>max-wait</code>. Each limit is published as
+ * <code>woocommerce.limiter.limit{website}</code>, along with the calls in flight and the backoffs.
+ */
+@Component
+class WebsiteLimiter {
+	private final boolean enabled;
+	private final int initialLimit;
+	private final int maxLimit;
+	private final double backoffRatio;
+	private final double latencyTolerance;
+	private final Duration maxWait;
+	private final MeterRegistry meterRegistry;
+	// keyed by SyncConnection.websiteUrl
+	private final Map<String, AimdLimit> limits = new ConcurrentHashMap<>();
+	
+	@Autowired
+	WebsiteLimiter(@Value("${woocommerce.limiter.enabled:true}") final boolean enabled,
+			@Value("${woocommerce.limiter.initial-limit:4}") final int initialLimit,
+			@Value("${woocommerce.limiter.max-limit:32}") final int maxLimit,
+			@Value("${woocommerce.limiter.backoff-ratio:0.5}") final double backoffRatio,
+			@Value("${woocommerce.limiter.latency-tolerance:3}") final double latencyTolerance,
+			@Value("${woocommerce.limiter.max-wait:PT2M}") final Duration maxWait,
+			final MeterRegistry meterRegistry) {
+		this.enabled = enabled;
+		this.maxLimit = Math.max(1, maxLimit);
+		this.initialLimit = Math.min(Math.max(1, initialLimit), this.maxLimit);
+		this.backoffRatio = backoffRatio;
+		this.latencyTolerance = latencyTolerance;
+		this.maxWait = maxWait;
+		this.meterRegistry = meterRegistry;
+	}
+	
+	/**
+	 * Runs the call within the limit of the website.
+	 *
+	 * @param operation groups the calls of similar cost(eg. page fetch, single write, bulk write),
+	 * whose latencies are compared with each other
+	 */
+	<T> T call(final String websiteUrl, final String operation, final Supplier<T> call) {
+		if (!enabled)
+			return call.get();
+		
+		final AimdLimit limit = limits.computeIfAbsent(websiteUrl, this::newLimit);
+		limit.acquire();
+		final long start = System.nanoTime();
+		boolean overloaded = false;
+		try {
+			return call.get();
+		} catch (final RuntimeException e) {
+			overloaded = isOverload(e);
+			throw e;
+		} finally {
+			limit.release(operation, System.nanoTime() - start, overloaded);
+		}
+	}
+	
+	double limit(final String websiteUrl) {
+		final AimdLimit limit = limits.get(websiteUrl);
+		return limit != null ? limit.limit : initialLimit;
+	}
+	
+	private static boolean isOverload(final RuntimeException e) {
+		if (e instanceof HttpStatusCodeException statusException)
+			return statusException.getStatusCode().is5xxServerError() ||
+					statusException.getStatusCode().value() == HttpStatus.TOO_MANY_REQUESTS.value();
+		// timeouts and refused connections
+		return e instanceof ResourceAccessException;
+	}
+	
+	private AimdLimit newLimit(final String websiteUrl) {
+		final AimdLimit limit = new AimdLimit(websiteUrl, meterRegistry.counter("woocommerce.limiter.backoffs", "website", websiteUrl));
+		Gauge.builder("woocommerce.limiter.limit", limit, l -> l.limit)
+		.tag("website", websiteUrl)
+		.description("Concurrent calls allowed to the website")
+		.register(meterRegistry);
+		Gauge.builder("woocommerce.limiter.inflight", limit, l -> l.inFlight)
+		.tag("website", websiteUrl)
+		.description("Calls to the website in flight")
+		.register(meterRegistry);
+		return limit;
+	}
+	
+	private class AimdLimit {
+		private final String websiteUrl;
+		private final Counter backoffs;
+		private final ReentrantLock lock = new ReentrantLock();
+		private final Condition released = lock.newCondition();
+		// guarded by lock, volatile for the gauges
+		private volatile double limit = initialLimit;
+		private volatile int inFlight;
+		// operation -> smoothed latency of its answered calls, in nanos
+		private final Map<String, Double> usualLatency = new ConcurrentHashMap<>();
+		private long lastBackoffAt = System.nanoTime() - TimeUnit.SECONDS.toNanos(10);
+		
+		AimdLimit(final String websiteUrl, final Counter backoffs) {
+			this.websiteUrl = websiteUrl;
+			this.backoffs = backoffs;
+		}
+		
+		// a ReentrantLock rather than synchronized, so waiting virtual threads do not pin their carrier
+		void acquire() {
+			lock.lock();
+			try {
+				long waitNanos = maxWait.toNanos();
+				while (inFlight >= (int) limit)
+				{
+					if (waitNanos <= 0)
+						throw new CallSlotUnavailableException("Waited "+maxWait+" for a free call slot of "+websiteUrl);
+					waitNanos = released.awaitNanos(waitNanos);
+				}
+				inFlight++;
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new CallSlotUnavailableException("Interrupted while waiting for a call slot of "+websiteUrl);
+			} finally {
+				lock.unlock();
+			}
+		}
+		
+		void release(final String operation, final long latencyNanos, final boolean overloaded) {
+			lock.lock();
+			try {
+				inFlight--;
+				final Double usual = usualLatency.get(operation);
+				final boolean slow = usual != null && latencyNanos > usual * latencyTolerance;
+				if (overloaded || slow)
+					backoff(latencyNanos);
+				else
+					// one more slot for every window of successful calls
+					limit = Math.min(maxLimit, limit + 1 / limit);
+				// slow calls count too, so a website that stays slower stops being seen as overloaded
+				if (!overloaded)
+					usualLatency.put(operation, usual == null ? latencyNanos : usual * 0.9 + latencyNanos * 0.1);
+				released.signalAll();
+			} finally {
+				lock.unlock();
+			}
+		}
+		
+		/**
+		 * Backs off at most once per call duration, as the calls in flight when the website got overloaded
+		 * all report it
+		 */
+		private void backoff(final long latencyNanos) {
+			final long now = System.nanoTime();
+			if (now - lastBackoffAt < Math.min(latencyNanos, TimeUnit.SECONDS.toNanos(10)))
+				return;
+			
+			lastBackoffAt = now;
+			limit = Math.max(1, limit * backoffRatio);
+			backoffs.increment();
+		}
+	}
+}
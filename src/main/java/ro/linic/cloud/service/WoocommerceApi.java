@@ -1,16 +1,52 @@
 package ro.linic.cloud.service;
 
+import java.time.Instant;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.ObjIntConsumer;
 
 import org.springframework.http.ResponseEntity;
 
 import ro.linic.cloud.entity.SyncConnection;
 import ro.linic.cloud.pojo.Product;
+import ro.linic.cloud.pojo.ProductWrite;
 
 public interface WoocommerceApi {
 	List<Product> allProducts(SyncConnection syncConnection);
+	/**
+	 * Streams the whole catalog page by page; only one page(or the concurrent fetch window)
+	 * is held in memory at a time. Pages are consumed in order, on the calling thread.
+	 */
+	void forEachPage(SyncConnection syncConnection, Consumer<List<Product>> pageConsumer);
+	/**
+	 * Same as {@link #forEachPage(SyncConnection, Consumer)}, but starts at page <code>firstPage</code>
+	 * and hands the page number to the consumer along with the products.
+	 */
+	void forEachPage(SyncConnection syncConnection, int firstPage, ObjIntConsumer<List<Product>> pageConsumer);
+	/**
+	 * Same as {@link #forEachPage(SyncConnection, int, ObjIntConsumer)}, but only for the products modified since
+	 * <code>modifiedSince</code>, most recently modified first. A product modified while the pages are being read
+	 * moves to the first page, so it can shift the others into a later page: such products are consumed twice,
+	 * never skipped.
+	 */
+	void forEachModifiedPage(SyncConnection syncConnection, Instant modifiedSince, ObjIntConsumer<List<Product>> pageConsumer);
+	/**
+	 * @return the number of products of the website, null if it could not be read
+	 */
+	Integer productCount(SyncConnection syncConnection);
 	ResponseEntity<Product> createProduct(SyncConnection syncConnection, Product wooProduct);
 	ResponseEntity<Product> putProduct(SyncConnection syncConnection, Product wooProduct);
 	ResponseEntity<Product> patchProduct(SyncConnection syncConnection, Product wooProduct);
 	ResponseEntity<Product> deactivateProduct(SyncConnection syncConnection, int wooId);
+	/**
+	 * Sends the writes through the woocommerce bulk endpoint, in requests of at most
+	 * <code>woocommerce.batch.size</code> products.
+	 * 
+	 * @return one result per write, in the order of <code>writes</code>
+	 */
+	List<ResponseEntity<Product>> batchWrite(SyncConnection syncConnection, List<ProductWrite> writes);
+	/**
+	 * @return a new writer that collects writes and sends them with {@link #batchWrite(SyncConnection, List)}
+	 */
+	WoocommerceBatchWriter batchWriter();
 }
@@ -1,14 +1,27 @@
 package ro.linic.cloud.service;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
 import java.nio.charset.Charset;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Base64;
-import java.util.HashMap;
+import java.util.Deque;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.ObjIntConsumer;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
@@ -17,10 +30,20 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
 import lombok.extern.java.Log;
+import ro.linic.cloud.OutboundMetrics;
 import ro.linic.cloud.entity.SyncConnection;
 import ro.linic.cloud.pojo.Product;
 import ro.linic.cloud.pojo.ProductWrapper;
+import ro.linic.cloud.pojo.ProductWrite;
 import ro.linic.cloud.pojo.Products;
 
 @Log
@@ -28,30 +51,164 @@ import ro.linic.cloud.pojo.Products;
 public class WoocommerceApiImpl implements WoocommerceApi {
 
 	private static final String WOO_PRODUCTS_SUFFIX = "/wc-api/v2/products";
+	private static final JsonMapper WOO_JSON = JsonMapper.builder()
+			.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+			.build();
+	private static final ObjectReader PAGE_READER = WOO_JSON.readerFor(Product.class);
 	
 	@Autowired private RestTemplate restTemplate;
+	@Autowired private SyncExecutors syncExecutors;
+	@Autowired private WebsiteLimiter websiteLimiter;
+	@Autowired private ResilientCalls resilientCalls;
+	
+	@Value("${woocommerce.page-fetch.concurrency:1}") private int defaultPageConcurrency;
+	@Value("${woocommerce.batch.size:100}") private int batchSize;
 	
 	@Override
 	public List<Product> allProducts(final SyncConnection syncConnection) {
-		int pageNo = 1;
-		int totalPages = 1;
-		
 		final List<Product> allProducts = new ArrayList<>();
+		forEachPage(syncConnection, allProducts::addAll);
+		return allProducts;
+	}
+	
+	@Override
+	public void forEachPage(final SyncConnection syncConnection, final Consumer<List<Product>> pageConsumer) {
+		forEachPage(syncConnection, 1, (products, pageNo) -> pageConsumer.accept(products));
+	}
+	
+	@Override
+	public void forEachPage(final SyncConnection syncConnection, final int firstPageNo,
+			final ObjIntConsumer<List<Product>> pageConsumer) {
+		final int concurrency = syncConnection.getPageFetchConcurrency() != null ?
+				syncConnection.getPageFetchConcurrency() : defaultPageConcurrency;
+		forEachPage(syncConnection, firstPageNo, "", concurrency, pageConsumer);
+	}
+	
+	@Override
+	public void forEachModifiedPage(final SyncConnection syncConnection, final Instant modifiedSince,
+			final ObjIntConsumer<List<Product>> pageConsumer) {
+		final String filter = "&filter%5Bupdated_at_min%5D=" + modifiedSince.truncatedTo(ChronoUnit.SECONDS)
+				+ "&filter%5Borderby%5D=modified&filter%5Border%5D=DESC";
+		// one page at a time: a page read ahead could miss the products shifted into it afterwards
+		forEachPage(syncConnection, 1, filter, 1, pageConsumer);
+	}
+	
+	/**
+	 * @param filter query parameters appended to every page request
+	 */
+	private void forEachPage(final SyncConnection syncConnection, final int firstPageNo, final String filter,
+			final int concurrency, final ObjIntConsumer<List<Product>> pageConsumer) {
 		final HttpHeaders headers = createHeaders(syncConnection.getWebsiteKey(), syncConnection.getWebsiteSecret());
 		
-		do {
-			final ResponseEntity<Products> result = restTemplate.exchange(syncConnection.getWebsiteUrl()+WOO_PRODUCTS_SUFFIX+"?page="+pageNo,
-					HttpMethod.GET, new HttpEntity<Products>(headers), new ParameterizedTypeReference<Products>(){});
-			allProducts.addAll(result.getBody().getProducts());
-			
-			final String wcTotalPages = result.getHeaders().getFirst("X-WC-TotalPages");
-			if (wcTotalPages != null)
-				totalPages = Integer.parseInt(wcTotalPages);
-				
-			pageNo++;
-		} while(pageNo <= totalPages);
+		final ProductPage firstPage = fetchPage(syncConnection, headers, firstPageNo, filter);
+		pageConsumer.accept(firstPage.getProducts(), firstPageNo);
+		int totalPages = firstPage.totalPagesOr(firstPageNo);
 		
-		return allProducts;
+		if (concurrency > 1 && totalPages > firstPageNo + 1)
+		{
+			fetchPagesConcurrently(syncConnection, headers, filter, firstPageNo + 1, totalPages, concurrency, pageConsumer);
+			return;
+		}
+		
+		for (int pageNo = firstPageNo + 1; pageNo <= totalPages; pageNo++)
+		{
+			final ProductPage page = fetchPage(syncConnection, headers, pageNo, filter);
+			pageConsumer.accept(page.getProducts(), pageNo);
+			totalPages = page.totalPagesOr(totalPages);
+		}
+	}
+	
+	/**
+	 * Fetches pages fromPage..totalPages with at most <code>concurrency</code> pages in flight or waiting
+	 * to be consumed. Pages are handed to the consumer in page order, on the calling thread.
+	 */
+	private void fetchPagesConcurrently(final SyncConnection syncConnection, final HttpHeaders headers, final String filter,
+			final int fromPage, final int totalPages, final int concurrency, final ObjIntConsumer<List<Product>> pageConsumer) {
+		final ExecutorService executor = syncExecutors.newExecutor(Math.min(concurrency, totalPages - fromPage + 1), "woo-pages-");
+		try {
+			final Deque<Future<List<Product>>> window = new ArrayDeque<>();
+			int nextPage = fromPage;
+			int consumedPage = fromPage;
+			while (nextPage <= totalPages || !window.isEmpty())
+			{
+				while (nextPage <= totalPages && window.size() < concurrency)
+				{
+					final int page = nextPage++;
+					window.add(executor.submit(OutboundMetrics.inheritCounts(() -> fetchPage(syncConnection, headers, page, filter).getProducts())));
+				}
+				pageConsumer.accept(window.poll().get(), consumedPage++);
+			}
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (final ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw new RuntimeException(e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+	
+	/**
+	 * GETs one page of products; transport and server errors are retried by {@link ResilientCalls}.
+	 */
+	private ProductPage fetchPage(final SyncConnection syncConnection, final HttpHeaders headers, final int pageNo,
+			final String filter) {
+		return wooCall(syncConnection, "page", true, () -> restTemplate.execute(
+				URI.create(syncConnection.getWebsiteUrl()+WOO_PRODUCTS_SUFFIX+"?page="+pageNo+filter),
+				HttpMethod.GET, restTemplate.httpEntityCallback(new HttpEntity<Products>(headers)),
+				response -> new ProductPage(readProducts(response.getBody()), response.getHeaders().getFirst("X-WC-TotalPages"))));
+	}
+	
+	/**
+	 * Runs the call within the concurrency limit of the website, behind its retry and circuit breaker.
+	 * Every attempt takes its own call slot and is measured as an {@link OutboundMetrics#WOOCOMMERCE} request.
+	 */
+	private <T> T wooCall(final SyncConnection syncConnection, final String operation, final boolean idempotent,
+			final Supplier<T> call) {
+		return resilientCalls.call(ResilientCalls.WOOCOMMERCE, syncConnection.getWebsiteUrl(), idempotent,
+				() -> websiteLimiter.call(syncConnection.getWebsiteUrl(), operation,
+						() -> OutboundMetrics.tagged(OutboundMetrics.WOOCOMMERCE, operation, syncConnection.getCompanyId(), call)));
+	}
+	
+	/**
+	 * Parses the <code>{"products": [...]}</code> page incrementally, one product at a time,
+	 * without building the whole document in memory.
+	 */
+	static List<Product> readProducts(final InputStream body) throws IOException {
+		final List<Product> products = new ArrayList<>();
+		try (final JsonParser parser = PAGE_READER.getFactory().createParser(body)) {
+			if (parser.nextToken() != JsonToken.START_OBJECT)
+				return products;
+			
+			while (parser.nextToken() == JsonToken.FIELD_NAME)
+			{
+				final String field = parser.getCurrentName();
+				final JsonToken value = parser.nextToken();
+				if ("products".equals(field) && value == JsonToken.START_ARRAY)
+					while (parser.nextToken() == JsonToken.START_OBJECT)
+						products.add(PAGE_READER.readValue(parser));
+				else
+					parser.skipChildren();
+			}
+		}
+		return products;
+	}
+	
+	@Override
+	public Integer productCount(final SyncConnection syncConnection) {
+		final HttpHeaders headers = createHeaders(syncConnection.getWebsiteKey(), syncConnection.getWebsiteSecret());
+	
+		try {
+			final ResponseEntity<Map<String, Integer>> response = wooCall(syncConnection, "count", true, () -> restTemplate.exchange(syncConnection.getWebsiteUrl()+WOO_PRODUCTS_SUFFIX+"/count",
+					HttpMethod.GET, new HttpEntity<Products>(headers),
+					new ParameterizedTypeReference<Map<String, Integer>>(){}));
+			return response.hasBody() ? response.getBody().get("count") : null;
+		} catch (final Exception e) {
+			log.warning("Failed productCount WOO invocation for: "+syncConnection.getWebsiteUrl()+": "+e.getMessage());
+			return null;
+		}
 	}
 	
 	@Override
@@ -67,9 +224,9 @@ public class WoocommerceApiImpl implements WoocommerceApi {
 		final Map<String, Map<String, Object>> jsonWrapper = Map.of("product", jsonMap);
 		
 		try {
-			final ResponseEntity<ProductWrapper> response = restTemplate.exchange(syncConnection.getWebsiteUrl()+WOO_PRODUCTS_SUFFIX,
+			final ResponseEntity<ProductWrapper> response = wooCall(syncConnection, "write", false, () -> restTemplate.exchange(syncConnection.getWebsiteUrl()+WOO_PRODUCTS_SUFFIX,
 					HttpMethod.POST, new HttpEntity<Map<String, Map<String, Object>>>(jsonWrapper, headers),
-					new ParameterizedTypeReference<ProductWrapper>(){});
+					new ParameterizedTypeReference<ProductWrapper>(){}));
 			return unwrap(response);
 		} catch (final Exception e) {
 			log.severe("Failed createProduct WOO invocation "+jsonMap+" for: "+wooProduct);
@@ -82,17 +239,13 @@ public class WoocommerceApiImpl implements WoocommerceApi {
 	public ResponseEntity<Product> putProduct(final SyncConnection syncConnection, final Product wooProduct) {
 		final HttpHeaders headers = createHeaders(syncConnection.getWebsiteKey(), syncConnection.getWebsiteSecret());
 		
-		final Map<String, Object> jsonMap = new HashMap<>();
-		jsonMap.put(Product.WOO_BARCODE_KEY, wooProduct.getBarcode());
-		jsonMap.put(Product.WOO_NAME_KEY, wooProduct.getName());
-		jsonMap.put(Product.WOO_PRICE_KEY, wooProduct.getPricePerUom());
-		jsonMap.put(Product.WOO_STOCK_KEY, wooProduct.getStock());
+		final Map<String, Object> jsonMap = ProductWrite.put(wooProduct).fields();
 		final Map<String, Map<String, Object>> jsonWrapper = Map.of("product", jsonMap);
 		
 		try {
-			final ResponseEntity<ProductWrapper> response = restTemplate.exchange(syncConnection.getWebsiteUrl()+WOO_PRODUCTS_SUFFIX+"/"+wooProduct.getId(),
+			final ResponseEntity<ProductWrapper> response = wooCall(syncConnection, "write", true, () -> restTemplate.exchange(syncConnection.getWebsiteUrl()+WOO_PRODUCTS_SUFFIX+"/"+wooProduct.getId(),
 					HttpMethod.PUT, new HttpEntity<Map<String, Map<String, Object>>>(jsonWrapper, headers),
-					new ParameterizedTypeReference<ProductWrapper>(){});
+					new ParameterizedTypeReference<ProductWrapper>(){}));
 			return unwrap(response);
 		} catch (final Exception e) {
 			log.severe("Failed putProduct WOO invocation "+jsonMap+" for: "+wooProduct);
@@ -105,21 +258,13 @@ public class WoocommerceApiImpl implements WoocommerceApi {
 	public ResponseEntity<Product> patchProduct(final SyncConnection syncConnection, final Product wooProduct) {
 		final HttpHeaders headers = createHeaders(syncConnection.getWebsiteKey(), syncConnection.getWebsiteSecret());
 		
-		final Map<String, Object> jsonMap = new HashMap<>();
-		if (wooProduct.getBarcode() != null)
-			jsonMap.put(Product.WOO_BARCODE_KEY, wooProduct.getBarcode());
-		if (wooProduct.getName() != null)
-			jsonMap.put(Product.WOO_NAME_KEY, wooProduct.getName());
-		if (wooProduct.getPricePerUom() != null)
-			jsonMap.put(Product.WOO_PRICE_KEY, wooProduct.getPricePerUom());
-		if (wooProduct.getStock() != null)
-			jsonMap.put(Product.WOO_STOCK_KEY, wooProduct.getStock());
+		final Map<String, Object> jsonMap = ProductWrite.patch(wooProduct).fields();
 		final Map<String, Map<String, Object>> jsonWrapper = Map.of("product", jsonMap);
 		
 		try {
-			final ResponseEntity<ProductWrapper> response = restTemplate.exchange(syncConnection.getWebsiteUrl()+WOO_PRODUCTS_SUFFIX+"/"+wooProduct.getId(),
+			final ResponseEntity<ProductWrapper> response = wooCall(syncConnection, "write", true, () -> restTemplate.exchange(syncConnection.getWebsiteUrl()+WOO_PRODUCTS_SUFFIX+"/"+wooProduct.getId(),
 					HttpMethod.PUT, new HttpEntity<Map<String, Map<String, Object>>>(jsonWrapper, headers),
-					new ParameterizedTypeReference<ProductWrapper>(){});
+					new ParameterizedTypeReference<ProductWrapper>(){}));
 			return unwrap(response);
 		} catch (final Exception e) {
 			log.severe("Failed patchProduct WOO invocation "+jsonMap+" for: "+wooProduct);
@@ -132,13 +277,13 @@ public class WoocommerceApiImpl implements WoocommerceApi {
 	public ResponseEntity<Product> deactivateProduct(final SyncConnection syncConnection, final int wooId) {
 		final HttpHeaders headers = createHeaders(syncConnection.getWebsiteKey(), syncConnection.getWebsiteSecret());
 		
-		final Map<String, Object> jsonMap = Map.of("catalog_visibility", "hidden");
+		final Map<String, Object> jsonMap = ProductWrite.deactivate(wooId).fields();
 		final Map<String, Map<String, Object>> jsonWrapper = Map.of("product", jsonMap);
 		
 		try {
-			final ResponseEntity<ProductWrapper> response = restTemplate.exchange(syncConnection.getWebsiteUrl()+WOO_PRODUCTS_SUFFIX+"/"+wooId,
+			final ResponseEntity<ProductWrapper> response = wooCall(syncConnection, "write", true, () -> restTemplate.exchange(syncConnection.getWebsiteUrl()+WOO_PRODUCTS_SUFFIX+"/"+wooId,
 					HttpMethod.PUT, new HttpEntity<Map<String, Map<String, Object>>>(jsonWrapper, headers),
-					new ParameterizedTypeReference<ProductWrapper>(){});
+					new ParameterizedTypeReference<ProductWrapper>(){}));
 			return unwrap(response);
 		} catch (final Exception e) {
 			log.severe("Failed deactivateProduct WOO invocation "+jsonMap+" for: "+wooId);
@@ -147,6 +292,71 @@ public class WoocommerceApiImpl implements WoocommerceApi {
 		}
 	}
 	
+	@Override
+	public List<ResponseEntity<Product>> batchWrite(final SyncConnection syncConnection, final List<ProductWrite> writes) {
+		final HttpHeaders headers = createHeaders(syncConnection.getWebsiteKey(), syncConnection.getWebsiteSecret());
+		final List<ResponseEntity<Product>> results = new ArrayList<>(writes.size());
+		for (int from = 0; from < writes.size(); from += batchSize)
+			results.addAll(sendBatch(syncConnection, headers, writes.subList(from, Math.min(from + batchSize, writes.size()))));
+		return results;
+	}
+	
+	@Override
+	public WoocommerceBatchWriter batchWriter() {
+		return new WoocommerceBatchWriter(this, batchSize);
+	}
+	
+	private List<ResponseEntity<Product>> sendBatch(final SyncConnection syncConnection, final HttpHeaders headers,
+			final List<ProductWrite> writes) {
+		final List<Map<String, Object>> items = new ArrayList<>(writes.size());
+		for (final ProductWrite write : writes)
+		{
+			final Map<String, Object> item = write.fields();
+			item.put("id", write.getWooId());
+			items.add(item);
+		}
+		final Map<String, List<Map<String, Object>>> jsonWrapper = Map.of("products", items);
+		
+		try {
+			final ResponseEntity<Map<String, List<Map<String, Object>>>> response = wooCall(syncConnection, "bulk", true, () -> restTemplate.exchange(
+					syncConnection.getWebsiteUrl()+WOO_PRODUCTS_SUFFIX+"/bulk",
+					HttpMethod.POST, new HttpEntity<Map<String, List<Map<String, Object>>>>(jsonWrapper, headers),
+					new ParameterizedTypeReference<Map<String, List<Map<String, Object>>>>(){}));
+			
+			// woocommerce answers with one item per requested product, in the request order
+			final List<Map<String, Object>> returnedItems = response.hasBody() && response.getBody().get("products") != null ?
+					response.getBody().get("products") : List.of();
+			final List<ResponseEntity<Product>> results = new ArrayList<>(writes.size());
+			for (int i = 0; i < writes.size(); i++)
+				results.add(i < returnedItems.size() ? itemResult(writes.get(i), returnedItems.get(i)) :
+					ResponseEntity.internalServerError().build());
+			return results;
+		} catch (final Exception e) {
+			log.severe("Failed bulk WOO invocation of "+writes.size()+" products: "+writes);
+			log.log(Level.SEVERE, e.getMessage(), e);
+			return writes.stream().map(write -> ResponseEntity.internalServerError().<Product>build()).toList();
+		}
+	}
+	
+	private static ResponseEntity<Product> itemResult(final ProductWrite write, final Map<String, Object> item) {
+		if (item.get("error") != null)
+		{
+			log.severe("Failed bulk WOO item "+item.get("error")+" for: "+write);
+			return ResponseEntity.badRequest().build();
+		}
+		return ResponseEntity.ok(WOO_JSON.convertValue(item, Product.class));
+	}
+	
+	@Data @AllArgsConstructor
+	static class ProductPage {
+		private List<Product> products;
+		private String totalPages;
+		
+		int totalPagesOr(final int defaultTotalPages) {
+			return totalPages != null ? Integer.parseInt(totalPages) : defaultTotalPages;
+		}
+	}
+	
 	private ResponseEntity<Product> unwrap(final ResponseEntity<ProductWrapper> response) {
 		if (response.hasBody())
 			return new ResponseEntity<>(response.getBody().getProduct(), response.getStatusCode());
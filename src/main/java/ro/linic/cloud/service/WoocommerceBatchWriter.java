@@ -0,0 +1,95 @@
+package ro.linic.cloud.service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import org.springframework.http.ResponseEntity;
+
+import ro.linic.cloud.entity.SyncConnection;
+import ro.linic.cloud.pojo.Product;
+import ro.linic.cloud.pojo.ProductWrite;
+
+/**
+ * Collects woocommerce product writes per {@link SyncConnection} and sends them through the bulk endpoint,
+ * at most <code>batchSize</code> products per request. Each submitted write gets a future that is completed
+ * with its own item result once its batch was sent; nothing is sent for the last, partial batch until
+ * {@link #flush()} is called. Thread safe.
+ */
+public class WoocommerceBatchWriter implements AutoCloseable {
+	private final WoocommerceApi woocommerceApi;
+	private final int batchSize;
+	// keyed by SyncConnection id
+	private final Map<Integer, PendingBatch> pending = new LinkedHashMap<>();
+
+	WoocommerceBatchWriter(final WoocommerceApi woocommerceApi, final int batchSize) {
+		this.woocommerceApi = woocommerceApi;
+		this.batchSize = Math.max(1, batchSize);
+	}
+
+	public CompletableFuture<ResponseEntity<Product>> submit(final SyncConnection syncConnection, final ProductWrite write) {
+		final CompletableFuture<ResponseEntity<Product>> result = new CompletableFuture<>();
+		final PendingBatch fullBatch;
+		synchronized (this) {
+			final PendingBatch batch = pending.computeIfAbsent(syncConnection.getId(), id -> new PendingBatch(syncConnection));
+			batch.writes.add(write);
+			batch.results.add(result);
+			fullBatch = batch.writes.size() >= batchSize ? pending.remove(syncConnection.getId()) : null;
+		}
+
+		if (fullBatch != null)
+			send(fullBatch);
+		return result;
+	}
+
+	public int batchSize() {
+		return batchSize;
+	}
+	
+	/**
+	 * @return the submitted writes not sent yet
+	 */
+	public synchronized int pending() {
+		return pending.values().stream().mapToInt(batch -> batch.writes.size()).sum();
+	}
+
+	/**
+	 * Sends all the pending writes
+	 */
+	public void flush() {
+		final List<PendingBatch> batches;
+		synchronized (this) {
+			batches = new ArrayList<>(pending.values());
+			pending.clear();
+		}
+		batches.forEach(this::send);
+	}
+
+	@Override
+	public void close() {
+		flush();
+	}
+
+	private void send(final PendingBatch batch) {
+		try {
+			final List<ResponseEntity<Product>> itemResults = woocommerceApi.batchWrite(batch.syncConnection, batch.writes);
+			for (int i = 0; i < batch.results.size(); i++)
+				batch.results.get(i).complete(i < itemResults.size() ? itemResults.get(i) :
+					ResponseEntity.internalServerError().build());
+		} catch (final RuntimeException e) {
+			batch.results.forEach(result -> result.completeExceptionally(e));
+		}
+	}
+
+	private static class PendingBatch {
+		private final SyncConnection syncConnection;
+		private final List<ProductWrite> writes = new ArrayList<>();
+		private final List<CompletableFuture<ResponseEntity<Product>>> results = new ArrayList<>();
+
+		PendingBatch(final SyncConnection syncConnection) {
+			this.syncConnection = syncConnection;
+		}
+	}
+}
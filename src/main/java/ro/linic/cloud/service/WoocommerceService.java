@@ -1,6 +1,12 @@
 package ro.linic.cloud.service;
 
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.ObjIntConsumer;
 
 import org.springframework.http.ResponseEntity;
 
@@ -9,17 +15,50 @@ import ro.linic.cloud.command.ChangePriceCommand;
 import ro.linic.cloud.command.ChangeStockCommand;
 import ro.linic.cloud.command.CreateProductCommand;
 import ro.linic.cloud.command.DeleteProductCommand;
+import ro.linic.cloud.command.ProductCommand;
 import ro.linic.cloud.entity.SyncConnection;
 import ro.linic.cloud.pojo.Product;
 
 public interface WoocommerceService {
 	ResponseEntity<Product> updatePrice(ChangePriceCommand command);
 	ResponseEntity<Product> updateStock(ChangeStockCommand command);
+	/**
+	 * Queues the price and the stock of the product as a single woocommerce write on <code>wooWriter</code>;
+	 * null values are left unchanged. The result is known once the writer was flushed.
+	 */
+	CompletableFuture<ResponseEntity<Product>> updatePriceAndStock(WoocommerceBatchWriter wooWriter, Integer companyId,
+			Integer productId, BigDecimal pricePerUom, BigDecimal stock);
 	ResponseEntity<Product> createProduct(CreateProductCommand command);
 	ResponseEntity<Product> deleteProduct(DeleteProductCommand command);
 	ResponseEntity<Product> updateName(ChangeNameCommand command);
+	/**
+	 * Applies the commands in order: the sync lines of each company are resolved in one query and the price,
+	 * stock and delete writes go out in bulk requests per connection.
+	 * 
+	 * @return the woocommerce response of each command, in the order of the commands; all are completed
+	 */
+	List<CompletableFuture<ResponseEntity<Product>>> applyAll(List<? extends ProductCommand> commands);
+	/**
+	 * Loads the woocommerce ids of the products into the lookup cache of the /update path, one query per company
+	 * 
+	 * @param productIds companyId -> productIds
+	 */
+	void preloadWooIds(Map<Integer, ? extends Collection<Integer>> productIds);
 	
 	List<Product> allProducts(SyncConnection syncConnection);
+	/**
+	 * Streams the catalog starting with page <code>firstPage</code>; the consumer also gets the page number
+	 */
+	void forEachProductPage(SyncConnection syncConnection, int firstPage, ObjIntConsumer<List<Product>> pageConsumer);
+	/**
+	 * Streams the products modified since <code>modifiedSince</code>; see {@link WoocommerceApi#forEachModifiedPage}
+	 */
+	void forEachModifiedProductPage(SyncConnection syncConnection, Instant modifiedSince, ObjIntConsumer<List<Product>> pageConsumer);
+	Integer productCount(SyncConnection syncConnection);
 	ResponseEntity<Product> deactivateProduct(SyncConnection syncConnection, int wooId);
-	ResponseEntity<Product> putProduct(SyncConnection syncConnection, Product wooProduct);
+	/**
+	 * Writes only the non null fields of the product
+	 */
+	ResponseEntity<Product> patchProduct(SyncConnection syncConnection, Product wooProduct);
+	WoocommerceBatchWriter batchWriter();
 }
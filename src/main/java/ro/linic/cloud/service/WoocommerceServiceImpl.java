@@ -1,8 +1,19 @@
 package ro.linic.cloud.service;
 
+import java.math.BigDecimal;
 import java.text.MessageFormat;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.ObjIntConsumer;
+import java.util.logging.Level;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
@@ -14,15 +25,18 @@ import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
 
 import lombok.extern.java.Log;
+import ro.linic.cloud.OutboundMetrics;
 import ro.linic.cloud.command.ChangeNameCommand;
 import ro.linic.cloud.command.ChangePriceCommand;
 import ro.linic.cloud.command.ChangeStockCommand;
 import ro.linic.cloud.command.CreateNotificationCommand;
 import ro.linic.cloud.command.CreateProductCommand;
 import ro.linic.cloud.command.DeleteProductCommand;
+import ro.linic.cloud.command.ProductCommand;
 import ro.linic.cloud.entity.SyncConnection;
 import ro.linic.cloud.entity.SyncLine;
 import ro.linic.cloud.pojo.Product;
+import ro.linic.cloud.pojo.ProductWrite;
 import ro.linic.cloud.repository.SyncConnectionRepository;
 import ro.linic.cloud.repository.SyncProductRepository;
 
@@ -36,50 +50,91 @@ public class WoocommerceServiceImpl implements WoocommerceService {
 	@Autowired private WoocommerceApi woocommerceApi;
 	@Autowired private SyncProductRepository syncProductRepo;
 	@Autowired private SyncConnectionRepository syncConnRepo;
+	@Autowired private SyncLookupCache lookupCache;
 	
 	@Override
 	public ResponseEntity<Product> updatePrice(ChangePriceCommand changePriceCommand) {
-		if (!productIsSynced(changePriceCommand.getCompanyId(), changePriceCommand.getProductId()))
+		final Optional<SyncConnection> syncConnection = connection(changePriceCommand.getCompanyId());
+		final Optional<Integer> wooId = syncConnection.flatMap(conn -> wooId(conn, changePriceCommand.getProductId()));
+		if (wooId.isEmpty())
 			return new ResponseEntity<>(HttpStatus.OK);
 		
-		final Optional<SyncConnection> syncConnection = syncConnRepo.findByCompanyId(changePriceCommand.getCompanyId());
-		final Optional<SyncLine> syncLine = syncProductRepo.findBySyncConnectionIdAndProductId(syncConnection.get().getId(),
-				changePriceCommand.getProductId());
 		final Product wooProduct = Product.builder()
-				.id(syncLine.get().getWooId())
+				.id(wooId.get())
 				.pricePerUom(changePriceCommand.getPricePerUom())
 				.build();
-		return woocommerceApi.patchProduct(syncConnection.get(), wooProduct);
+		return rememberFingerprint(syncConnection.get(), woocommerceApi.patchProduct(syncConnection.get(), wooProduct));
 	}
 	
-	private boolean productIsSynced(final Integer companyId, final Integer productId) {
-		final Optional<SyncConnection> syncConnection = syncConnRepo.findByCompanyId(companyId);
-		
-		if (syncConnection.isEmpty())
-			return false;
-		
-		return syncProductRepo.findBySyncConnectionIdAndProductId(syncConnection.get().getId(), productId)
-				.isPresent();
+	private Optional<SyncConnection> connection(final Integer companyId) {
+		return lookupCache.connection(companyId, () -> syncConnRepo.findByCompanyId(companyId));
+	}
+	
+	/**
+	 * @return the woocommerce id of the product, empty if the product is not synced
+	 */
+	private Optional<Integer> wooId(final SyncConnection syncConnection, final Integer productId) {
+		return lookupCache.wooId(syncConnection.getId(), productId, () ->
+				syncProductRepo.findBySyncConnectionIdAndProductId(syncConnection.getId(), productId).map(SyncLine::getWooId));
 	}
 
 	@Override
 	public ResponseEntity<Product> updateStock(ChangeStockCommand changeStockCommand) {
-		if (!productIsSynced(changeStockCommand.getCompanyId(), changeStockCommand.getProductId()))
+		final Optional<SyncConnection> syncConnection = connection(changeStockCommand.getCompanyId());
+		final Optional<Integer> wooId = syncConnection.flatMap(conn -> wooId(conn, changeStockCommand.getProductId()));
+		if (wooId.isEmpty())
 			return new ResponseEntity<>(HttpStatus.OK);
 		
-		final Optional<SyncConnection> syncConnection = syncConnRepo.findByCompanyId(changeStockCommand.getCompanyId());
-		final Optional<SyncLine> syncProduct = syncProductRepo.findBySyncConnectionIdAndProductId(syncConnection.get().getId(),
-				changeStockCommand.getProductId());
 		final Product wooProduct = Product.builder()
-				.id(syncProduct.get().getWooId())
+				.id(wooId.get())
 				.stock(changeStockCommand.getStock())
 				.build();
-		return woocommerceApi.patchProduct(syncConnection.get(), wooProduct);
+		return rememberFingerprint(syncConnection.get(), woocommerceApi.patchProduct(syncConnection.get(), wooProduct));
+	}
+
+	@Override
+	public CompletableFuture<ResponseEntity<Product>> updatePriceAndStock(final WoocommerceBatchWriter wooWriter,
+			final Integer companyId, final Integer productId, final BigDecimal pricePerUom, final BigDecimal stock) {
+		final Optional<SyncConnection> syncConnection = connection(companyId);
+		final Optional<Integer> wooId = syncConnection.flatMap(conn -> wooId(conn, productId));
+		if (wooId.isEmpty())
+			return CompletableFuture.completedFuture(new ResponseEntity<>(HttpStatus.OK));
+		
+		final Product wooProduct = Product.builder()
+				.id(wooId.get())
+				.pricePerUom(pricePerUom)
+				.stock(stock)
+				.build();
+		return patch(wooWriter, syncConnection.get(), wooProduct);
+	}
+	
+	private CompletableFuture<ResponseEntity<Product>> patch(final WoocommerceBatchWriter wooWriter,
+			final SyncConnection syncConnection, final Product wooProduct) {
+		return wooWriter.submit(syncConnection, ProductWrite.patch(wooProduct))
+				.thenApply(response -> rememberFingerprint(syncConnection, response));
 	}
 
+	/**
+	 * Stores the fingerprint of the product as woocommerce answered the write, so the delta sync recognizes
+	 * the modification as ours and does not reconcile it again. Failing to store it only costs that reconciliation,
+	 * so it never fails the write.
+	 */
+	private ResponseEntity<Product> rememberFingerprint(final SyncConnection syncConnection, final ResponseEntity<Product> response) {
+		if (response == null || !response.getStatusCode().is2xxSuccessful() || response.getBody() == null ||
+				response.getBody().getId() == null)
+			return response;
+		
+		try {
+			syncProductRepo.updateFingerprint(syncConnection.getId(), response.getBody().getId(), Fingerprints.of(response.getBody()));
+		} catch (final RuntimeException e) {
+			log.log(Level.WARNING, "Fingerprint of Woo id "+response.getBody().getId()+" not stored", e);
+		}
+		return response;
+	}
+	
 	@Override
 	public ResponseEntity<Product> createProduct(CreateProductCommand command) {
-		final Optional<SyncConnection> syncConnection = syncConnRepo.findByCompanyId(command.getCompanyId());
+		final Optional<SyncConnection> syncConnection = connection(command.getCompanyId());
 		
 		if (syncConnection.isEmpty())
 			return new ResponseEntity<>(HttpStatus.OK);
@@ -98,6 +153,7 @@ public class WoocommerceServiceImpl implements WoocommerceService {
 		final Product wooProduct = wooReponse.getBody();
 		final SyncLine syncLine = new SyncLine(null, syncConnection.get(), command.getProductId(), wooProduct.getId(), null);
 		syncProductRepo.save(syncLine);
+		lookupCache.invalidateLine(syncConnection.get().getId(), command.getProductId());
 //		notifyProductCreate(syncConnection.get(), wooProduct);
 		return new ResponseEntity<>(wooProduct, HttpStatus.OK);
 	}
@@ -112,61 +168,194 @@ public class WoocommerceServiceImpl implements WoocommerceService {
 		.append("Pret: "+wooProduct.getPricePerUom()).append(System.lineSeparator())
 		.append(MessageFormat.format("Acceseaza {0} pentru a edita", connection.getWebsiteUrl()));
 		
+		OutboundMetrics.tagged(OutboundMetrics.NOTIFICATION, "notify", connection.getCompanyId(), () ->
 		restTemplate.exchange(notificationServiceUrl+"/notification", HttpMethod.POST,
 				new HttpEntity<CreateNotificationCommand>(new CreateNotificationCommand(connection.getCompanyId(), sb.toString())),
-				Void.class);
+				Void.class));
 	}
 
 	@Override
 	public ResponseEntity<Product> deleteProduct(DeleteProductCommand command) {
-		if (!productIsSynced(command.getCompanyId(), command.getProductId()))
+		final Optional<SyncConnection> syncConnection = connection(command.getCompanyId());
+		final Optional<SyncLine> syncProduct = syncConnection.flatMap(conn ->
+				syncProductRepo.findBySyncConnectionIdAndProductId(conn.getId(), command.getProductId()));
+		if (syncProduct.isEmpty())
 			return new ResponseEntity<>(HttpStatus.OK);
 		
-		final Optional<SyncConnection> syncConnection = syncConnRepo.findByCompanyId(command.getCompanyId());
-		final Optional<SyncLine> syncProduct = syncProductRepo.findBySyncConnectionIdAndProductId(syncConnection.get().getId(),
-				command.getProductId());
-		syncProductRepo.delete(syncProduct.get());
-		return woocommerceApi.deactivateProduct(syncConnection.get(), syncProduct.get().getWooId());
+		// the line is kept until woocommerce deactivated the product, so that a retry still finds it
+		final ResponseEntity<Product> response = woocommerceApi.deactivateProduct(syncConnection.get(), syncProduct.get().getWooId());
+		if (response.getStatusCode().is2xxSuccessful())
+			deleteLine(syncConnection.get(), syncProduct.get());
+		return response;
+	}
+	
+	private void deleteLine(final SyncConnection syncConnection, final SyncLine syncLine) {
+		syncProductRepo.delete(syncLine);
+		lookupCache.invalidateLine(syncConnection.getId(), syncLine.getProductId());
 	}
 
 	@Override
 	public ResponseEntity<Product> updateName(ChangeNameCommand command) {
-		if (!productIsSynced(command.getCompanyId(), command.getProductId()))
+		final Optional<SyncConnection> syncConnection = connection(command.getCompanyId());
+		final Optional<Integer> wooId = syncConnection.flatMap(conn -> wooId(conn, command.getProductId()));
+		if (wooId.isEmpty())
 			return new ResponseEntity<>(HttpStatus.OK);
 		
-		final Optional<SyncConnection> syncConnection = syncConnRepo.findByCompanyId(command.getCompanyId());
-		final Optional<SyncLine> syncLine = syncProductRepo.findBySyncConnectionIdAndProductId(syncConnection.get().getId(), command.getProductId());
-		notifyNameChange(syncConnection.get(), syncLine.get(), command);
+		notifyNameChange(syncConnection.get(), wooId.get(), command);
 		return new ResponseEntity<>(HttpStatus.OK);
 	}
 	
-	private void notifyNameChange(final SyncConnection connection, final SyncLine syncLine, final ChangeNameCommand command) {
+	private void notifyNameChange(final SyncConnection connection, final Integer wooId, final ChangeNameCommand command) {
 		final StringBuilder sb = new StringBuilder();
 		
 		sb.append("Numele produsului a fost modificat").append(System.lineSeparator())
 		.append("ID: "+command.getProductId()).append(System.lineSeparator())
-		.append("Woo ID: "+syncLine.getWooId()).append(System.lineSeparator())
+		.append("Woo ID: "+wooId).append(System.lineSeparator())
 		.append("Cod: "+command.getBarcode()).append(System.lineSeparator())
 		.append("Nume nou: "+command.getName()).append(System.lineSeparator())
 		.append(MessageFormat.format("Acceseaza {0} pentru a edita", connection.getWebsiteUrl()));
 		
+		OutboundMetrics.tagged(OutboundMetrics.NOTIFICATION, "notify", connection.getCompanyId(), () ->
 		restTemplate.exchange(notificationServiceUrl+"/notification", HttpMethod.POST,
 				new HttpEntity<CreateNotificationCommand>(new CreateNotificationCommand(connection.getCompanyId(), sb.toString())),
-				Void.class);
+				Void.class));
 	}
 
+	@Override
+	public List<CompletableFuture<ResponseEntity<Product>>> applyAll(final List<? extends ProductCommand> commands) {
+		final Map<Integer, Set<Integer>> productIds = new HashMap<>();
+		commands.forEach(command -> productIds.computeIfAbsent(command.getCompanyId(), companyId -> new HashSet<>())
+				.add(command.getProductId()));
+		final Map<Integer, Map<Integer, SyncLine>> syncLines = syncLines(productIds);
+		
+		final List<CompletableFuture<ResponseEntity<Product>>> results = new ArrayList<>(commands.size());
+		// flushed on close, per connection
+		try (WoocommerceBatchWriter wooWriter = batchWriter()) {
+			for (final ProductCommand command : commands)
+			{
+				try {
+					results.add(apply(wooWriter, command, syncLines.get(command.getCompanyId())));
+				} catch (final RuntimeException e) {
+					results.add(CompletableFuture.failedFuture(e));
+				}
+			}
+		}
+		return results;
+	}
+	
+	/**
+	 * @param syncLines productId -> sync line of the company of the command, null if the company is not synced;
+	 * the created and deleted lines are applied to it
+	 */
+	private CompletableFuture<ResponseEntity<Product>> apply(final WoocommerceBatchWriter wooWriter,
+			final ProductCommand command, final Map<Integer, SyncLine> syncLines) {
+		if (syncLines == null)
+			return CompletableFuture.completedFuture(new ResponseEntity<>(HttpStatus.OK));
+		
+		final SyncConnection syncConnection = connection(command.getCompanyId()).get();
+		if (command instanceof CreateProductCommand createCommand)
+		{
+			final ResponseEntity<Product> response = createProduct(createCommand);
+			if (response.getStatusCode().equals(HttpStatus.OK) && response.getBody() != null)
+				syncLines.put(command.getProductId(), new SyncLine(null, syncConnection, command.getProductId(),
+						response.getBody().getId(), null));
+			return CompletableFuture.completedFuture(response);
+		}
+		
+		final SyncLine syncLine = syncLines.get(command.getProductId());
+		if (syncLine == null)
+			return CompletableFuture.completedFuture(new ResponseEntity<>(HttpStatus.OK));
+		
+		return switch (command) {
+		case ChangePriceCommand priceCommand -> patch(wooWriter, syncConnection, Product.builder()
+				.id(syncLine.getWooId())
+				.pricePerUom(priceCommand.getPricePerUom())
+				.build());
+		case ChangeStockCommand stockCommand -> patch(wooWriter, syncConnection, Product.builder()
+				.id(syncLine.getWooId())
+				.stock(stockCommand.getStock())
+				.build());
+		case ChangeNameCommand nameCommand -> {
+			notifyNameChange(syncConnection, syncLine.getWooId(), nameCommand);
+			yield CompletableFuture.completedFuture(new ResponseEntity<>(HttpStatus.OK));
+		}
+		case DeleteProductCommand deleteCommand -> {
+			syncLines.remove(command.getProductId());
+			// created by the same request, the stored line is looked up
+			if (syncLine.getId() == null)
+				yield CompletableFuture.completedFuture(deleteProduct(deleteCommand));
+			
+			// like deleteProduct, the line goes once woocommerce deactivated the product
+			yield wooWriter.submit(syncConnection, ProductWrite.deactivate(syncLine.getWooId()))
+					.thenApply(response ->
+					{
+						if (response.getStatusCode().is2xxSuccessful())
+							deleteLine(syncConnection, syncLine);
+						return response;
+					});
+		}
+		default -> throw new IllegalArgumentException("Unknown command "+command);
+		};
+	}
+	
+	@Override
+	public void preloadWooIds(final Map<Integer, ? extends Collection<Integer>> productIds) {
+		syncLines(productIds);
+	}
+	
+	/**
+	 * Loads the sync lines of the products, one query per company, and caches their woocommerce ids
+	 * 
+	 * @return companyId -> productId -> sync line, for the synced companies only
+	 */
+	private Map<Integer, Map<Integer, SyncLine>> syncLines(final Map<Integer, ? extends Collection<Integer>> productIds) {
+		final Map<Integer, Map<Integer, SyncLine>> syncLines = new HashMap<>();
+		productIds.forEach((companyId, companyProductIds) -> connection(companyId).ifPresent(syncConnection ->
+		{
+			final Map<Integer, SyncLine> companyLines = new HashMap<>();
+			syncProductRepo.findBySyncConnectionIdAndProductIdIn(syncConnection.getId(), companyProductIds)
+			.forEach(line -> companyLines.put(line.getProductId(), line));
+			companyProductIds.forEach(productId -> lookupCache.wooId(syncConnection.getId(), productId,
+					() -> Optional.ofNullable(companyLines.get(productId)).map(SyncLine::getWooId)));
+			syncLines.put(companyId, companyLines);
+		}));
+		return syncLines;
+	}
+	
 	@Override
 	public List<Product> allProducts(SyncConnection syncConnection) {
 		return woocommerceApi.allProducts(syncConnection);
 	}
 
+	@Override
+	public void forEachProductPage(final SyncConnection syncConnection, final int firstPage,
+			final ObjIntConsumer<List<Product>> pageConsumer) {
+		woocommerceApi.forEachPage(syncConnection, firstPage, pageConsumer);
+	}
+	
+	@Override
+	public void forEachModifiedProductPage(final SyncConnection syncConnection, final Instant modifiedSince,
+			final ObjIntConsumer<List<Product>> pageConsumer) {
+		woocommerceApi.forEachModifiedPage(syncConnection, modifiedSince, pageConsumer);
+	}
+
+	@Override
+	public Integer productCount(final SyncConnection syncConnection) {
+		return woocommerceApi.productCount(syncConnection);
+	}
+	
 	@Override
 	public ResponseEntity<Product> deactivateProduct(SyncConnection syncConnection, int wooId) {
 		return woocommerceApi.deactivateProduct(syncConnection, wooId);
 	}
 	
 	@Override
-	public ResponseEntity<Product> putProduct(SyncConnection syncConnection, Product wooProduct) {
-		return woocommerceApi.putProduct(syncConnection, wooProduct);
+	public ResponseEntity<Product> patchProduct(SyncConnection syncConnection, Product wooProduct) {
+		return woocommerceApi.patchProduct(syncConnection, wooProduct);
+	}
+	
+	@Override
+	public WoocommerceBatchWriter batchWriter() {
+		return woocommerceApi.batchWriter();
 	}
 }
@@ -0,0 +1 @@
+alter table sync_connection add column if not exists page_fetch_concurrency integer;
@@ -0,0 +1,17 @@
+-- /update commands persisted for the OutboxDispatcher
+create table if not exists outbox_command (
+	id bigint generated by default as identity,
+	type varchar(255) not null,
+	company_id integer not null,
+	product_id integer not null,
+	payload varchar(4000) not null,
+	status varchar(255) not null,
+	attempts integer not null,
+	next_attempt_at timestamp(6) with time zone not null,
+	created_at timestamp(6) with time zone not null,
+	processed_at timestamp(6) with time zone,
+	last_error varchar(2000),
+	woo_dispatched boolean not null,
+	moqui_dispatched boolean not null,
+	primary key (id)
+);
@@ -0,0 +1,22 @@
+-- Schema as created by hibernate ddl-auto=update before migrations were introduced.
+-- Existing databases are baselined at this version and skip it.
+
+create table if not exists sync_connection (
+	id integer generated by default as identity,
+	company_id integer not null,
+	inventory_service_url varchar(255) not null,
+	website_url varchar(255) not null,
+	website_key varchar(255),
+	website_secret varchar(255),
+	primary key (id)
+);
+
+create table if not exists sync_line (
+	id bigint generated by default as identity,
+	sync_connection_id integer,
+	product_id integer not null,
+	woo_id integer not null,
+	woo_name varchar(255),
+	primary key (id),
+	constraint fk_sync_line_sync_connection foreign key (sync_connection_id) references sync_connection (id)
+);
@@ -0,0 +1,36 @@
+-- A company has at most one connection; the lines of any duplicates move to its oldest connection,
+-- before the duplicate lines are dropped below.
+update sync_line set sync_connection_id = (
+	select min(keeper.id) from sync_connection keeper
+	join sync_connection dup on dup.company_id = keeper.company_id
+	where dup.id = sync_line.sync_connection_id
+)
+where sync_connection_id in (
+	select newer.id from sync_connection newer
+	join sync_connection older on older.company_id = newer.company_id and older.id < newer.id
+);
+delete from sync_connection where id in (
+	select newer.id from sync_connection newer
+	join sync_connection older on older.company_id = newer.company_id and older.id < newer.id
+);
+
+-- A product is linked at most once per connection; keep the oldest line of any duplicates.
+delete from sync_line where id in (
+	select newer.id from sync_line newer
+	join sync_line older on older.sync_connection_id = newer.sync_connection_id
+		and older.product_id = newer.product_id and older.id < newer.id
+);
+
+-- serves findBySyncConnectionIdAndProductId, findBySyncConnectionIdAndProductIdAndWooId(by prefix)
+-- and findBySyncConnectionId(by prefix)
+alter table sync_line add constraint uk_sync_line_connection_product unique (sync_connection_id, product_id);
+
+-- serves findByCompanyId
+alter table sync_connection add constraint uk_sync_connection_company unique (company_id);
+
+-- OutboxCommandRepository.findDue
+create index ix_outbox_command_due on outbox_command (status, next_attempt_at);
+-- per product ordering checks of findDue and findPendingAfter
+create index ix_outbox_command_product on outbox_command (company_id, product_id, id);
+-- deleteProcessedBefore
+create index ix_outbox_command_processed on outbox_command (status, processed_at);
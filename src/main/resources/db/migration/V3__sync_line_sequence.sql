@@ -0,0 +1,6 @@
+-- sync_line ids come from a pooled sequence (allocationSize 50) so hibernate can batch the inserts
+alter table sync_line alter column id drop identity if exists;
+
+create sequence sync_line_seq increment by 50;
+-- hibernate hands out the 50 ids up to the returned value, so the first one must end above the existing ids
+select setval('sync_line_seq', coalesce((select max(id) from sync_line), 0) + 50, false);
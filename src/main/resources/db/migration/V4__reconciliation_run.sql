@@ -0,0 +1,19 @@
+create table reconciliation_run (
+	id bigint generated by default as identity,
+	sync_connection_id integer not null,
+	status varchar(255) not null,
+	last_page integer not null,
+	products integer not null,
+	deactivated integer not null,
+	name_differences integer not null,
+	price_changes integer not null,
+	stock_changes integer not null,
+	started_at timestamp(6) with time zone not null,
+	heartbeat_at timestamp(6) with time zone not null,
+	finished_at timestamp(6) with time zone,
+	last_error varchar(2000),
+	primary key (id),
+	constraint fk_reconciliation_run_sync_connection foreign key (sync_connection_id) references sync_connection (id)
+);
+
+create index ix_reconciliation_run_connection on reconciliation_run (sync_connection_id, id);
@@ -0,0 +1 @@
+alter table reconciliation_run add column total_products integer;
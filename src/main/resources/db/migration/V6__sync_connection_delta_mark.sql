@@ -0,0 +1 @@
+alter table sync_connection add column delta_synced_at timestamp(6) with time zone;
@@ -0,0 +1 @@
+alter table reconciliation_run add column kind varchar(255) not null default 'ONBOARDING';
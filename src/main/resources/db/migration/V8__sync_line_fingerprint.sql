@@ -0,0 +1,4 @@
+alter table sync_line add column fingerprint bigint;
+
+-- updateFingerprint(s) and findBySyncConnectionIdAndWooIdIn
+create index ix_sync_line_connection_woo on sync_line (sync_connection_id, woo_id);
@@ -0,0 +1,6 @@
+alter table reconciliation_run add column fetch_millis bigint not null default 0;
+alter table reconciliation_run add column match_millis bigint not null default 0;
+alter table reconciliation_run add column write_millis bigint not null default 0;
+alter table reconciliation_run add column persist_millis bigint not null default 0;
+alter table reconciliation_run add column http_requests integer not null default 0;
+alter table reconciliation_run add column http_errors integer not null default 0;
@@ -0,0 +1,110 @@
+package ro.linic.cloud;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.mock.http.client.MockClientHttpRequest;
+import org.springframework.mock.http.client.MockClientHttpResponse;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import ro.linic.cloud.OutboundMetrics.CallCounts;
+
+public class OutboundMetricsTest {
+	
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+	private final OutboundMetrics outboundMetrics = new OutboundMetrics(meterRegistry);
+	private final MockClientHttpRequest request = new MockClientHttpRequest(HttpMethod.POST, URI.create("https://woo.com/wp-json/wc/v3/products"));
+	
+	@Test
+	public void intercept_whenTagged_recordsTheRequestOnceItsResponseIsRead() throws IOException {
+		// given
+		final byte[] body = "{\"id\":1}".getBytes(StandardCharsets.UTF_8);
+		
+		// when
+		final ClientHttpResponse response = OutboundMetrics.tagged(OutboundMetrics.WOOCOMMERCE, "write", 5, () ->
+		{
+			try {
+				return outboundMetrics.intercept(request, body,
+						(req, reqBody) -> new MockClientHttpResponse("{\"id\":1,\"name\":\"a\"}".getBytes(StandardCharsets.UTF_8), HttpStatus.OK));
+			} catch (final IOException e) {
+				throw new IllegalStateException(e);
+			}
+		});
+		final double inFlightBeforeRead = meterRegistry.get("sync.outbound.in.flight").tag("company", "5").gauge().value();
+		response.getBody().readAllBytes();
+		response.close();
+		response.close();
+		
+		// then
+		assertThat(inFlightBeforeRead).isEqualTo(1);
+		assertThat(meterRegistry.get("sync.outbound.in.flight").tag("company", "5").gauge().value()).isZero();
+		assertThat(meterRegistry.get("sync.outbound.requests")
+				.tags("target", "woocommerce", "operation", "write", "company", "5", "outcome", "2xx")
+				.timer().count()).isEqualTo(1);
+		assertThat(meterRegistry.get("sync.outbound.request.size").tag("target", "woocommerce").summary().totalAmount())
+		.isEqualTo(body.length);
+		assertThat(meterRegistry.get("sync.outbound.response.size").tag("target", "woocommerce").summary().totalAmount())
+		.isEqualTo(19);
+		assertThat(meterRegistry.find("sync.outbound.errors").counter()).isNull();
+	}
+	
+	@Test
+	public void intercept_whenServerErrorOrTimeout_countsTheErrorByOutcome() throws IOException {
+		// given
+		final byte[] body = new byte[0];
+		
+		// when
+		outboundMetrics.intercept(request, body, (req, reqBody) -> new MockClientHttpResponse(new byte[0], HttpStatus.BAD_GATEWAY)).close();
+		assertThatThrownBy(() -> outboundMetrics.intercept(request, body, (req, reqBody) ->
+		{
+			throw new SocketTimeoutException("Read timed out");
+		})).isInstanceOf(SocketTimeoutException.class);
+		
+		// then
+		assertThat(meterRegistry.get("sync.outbound.errors").tags("target", "other", "outcome", "5xx").counter().count()).isEqualTo(1);
+		assertThat(meterRegistry.get("sync.outbound.errors").tags("target", "other", "outcome", "IO_ERROR").counter().count()).isEqualTo(1);
+		assertThat(meterRegistry.get("sync.outbound.in.flight").tag("target", "other").gauge().value()).isZero();
+	}
+	
+	@Test
+	public void counted_whenTasksRunOnOtherThreads_countTheirRequestsToo() throws Exception {
+		// given
+		final CallCounts counts = new CallCounts(10, 1);
+		final ExecutorService executor = Executors.newSingleThreadExecutor();
+		
+		// when
+		try {
+			OutboundMetrics.counted(counts, () ->
+			{
+				try {
+					outboundMetrics.intercept(request, new byte[0], (req, reqBody) -> new MockClientHttpResponse(new byte[0], HttpStatus.OK)).close();
+					executor.submit(OutboundMetrics.inheritCounts(() ->
+					{
+						outboundMetrics.intercept(request, new byte[0], (req, reqBody) -> new MockClientHttpResponse(new byte[0], HttpStatus.NOT_FOUND)).close();
+						return null;
+					})).get();
+				} catch (final Exception e) {
+					throw new IllegalStateException(e);
+				}
+			});
+			outboundMetrics.intercept(request, new byte[0], (req, reqBody) -> new MockClientHttpResponse(new byte[0], HttpStatus.OK)).close();
+		} finally {
+			executor.shutdownNow();
+		}
+		
+		// then
+		assertThat(counts.requests()).isEqualTo(12);
+		assertThat(counts.errors()).isEqualTo(2);
+	}
+}
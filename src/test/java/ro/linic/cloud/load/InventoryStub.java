@@ -0,0 +1,77 @@
+package ro.linic.cloud.load;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+
+import ro.linic.cloud.OutboundMetrics;
+import ro.linic.cloud.pojo.Product;
+
+/**
+ * Stands in for the spring data rest inventory service with the {@link LoadCatalog} inventory, for every company:
+ * the HAL links from the root to the product search resource, the paged <code>findByCompanyId</code> and the
+ * <code>findByCompanyIdAndBarcode</code>, <code>findByCompanyIdAndNameIgnoreCase</code> searches.
+ */
+class InventoryStub extends StubServer {
+	private static final String PRODUCTS = "/products";
+	private static final String SEARCH = PRODUCTS+"/search";
+	
+	private final List<Product> products;
+	private final Map<String, Product> byBarcode = new HashMap<>();
+	private final Map<String, Product> byName = new HashMap<>();
+	
+	InventoryStub(final LoadCatalog catalog, final Faults faults) {
+		super(OutboundMetrics.INVENTORY, faults);
+		products = catalog.inventory();
+		products.forEach(product ->
+		{
+			byBarcode.put(product.getBarcode(), product);
+			byName.put(product.getName().toLowerCase(Locale.ROOT), product);
+		});
+		route("/", this::root);
+		route(PRODUCTS, this::products);
+	}
+	
+	private Response root(final Request request) {
+		if (!request.path().equals("/"))
+			return Response.status(404);
+		return Response.hal(Map.of("_links", Map.of("products", link(PRODUCTS))));
+	}
+	
+	private Response products(final Request request) {
+		return switch (request.path()) {
+		case PRODUCTS -> Response.hal(Map.of("_links", Map.of("search", link(SEARCH))));
+		case SEARCH -> Response.hal(Map.of("_links", Map.of(
+				"findByCompanyId", link(SEARCH+"/findByCompanyId{?companyId,page,size}"),
+				"findByCompanyIdAndBarcode", link(SEARCH+"/findByCompanyIdAndBarcode{?companyId,barcode}"),
+				"findByCompanyIdAndNameIgnoreCase", link(SEARCH+"/findByCompanyIdAndNameIgnoreCase{?companyId,name}"))));
+		case SEARCH+"/findByCompanyId" -> page(request.intParam("page", 0), request.intParam("size", 20));
+		case SEARCH+"/findByCompanyIdAndBarcode" -> collection(Optional.ofNullable(byBarcode.get(request.query().get("barcode"))));
+		case SEARCH+"/findByCompanyIdAndNameIgnoreCase" -> collection(Optional.ofNullable(request.query().get("name"))
+				.map(name -> byName.get(name.toLowerCase(Locale.ROOT))));
+		default -> Response.status(404);
+		};
+	}
+	
+	/**
+	 * Pages are numbered from 0, like spring data does
+	 */
+	private Response page(final int page, final int size) {
+		final List<Product> pageProducts = products.subList(Math.min(page * size, products.size()),
+				Math.min((page + 1) * size, products.size()));
+		return Response.hal(Map.of(
+				"_embedded", Map.of("products", pageProducts),
+				"page", Map.of("size", size, "totalElements", products.size(), "totalPages", (products.size() + size - 1) / size,
+						"number", page)));
+	}
+	
+	private static Response collection(final Optional<Product> product) {
+		return Response.hal(Map.of("_embedded", Map.of("products", product.stream().toList())));
+	}
+	
+	private Map<String, Object> link(final String path) {
+		return path.contains("{") ? Map.of("href", url()+path, "templated", true) : Map.of("href", url()+path);
+	}
+}
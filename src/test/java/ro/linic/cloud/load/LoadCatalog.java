@@ -0,0 +1,90 @@
+package ro.linic.cloud.load;
+
+import static ro.linic.cloud.pojo.Product.WOO_BARCODE_KEY;
+import static ro.linic.cloud.pojo.Product.WOO_NAME_KEY;
+import static ro.linic.cloud.pojo.Product.WOO_PRICE_KEY;
+import static ro.linic.cloud.pojo.Product.WOO_STOCK_KEY;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import ro.linic.cloud.pojo.Product;
+
+/**
+ * The generated catalog of the load tests, seeded by its size so that runs compare.
+ * Of every 10 inventory products the website has 8 under the same sku, with another price and stock,
+ * 1 under another sku and the same name, and in place of the 10th one a product the inventory does not
+ * know, which the onboarding deactivates.
+ */
+class LoadCatalog {
+	private static final String[] WORDS = {"cement", "adeziv", "gresie", "faianta", "vopsea", "lavabila", "surub",
+			"diblu", "cablu", "teava", "robinet", "glet", "amorsa", "polistiren", "vata", "bazaltica"};
+	private static final String[] UOMS = {"BUC", "KG", "L", "M", "MP", "SAC"};
+	private static final int WOO_ID_OFFSET = 1_000_000;
+	
+	private final List<Product> inventory;
+	
+	LoadCatalog(final int size) {
+		final Random random = new Random(size);
+		inventory = new ArrayList<>(size);
+		for (int i = 0; i < size; i++)
+			inventory.add(Product.builder()
+					.id(i + 1)
+					.barcode(String.valueOf(5940000000000L + i))
+					.name(WORDS[random.nextInt(WORDS.length)]+" "+WORDS[random.nextInt(WORDS.length)]+" "+(i + 1))
+					.uom(UOMS[random.nextInt(UOMS.length)])
+					.pricePerUom(BigDecimal.valueOf(random.nextInt(100000), 2))
+					.stock(BigDecimal.valueOf(random.nextInt(1000)))
+					.build());
+	}
+	
+	List<Product> inventory() {
+		return inventory;
+	}
+	
+	/**
+	 * Ids of the inventory products that are on the website, and so have a sync line after the onboarding
+	 */
+	List<Integer> syncedProductIds() {
+		return inventory.stream()
+				.filter(product -> isOnWebsite(product.getId() - 1))
+				.map(Product::getId)
+				.toList();
+	}
+	
+	/**
+	 * The website products, as woocommerce sends them; new nodes on every call
+	 */
+	List<ObjectNode> wooProducts() {
+		final List<ObjectNode> products = new ArrayList<>(inventory.size());
+		for (int i = 0; i < inventory.size(); i++)
+		{
+			final Product product = inventory.get(i);
+			final ObjectNode wooProduct = StubServer.JSON.createObjectNode()
+					.put("id", WOO_ID_OFFSET + i)
+					.put("type", "simple")
+					.put("status", "publish")
+					.put("visible", true);
+			if (isOnWebsite(i))
+				wooProduct.put(WOO_NAME_KEY, product.getName())
+				.put(WOO_BARCODE_KEY, i % 10 == 8 ? "W"+product.getBarcode() : product.getBarcode())
+				.put(WOO_PRICE_KEY, product.getPricePerUom().add(BigDecimal.ONE).toPlainString())
+				.put(WOO_STOCK_KEY, product.getStock().add(BigDecimal.TEN));
+			else
+				wooProduct.put(WOO_NAME_KEY, "discontinued "+(i + 1))
+				.put(WOO_BARCODE_KEY, "D"+product.getBarcode())
+				.put(WOO_PRICE_KEY, "1.00")
+				.put(WOO_STOCK_KEY, 0);
+			products.add(wooProduct);
+		}
+		return products;
+	}
+	
+	private static boolean isOnWebsite(final int index) {
+		return index % 10 != 9;
+	}
+}
@@ -0,0 +1,69 @@
+package ro.linic.cloud.load;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import lombok.extern.java.Log;
+
+/**
+ * Throughput and latency percentiles of a load scenario, logged as one block
+ */
+@Log
+class LoadReport {
+	private final StringBuilder report;
+	private final Duration elapsed;
+	
+	LoadReport(final String scenario, final Duration elapsed) {
+		this.elapsed = elapsed;
+		report = new StringBuilder(System.lineSeparator())
+				.append("== ").append(scenario).append(" in ").append(seconds(elapsed.toMillis()));
+	}
+	
+	LoadReport line(final String line) {
+		report.append(System.lineSeparator()).append("   ").append(line);
+		return this;
+	}
+	
+	/**
+	 * Count, rate over the elapsed time and percentiles of the timer
+	 */
+	LoadReport throughput(final String label, final Timer timer) {
+		return throughput(label, timer, elapsed);
+	}
+	
+	/**
+	 * Count, rate over the given time and percentiles of the timer
+	 */
+	LoadReport throughput(final String label, final Timer timer, final Duration over) {
+		return line(String.format(Locale.ROOT, "%s: %d(%.1f/s), latency %s", label, timer.count(),
+				rate(timer.count(), over), percentiles(timer)));
+	}
+	
+	LoadReport stub(final StubServer stub) {
+		return throughput(stub.name(), stub.requests())
+				.line("   "+stub.injectedErrors()+" injected errors");
+	}
+	
+	static double rate(final long count, final Duration over) {
+		return over.isZero() ? 0 : count * 1000d / over.toMillis();
+	}
+	
+	void log() {
+		log.info(report.toString());
+	}
+	
+	static String seconds(final long millis) {
+		return String.format(Locale.ROOT, "%.1fs", millis / 1000d);
+	}
+	
+	private static String percentiles(final Timer timer) {
+		final StringBuilder percentiles = new StringBuilder();
+		for (final ValueAtPercentile percentile : timer.takeSnapshot().percentileValues())
+			percentiles.append(String.format(Locale.ROOT, "p%.0f %.1fms ", percentile.percentile() * 100,
+					percentile.value(TimeUnit.MILLISECONDS)));
+		return percentiles.append(String.format(Locale.ROOT, "max %.1fms", timer.max(TimeUnit.MILLISECONDS))).toString();
+	}
+}
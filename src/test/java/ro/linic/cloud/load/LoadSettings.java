@@ -0,0 +1,38 @@
+package ro.linic.cloud.load;
+
+import java.time.Duration;
+
+import ro.linic.cloud.load.StubServer.Faults;
+
+/**
+ * Settings of the load tests, read from system properties(e.g. <code>-Dload.catalog-size=100000</code>
+ * on the mvn command line):
+ * <ul>
+ * <li><code>load.catalog-size</code>: inventory products, default 10000</li>
+ * <li><code>load.woo.page-size</code>: products per woocommerce page, default 100</li>
+ * <li><code>load.latency</code>, <code>load.error-rate</code>: latency(+-50%) and ratio of 503 responses injected
+ * into every stub, default PT0.02S and 0; <code>load.&lt;stub&gt;.latency</code> and
+ * <code>load.&lt;stub&gt;.error-rate</code> override them for the woocommerce, inventory, moqui or notification stub</li>
+ * <li><code>load.update.clients</code>: concurrent clients sending /update commands, default 16</li>
+ * <li><code>load.update.duration</code>: how long they send them, default PT30S</li>
+ * <li><code>load.timeout</code>: longest wait for an onboarding or for the outbox to drain, default PT30M</li>
+ * </ul>
+ */
+record LoadSettings(int catalogSize, int wooPageSize, int updateClients, Duration updateDuration, Duration timeout) {
+	
+	static LoadSettings fromSystemProperties() {
+		return new LoadSettings(
+				Integer.getInteger("load.catalog-size", 10000),
+				Integer.getInteger("load.woo.page-size", 100),
+				Integer.getInteger("load.update.clients", 16),
+				Duration.parse(System.getProperty("load.update.duration", "PT30S")),
+				Duration.parse(System.getProperty("load.timeout", "PT30M")));
+	}
+	
+	Faults faults(final String stub) {
+		final String latency = System.getProperty("load.latency", "PT0.02S");
+		final String errorRate = System.getProperty("load.error-rate", "0");
+		return new Faults(Duration.parse(System.getProperty("load."+stub+".latency", latency)),
+				Double.parseDouble(System.getProperty("load."+stub+".error-rate", errorRate)));
+	}
+}
@@ -0,0 +1,203 @@
+package ro.linic.cloud.load;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.MethodOrderer.OrderAnnotation;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import ro.linic.cloud.OutboundMetrics;
+import ro.linic.cloud.command.ChangePriceCommand;
+import ro.linic.cloud.command.ChangeStockCommand;
+import ro.linic.cloud.entity.OutboxCommand;
+import ro.linic.cloud.entity.ReconciliationRun.Status;
+import ro.linic.cloud.entity.SyncConnection;
+import ro.linic.cloud.pojo.OnboardingProgress;
+import ro.linic.cloud.pojo.RunSummary;
+import ro.linic.cloud.repository.OutboxCommandRepository;
+
+/**
+ * End to end load scenarios: the whole application against local stand-ins of woocommerce, the inventory
+ * service, moqui and the notification service, with the latency and errors of {@link LoadSettings} injected.
+ * Tagged <code>load</code> and left out of the default build; run with
+ * <pre>mvn -Pload-tests test -Dload.catalog-size=100000 -Dload.latency=PT0.05S</pre>
+ * Application settings, like <code>-Dsync.virtual-threads.enabled=true</code> or
+ * <code>-Dsync.outbox.enabled=false</code>, apply as well, so that runs compare.
+ */
+@Tag("load")
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+@TestMethodOrder(OrderAnnotation.class)
+public class LoadTest {
+	private static final int COMPANY_ID = 1;
+	
+	private static final LoadSettings settings = LoadSettings.fromSystemProperties();
+	private static final LoadCatalog catalog = new LoadCatalog(settings.catalogSize());
+	private static final WooStub woo = new WooStub(catalog, settings.wooPageSize(), settings.faults(OutboundMetrics.WOOCOMMERCE));
+	private static final InventoryStub inventory = new InventoryStub(catalog, settings.faults(OutboundMetrics.INVENTORY));
+	private static final MoquiStub moqui = new MoquiStub(settings.faults(OutboundMetrics.MOQUI));
+	private static final StubServer notification = new StubServer(OutboundMetrics.NOTIFICATION, settings.faults(OutboundMetrics.NOTIFICATION))
+			.route("/notification", request -> StubServer.Response.json(Map.of()));
+	private static final List<StubServer> stubs = List.of(woo, inventory, moqui, notification);
+	
+	private static Integer syncConnectionId;
+	
+	@Autowired private TestRestTemplate restTemplate;
+	@Autowired private OutboxCommandRepository outboxRepo;
+	
+	@DynamicPropertySource
+	static void stubUrls(final DynamicPropertyRegistry registry) {
+		stubs.forEach(StubServer::start);
+		registry.add("moqui.url", moqui::url);
+		registry.add("cloud.notification.service.url", notification::url);
+	}
+	
+	@AfterAll
+	static void stopStubs() {
+		stubs.forEach(StubServer::stop);
+	}
+	
+	@Test
+	@Order(1)
+	public void onboarding_whenLargeCatalog_reportsProductsPerSecondAndPhases() throws InterruptedException {
+		// given
+		stubs.forEach(StubServer::reset);
+		final long start = System.nanoTime();
+		
+		// when
+		final OnboardingProgress progress = onboard();
+		final Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+		
+		// then
+		assertThat(progress.getStatus()).isEqualTo(Status.COMPLETED);
+		assertThat(progress.getProcessed()).isEqualTo(settings.catalogSize());
+		final RunSummary run = restTemplate.exchange("/sync/{id}/runs?limit=1", HttpMethod.GET, null,
+				new ParameterizedTypeReference<List<RunSummary>>(){}, syncConnectionId).getBody().get(0);
+		final LoadReport report = new LoadReport("onboarding of "+settings.catalogSize()+" products", elapsed)
+				.line(String.format(Locale.ROOT, "%.1f products/s, %d deactivated, %d price and %d stock changes",
+						run.getProductsPerSecond(), run.getDeactivated(), run.getPriceChanges(), run.getStockChanges()))
+				.line("phases(summed over the workers): fetch "+LoadReport.seconds(run.getFetchMillis())
+						+", match "+LoadReport.seconds(run.getMatchMillis())
+						+", write "+LoadReport.seconds(run.getWriteMillis())
+						+", persist "+LoadReport.seconds(run.getPersistMillis()))
+				.line(run.getHttpRequests()+" outbound requests, "+run.getHttpErrors()+" failed")
+				.line(woo.writtenProducts()+" woocommerce products written");
+		stubs.forEach(report::stub);
+		report.log();
+	}
+	
+	@Test
+	@Order(2)
+	public void updates_whenSustainedTraffic_reportsCommandLatencyAndDrainRate() throws Exception {
+		// given
+		if (syncConnectionId == null)
+			assertThat(onboard().getStatus()).isEqualTo(Status.COMPLETED);
+		stubs.forEach(StubServer::reset);
+		final List<Integer> productIds = catalog.syncedProductIds();
+		final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		final Timer accepted = Timer.builder("load.update").publishPercentiles(0.5, 0.95, 0.99).register(registry);
+		final AtomicLong rejected = new AtomicLong();
+		final ExecutorService clients = Executors.newFixedThreadPool(settings.updateClients());
+		final long start = System.nanoTime();
+		final long end = start + settings.updateDuration().toNanos();
+		
+		// when
+		final List<Future<?>> sent = new ArrayList<>();
+		for (int client = 0; client < settings.updateClients(); client++)
+		{
+			final Random random = new Random(client);
+			sent.add(clients.submit(() ->
+			{
+				while (System.nanoTime() < end)
+				{
+					final Integer productId = productIds.get(random.nextInt(productIds.size()));
+					final long sentAt = System.nanoTime();
+					final ResponseEntity<String> response = random.nextBoolean() ?
+							restTemplate.postForEntity("/update/price", new ChangePriceCommand(COMPANY_ID, productId,
+									BigDecimal.valueOf(random.nextInt(100000), 2)), String.class) :
+							restTemplate.postForEntity("/update/stock", new ChangeStockCommand(COMPANY_ID, productId,
+									BigDecimal.valueOf(random.nextInt(1000))), String.class);
+					if (response.getStatusCode().is2xxSuccessful())
+						accepted.record(Duration.ofNanos(System.nanoTime() - sentAt));
+					else
+						rejected.incrementAndGet();
+				}
+			}));
+		}
+		for (final Future<?> client : sent)
+			client.get();
+		clients.shutdown();
+		final Duration sending = Duration.ofNanos(System.nanoTime() - start);
+		final long pending = outboxRepo.countByStatus(OutboxCommand.Status.PENDING);
+		awaitOutboxDrained();
+		final Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+		
+		// then
+		assertThat(rejected.get()).isZero();
+		final LoadReport report = new LoadReport("sustained /update traffic of "+settings.updateClients()+" clients", elapsed)
+				.throughput("accepted commands", accepted, sending)
+				.line(rejected.get()+" rejected commands")
+				.line(String.format(Locale.ROOT, "%d commands pending after %s of traffic, outbox drained after %s", pending,
+						LoadReport.seconds(sending.toMillis()), LoadReport.seconds(elapsed.toMillis())))
+				.line(String.format(Locale.ROOT, "%d woocommerce products written(%.1f/s), %d commands failed", woo.writtenProducts(),
+						LoadReport.rate(woo.writtenProducts(), elapsed), outboxRepo.countByStatus(OutboxCommand.Status.FAILED)));
+		stubs.forEach(report::stub);
+		report.log();
+	}
+	
+	/**
+	 * Onboards the catalog for {@link #COMPANY_ID} and waits for the job to finish
+	 */
+	private OnboardingProgress onboard() throws InterruptedException {
+		final SyncConnection connection = new SyncConnection(null, COMPANY_ID, inventory.url(), woo.url(), "ck_load", "cs_load");
+		final ResponseEntity<Map<String, Number>> started = restTemplate.exchange("/sync", HttpMethod.POST,
+				new HttpEntity<>(connection), new ParameterizedTypeReference<Map<String, Number>>(){});
+		assertThat(started.getStatusCode()).isEqualTo(HttpStatus.ACCEPTED);
+		syncConnectionId = started.getBody().get("syncConnectionId").intValue();
+		final long jobId = started.getBody().get("jobId").longValue();
+		
+		final long deadline = System.nanoTime() + settings.timeout().toNanos();
+		OnboardingProgress progress;
+		do {
+			Thread.sleep(500);
+			progress = restTemplate.getForObject("/sync/jobs/{jobId}", OnboardingProgress.class, jobId);
+		} while (progress.getStatus() == Status.RUNNING && System.nanoTime() < deadline);
+		return progress;
+	}
+	
+	private void awaitOutboxDrained() throws InterruptedException {
+		final long deadline = System.nanoTime() + settings.timeout().toNanos();
+		while (outboxRepo.countByStatus(OutboxCommand.Status.PENDING) > 0 && System.nanoTime() < deadline)
+			Thread.sleep(200);
+		assertThat(outboxRepo.countByStatus(OutboxCommand.Status.PENDING)).isZero();
+	}
+}
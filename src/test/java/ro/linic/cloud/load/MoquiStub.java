@@ -0,0 +1,27 @@
+package ro.linic.cloud.load;
+
+import java.util.Map;
+
+import ro.linic.cloud.OutboundMetrics;
+
+/**
+ * Stands in for the moqui REST api the product commands are mirrored to: PATCH and DELETE of
+ * <code>/rest/s1/mantle/products/{id}</code> and POST of its <code>identifications</code>.
+ */
+class MoquiStub extends StubServer {
+	private static final String PRODUCTS = "/rest/s1/mantle/products/";
+	
+	MoquiStub(final Faults faults) {
+		super(OutboundMetrics.MOQUI, faults);
+		route(PRODUCTS, this::products);
+	}
+	
+	private Response products(final Request request) {
+		final String[] path = request.path().substring(PRODUCTS.length()).split("/");
+		if (path.length == 1 && (request.method().equals("PATCH") || request.method().equals("DELETE")))
+			return Response.json(Map.of("productId", path[0]));
+		if (path.length == 2 && path[1].equals("identifications") && request.method().equals("POST"))
+			return Response.json(Map.of("productId", path[0]));
+		return Response.status(404);
+	}
+}
@@ -0,0 +1,216 @@
+package ro.linic.cloud.load;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.java.Log;
+
+/**
+ * An http server on a free local port, standing in for a remote service in the load tests.
+ * Every request waits for the injected latency(+-50%) and, at the injected error rate, fails with 503
+ * instead of reaching its route. The service time of the requests is recorded until {@link #reset}.
+ */
+@Log
+class StubServer {
+	static final ObjectMapper JSON = new ObjectMapper();
+	private static final int INJECTED_ERROR = 503;
+	
+	private final String name;
+	private final Faults faults;
+	private final HttpServer server;
+	private final ExecutorService executor = Executors.newCachedThreadPool();
+	private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+	
+	StubServer(final String name, final Faults faults) {
+		this.name = name;
+		this.faults = faults;
+		try {
+			server = HttpServer.create(new InetSocketAddress(0), 0);
+		} catch (final IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		server.setExecutor(executor);
+	}
+	
+	/**
+	 * Handles the requests under the path, unless a longer path has a route of its own
+	 */
+	StubServer route(final String path, final Route route) {
+		server.createContext(path, exchange -> handle(exchange, route));
+		return this;
+	}
+	
+	StubServer start() {
+		server.start();
+		return this;
+	}
+	
+	void stop() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+	
+	String url() {
+		return "http://localhost:"+server.getAddress().getPort();
+	}
+	
+	String name() {
+		return name;
+	}
+	
+	/**
+	 * Forgets the requests served so far
+	 */
+	void reset() {
+		registry.clear();
+	}
+	
+	/**
+	 * Requests served since the last {@link #reset}, injected errors included
+	 */
+	Timer requests() {
+		return Timer.builder("stub.requests")
+				.publishPercentiles(0.5, 0.95, 0.99)
+				.register(registry);
+	}
+	
+	long injectedErrors() {
+		return (long) registry.counter("stub.injected.errors").count();
+	}
+	
+	private void handle(final HttpExchange exchange, final Route route) throws IOException {
+		final long start = System.nanoTime();
+		try {
+			final Request request = Request.of(exchange);
+			Thread.sleep(faults.delay().toMillis());
+			
+			Response response;
+			if (faults.fail())
+			{
+				registry.counter("stub.injected.errors").increment();
+				response = Response.status(INJECTED_ERROR);
+			}
+			else
+			{
+				try {
+					response = route.handle(request);
+				} catch (final RuntimeException e) {
+					log.warning(name+" failed "+request.method()+" "+request.path()+": "+e);
+					response = Response.status(500);
+				}
+			}
+			send(exchange, response);
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			exchange.close();
+			requests().record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+		}
+	}
+	
+	private static void send(final HttpExchange exchange, final Response response) throws IOException {
+		response.headers().forEach(exchange.getResponseHeaders()::set);
+		if (response.body().length == 0)
+		{
+			exchange.sendResponseHeaders(response.status(), -1);
+			return;
+		}
+		exchange.sendResponseHeaders(response.status(), response.body().length);
+		exchange.getResponseBody().write(response.body());
+	}
+	
+	@FunctionalInterface
+	interface Route {
+		Response handle(Request request);
+	}
+	
+	record Request(String method, String path, Map<String, String> query, byte[] body) {
+		static Request of(final HttpExchange exchange) throws IOException {
+			final Map<String, String> query = new HashMap<>();
+			final String rawQuery = exchange.getRequestURI().getRawQuery();
+			if (rawQuery != null)
+				for (final String param : rawQuery.split("&"))
+				{
+					final int eq = param.indexOf('=');
+					if (eq > 0)
+						query.put(URLDecoder.decode(param.substring(0, eq), StandardCharsets.UTF_8),
+								URLDecoder.decode(param.substring(eq + 1), StandardCharsets.UTF_8));
+				}
+			return new Request(exchange.getRequestMethod(), exchange.getRequestURI().getPath(), query,
+					exchange.getRequestBody().readAllBytes());
+		}
+		
+		int intParam(final String name, final int defaultValue) {
+			return query.containsKey(name) ? Integer.parseInt(query.get(name)) : defaultValue;
+		}
+		
+		JsonNode json() {
+			try {
+				return JSON.readTree(body);
+			} catch (final IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+	
+	record Response(int status, Map<String, String> headers, byte[] body) {
+		static Response status(final int status) {
+			return new Response(status, Map.of(), new byte[0]);
+		}
+		
+		static Response json(final Object body) {
+			return json(body, Map.of());
+		}
+		
+		static Response json(final Object body, final Map<String, String> headers) {
+			return withContentType("application/json", body, headers);
+		}
+		
+		static Response hal(final Object body) {
+			return withContentType("application/hal+json", body, Map.of());
+		}
+		
+		private static Response withContentType(final String contentType, final Object body, final Map<String, String> headers) {
+			final Map<String, String> allHeaders = new HashMap<>(headers);
+			allHeaders.put("Content-Type", contentType);
+			try {
+				return new Response(200, allHeaders, JSON.writeValueAsBytes(body));
+			} catch (final JsonProcessingException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+	
+	/**
+	 * Latency and error rate injected into every request of a stub
+	 */
+	record Faults(Duration latency, double errorRate) {
+		Duration delay() {
+			if (latency.isZero())
+				return latency;
+			return Duration.ofNanos((long) (latency.toNanos() * ThreadLocalRandom.current().nextDouble(0.5, 1.5)));
+		}
+		
+		boolean fail() {
+			return errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate;
+		}
+	}
+}
@@ -0,0 +1,118 @@
+package ro.linic.cloud.load;
+
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import ro.linic.cloud.OutboundMetrics;
+
+/**
+ * Stands in for the woocommerce legacy REST api(wc-api/v2) of a website serving the {@link LoadCatalog}:
+ * the product pages with their X-WC-TotalPages header, the product count, and the single, created and bulk
+ * writes, which are applied to the stored products.
+ */
+class WooStub extends StubServer {
+	static final String PRODUCTS = "/wc-api/v2/products";
+	
+	private final NavigableMap<Integer, ObjectNode> products = new ConcurrentSkipListMap<>();
+	private final AtomicInteger nextId;
+	private final AtomicLong writtenProducts = new AtomicLong();
+	private final int pageSize;
+	
+	WooStub(final LoadCatalog catalog, final int pageSize, final Faults faults) {
+		super(OutboundMetrics.WOOCOMMERCE, faults);
+		this.pageSize = pageSize;
+		catalog.wooProducts().forEach(product -> products.put(product.get("id").asInt(), product));
+		nextId = new AtomicInteger(products.isEmpty() ? 1 : products.lastKey() + 1);
+		route(PRODUCTS, this::products);
+	}
+	
+	/**
+	 * Products created or changed, one per item of a bulk request
+	 */
+	long writtenProducts() {
+		return writtenProducts.get();
+	}
+	
+	@Override
+	void reset() {
+		super.reset();
+		writtenProducts.set(0);
+	}
+	
+	private Response products(final Request request) {
+		final String path = request.path().substring(PRODUCTS.length());
+		if (path.isEmpty() || path.equals("/"))
+			return switch (request.method()) {
+			case "GET" -> page(request);
+			case "POST" -> Response.json(Map.of("product", create((ObjectNode) request.json().get("product"))));
+			default -> Response.status(405);
+			};
+		if (path.equals("/count"))
+			return Response.json(Map.of("count", products.size()));
+		if (path.equals("/bulk"))
+			return bulk(request.json().get("products"));
+		
+		final ObjectNode product = products.get(Integer.valueOf(path.substring(1)));
+		if (product == null)
+			return Response.status(404);
+		return switch (request.method()) {
+		case "GET" -> Response.json(Map.of("product", copy(product)));
+		case "PUT", "POST" -> Response.json(Map.of("product", update(product, (ObjectNode) request.json().get("product"))));
+		default -> Response.status(405);
+		};
+	}
+	
+	/**
+	 * Pages are numbered from 1; the modified since filters are ignored and every product is served
+	 */
+	private Response page(final Request request) {
+		final int page = request.intParam("page", 1);
+		final List<ObjectNode> pageProducts = products.values().stream()
+				.skip((long) (page - 1) * pageSize)
+				.limit(pageSize)
+				.map(WooStub::copy)
+				.toList();
+		final int totalPages = (products.size() + pageSize - 1) / pageSize;
+		return Response.json(Map.of("products", pageProducts), Map.of("X-WC-TotalPages", String.valueOf(totalPages)));
+	}
+	
+	private Response bulk(final JsonNode items) {
+		final ArrayNode written = JSON.createArrayNode();
+		for (final JsonNode item : items)
+		{
+			final ObjectNode product = item.hasNonNull("id") ? products.get(item.get("id").asInt()) : null;
+			written.add(product != null ? update(product, (ObjectNode) item) : create((ObjectNode) item));
+		}
+		return Response.json(Map.of("products", written));
+	}
+	
+	private ObjectNode create(final ObjectNode fields) {
+		final int id = nextId.getAndIncrement();
+		final ObjectNode product = fields.deepCopy().put("id", id);
+		products.put(id, product);
+		writtenProducts.incrementAndGet();
+		return copy(product);
+	}
+	
+	private ObjectNode update(final ObjectNode product, final ObjectNode fields) {
+		writtenProducts.incrementAndGet();
+		synchronized (product) {
+			product.setAll(fields);
+			return product.deepCopy();
+		}
+	}
+	
+	private static ObjectNode copy(final ObjectNode product) {
+		synchronized (product) {
+			return product.deepCopy();
+		}
+	}
+}
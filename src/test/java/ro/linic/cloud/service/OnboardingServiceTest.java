@@ -0,0 +1,114 @@
+package ro.linic.cloud.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.Writer;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import ro.linic.cloud.entity.ReconciliationRun;
+import ro.linic.cloud.entity.SyncConnection;
+import ro.linic.cloud.repository.ReconciliationRunRepository;
+
+@ExtendWith(MockitoExtension.class)
+public class OnboardingServiceTest {
+	
+	@Mock private SyncService syncService;
+	@Mock private ReconciliationRunRepository runRepo;
+	@InjectMocks private OnboardingServiceImpl onboardingService;
+	@Captor private ArgumentCaptor<BooleanSupplier> cancelledCaptor;
+	
+	private final SyncConnection syncConnection =
+			new SyncConnection(1, 1, "http://inventory.linic.ro", "http://linic.ro", "key", "secret");
+	private final ReconciliationRun run = new ReconciliationRun(syncConnection, Instant.now());
+	
+	@BeforeEach
+	public void setup() {
+		ReflectionTestUtils.setField(onboardingService, "workers", 1);
+		ReflectionTestUtils.setField(onboardingService, "queueCapacity", 1);
+		ReflectionTestUtils.setField(onboardingService, "retainFinished", Duration.ofHours(1));
+		ReflectionTestUtils.setField(onboardingService, "shutdownTimeout", Duration.ofSeconds(5));
+		ReflectionTestUtils.setField(run, "id", 7L);
+		onboardingService.startExecutor();
+	}
+	
+	@AfterEach
+	public void tearDown() throws InterruptedException {
+		onboardingService.stopExecutor();
+	}
+	
+	@Test
+	public void start_reconcileInTheBackgroundAndKeepTheReport() throws InterruptedException {
+		// given
+		when(syncService.startConnection(syncConnection)).thenReturn(run);
+		doAnswer(invocation -> invocation.getArgument(1, Writer.class).append("Set price of 59 cement 40kg from 27 to 29.5"))
+		.when(syncService).reconcile(eq(run), any(), any());
+		
+		// when
+		final ReconciliationRun result = onboardingService.start(syncConnection);
+		onboardingService.stopExecutor();
+		
+		// then
+		assertThat(result.getId()).isEqualTo(7L);
+		assertThat(onboardingService.report(7L)).contains("Set price of 59 cement 40kg from 27 to 29.5");
+		assertThat(onboardingService.report(8L)).isEmpty();
+		assertThat(onboardingService.cancel(7L)).isFalse();
+	}
+	
+	@Test
+	public void cancel_whenJobRunning_signalTheReconciliation() {
+		// given
+		final CountDownLatch release = new CountDownLatch(1);
+		when(syncService.startConnection(syncConnection)).thenReturn(run);
+		doAnswer(invocation -> release.await(5, TimeUnit.SECONDS)).when(syncService).reconcile(eq(run), any(), any());
+		onboardingService.start(syncConnection);
+		verify(syncService, timeout(1000)).reconcile(eq(run), any(), cancelledCaptor.capture());
+		assertThat(cancelledCaptor.getValue().getAsBoolean()).isFalse();
+		
+		// when
+		final boolean result = onboardingService.cancel(7L);
+		
+		// then
+		assertThat(result).isTrue();
+		assertThat(cancelledCaptor.getValue().getAsBoolean()).isTrue();
+		release.countDown();
+	}
+	
+	@Test
+	public void start_whenCompanyJobRunning_throwException() {
+		// given
+		final CountDownLatch release = new CountDownLatch(1);
+		when(syncService.startConnection(syncConnection)).thenReturn(run);
+		doAnswer(invocation -> release.await(5, TimeUnit.SECONDS)).when(syncService).reconcile(eq(run), any(), any());
+		onboardingService.start(syncConnection);
+		
+		// when, then
+		assertThatThrownBy(() -> onboardingService.start(syncConnection))
+		.isInstanceOf(OnboardingRunningException.class)
+		.hasMessage("Onboarding of company id 1 is already running as job 7");
+		verify(syncService, times(1)).startConnection(syncConnection);
+		release.countDown();
+	}
+}
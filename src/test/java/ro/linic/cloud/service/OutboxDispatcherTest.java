@@ -0,0 +1,164 @@
+package ro.linic.cloud.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import ro.linic.cloud.command.ChangePriceCommand;
+import ro.linic.cloud.command.ChangeStockCommand;
+import ro.linic.cloud.command.CreateProductCommand;
+import ro.linic.cloud.entity.OutboxCommand;
+import ro.linic.cloud.entity.OutboxCommand.Type;
+import ro.linic.cloud.pojo.Product;
+
+@ExtendWith(MockitoExtension.class)
+public class OutboxDispatcherTest {
+
+	@Mock private OutboxService outboxService;
+	@Mock private WoocommerceService woocommerceService;
+	@Mock private MoquiApi moquiApi;
+	@Mock private WoocommerceBatchWriter wooWriter;
+	@Spy private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+	@InjectMocks private OutboxDispatcher dispatcher;
+
+	private static long nextId = 1;
+
+	private static OutboxCommand outboxCommand(final Type type, final Integer productId) {
+		final OutboxCommand command = new OutboxCommand();
+		ReflectionTestUtils.setField(command, "id", nextId++);
+		command.setType(type);
+		command.setCompanyId(1);
+		command.setProductId(productId);
+		return command;
+	}
+
+	@Test
+	public void dispatch_whenMoquiFails_retryOnlyMoqui() {
+		// given
+		final OutboxCommand command = outboxCommand(Type.PRICE, 22);
+		final ChangePriceCommand priceCommand = new ChangePriceCommand(1, 22, new BigDecimal("29.5"));
+		when(outboxService.payload(command, ChangePriceCommand.class)).thenReturn(priceCommand);
+		when(woocommerceService.batchWriter()).thenReturn(wooWriter);
+		when(woocommerceService.updatePriceAndStock(wooWriter, 1, 22, new BigDecimal("29.5"), null))
+		.thenReturn(CompletableFuture.completedFuture(new ResponseEntity<Product>(HttpStatus.OK)));
+		when(moquiApi.updatePrice(priceCommand))
+		.thenReturn(ResponseEntity.internalServerError().build(), ResponseEntity.ok(null));
+
+		// when
+		final boolean firstAttempt = dispatcher.dispatch(command);
+		final boolean secondAttempt = dispatcher.dispatch(command);
+
+		// then
+		assertThat(firstAttempt).isFalse();
+		assertThat(secondAttempt).isTrue();
+		assertThat(command.isWooDispatched()).isTrue();
+		assertThat(command.isMoquiDispatched()).isTrue();
+		verify(woocommerceService, times(1)).updatePriceAndStock(wooWriter, 1, 22, new BigDecimal("29.5"), null);
+		verify(moquiApi, times(2)).updatePrice(priceCommand);
+		verify(outboxService).fail(eq(command), anyString());
+		verify(outboxService).complete(command);
+	}
+
+	@Test
+	public void dispatch_whenWooRejectsCreatedProduct_failCommand() {
+		// given
+		final OutboxCommand command = outboxCommand(Type.CREATE_PRODUCT, 22);
+		final CreateProductCommand createCommand = new CreateProductCommand(1, 22, "59", "cement 40kg", "buc", new BigDecimal("29.5"));
+		when(outboxService.payload(command, CreateProductCommand.class)).thenReturn(createCommand);
+		when(woocommerceService.createProduct(createCommand)).thenReturn(new ResponseEntity<Product>(HttpStatus.ACCEPTED));
+
+		// when
+		final boolean dispatched = dispatcher.dispatch(command);
+
+		// then
+		assertThat(dispatched).isFalse();
+		verify(moquiApi, never()).createProduct(any());
+		verify(outboxService).fail(eq(command), anyString());
+		verify(outboxService, never()).complete(any());
+	}
+
+	@Test
+	public void drain_whenCommandFails_holdBackLaterCommandsOfSameProduct() {
+		// given
+		ReflectionTestUtils.setField(dispatcher, "batchSize", 10);
+		final OutboxCommand failing = outboxCommand(Type.PRICE, 22);
+		final OutboxCommand sameProduct = outboxCommand(Type.PRICE, 22);
+		final OutboxCommand otherProduct = outboxCommand(Type.PRICE, 23);
+		final ChangePriceCommand failingPrice = new ChangePriceCommand(1, 22, new BigDecimal("10"));
+		final ChangePriceCommand otherPrice = new ChangePriceCommand(1, 23, new BigDecimal("12"));
+
+		when(outboxService.claimDue(anyInt())).thenReturn(List.of(failing, sameProduct, otherProduct));
+		when(outboxService.payload(failing, ChangePriceCommand.class)).thenReturn(failingPrice);
+		when(outboxService.payload(otherProduct, ChangePriceCommand.class)).thenReturn(otherPrice);
+		when(woocommerceService.batchWriter()).thenReturn(wooWriter);
+		when(woocommerceService.updatePriceAndStock(wooWriter, 1, 22, new BigDecimal("10"), null))
+		.thenReturn(CompletableFuture.failedFuture(new RuntimeException("Read timed out")));
+		when(woocommerceService.updatePriceAndStock(wooWriter, 1, 23, new BigDecimal("12"), null))
+		.thenReturn(CompletableFuture.completedFuture(new ResponseEntity<Product>(HttpStatus.OK)));
+		when(moquiApi.updatePrice(otherPrice)).thenReturn(ResponseEntity.ok(null));
+
+		// when
+		dispatcher.drain();
+
+		// then
+		verify(outboxService).fail(eq(failing), anyString());
+		verify(outboxService).release(sameProduct);
+		verify(outboxService).complete(otherProduct);
+		// both products were written in the same wave
+		verify(wooWriter, times(1)).flush();
+	}
+	
+	@Test
+	public void dispatch_whenPriceAndStockQueued_sendLatestValuesInOneWrite() {
+		// given
+		final OutboxCommand head = outboxCommand(Type.PRICE, 22);
+		final OutboxCommand stock1 = outboxCommand(Type.STOCK, 22);
+		final OutboxCommand price2 = outboxCommand(Type.PRICE, 22);
+		final OutboxCommand stock2 = outboxCommand(Type.STOCK, 22);
+		final ChangePriceCommand latestPrice = new ChangePriceCommand(1, 22, new BigDecimal("31"));
+		when(outboxService.claimCoalescible(head)).thenReturn(List.of(stock1, price2, stock2));
+		when(outboxService.payload(head, ChangePriceCommand.class)).thenReturn(new ChangePriceCommand(1, 22, new BigDecimal("30")));
+		when(outboxService.payload(stock1, ChangeStockCommand.class)).thenReturn(new ChangeStockCommand(1, 22, new BigDecimal("5")));
+		when(outboxService.payload(price2, ChangePriceCommand.class)).thenReturn(latestPrice);
+		when(outboxService.payload(stock2, ChangeStockCommand.class)).thenReturn(new ChangeStockCommand(1, 22, new BigDecimal("4")));
+		when(woocommerceService.batchWriter()).thenReturn(wooWriter);
+		when(woocommerceService.updatePriceAndStock(wooWriter, 1, 22, new BigDecimal("31"), new BigDecimal("4")))
+		.thenReturn(CompletableFuture.completedFuture(new ResponseEntity<Product>(HttpStatus.OK)));
+		when(moquiApi.updatePrice(latestPrice)).thenReturn(ResponseEntity.ok(null));
+
+		// when
+		final boolean dispatched = dispatcher.dispatch(head);
+
+		// then
+		assertThat(dispatched).isTrue();
+		verify(woocommerceService, times(1)).updatePriceAndStock(any(), anyInt(), anyInt(), any(), any());
+		verify(moquiApi, times(1)).updatePrice(any());
+		verify(outboxService).complete(head);
+		verify(outboxService).complete(stock1);
+		verify(outboxService).complete(price2);
+		verify(outboxService).complete(stock2);
+		assertThat(meterRegistry.counter("sync.outbox.coalesced.writes.saved").count()).isEqualTo(3);
+	}
+}
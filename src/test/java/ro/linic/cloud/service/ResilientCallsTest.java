@@ -0,0 +1,114 @@
+package ro.linic.cloud.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.retry.RetryConfig;
+import io.github.resilience4j.retry.RetryRegistry;
+
+public class ResilientCallsTest {
+	
+	private final CircuitBreakerRegistry circuitBreakers = CircuitBreakerRegistry.of(CircuitBreakerConfig.custom()
+			.slidingWindowSize(4)
+			.minimumNumberOfCalls(4)
+			.waitDurationInOpenState(Duration.ofMillis(50))
+			.permittedNumberOfCallsInHalfOpenState(1)
+			.build());
+	private final ResilientCalls resilientCalls = new ResilientCalls(circuitBreakers,
+			RetryRegistry.of(RetryConfig.custom().maxAttempts(3).waitDuration(Duration.ofMillis(1)).build()));
+	
+	@Test
+	public void call_whenServerErrorIsTransient_retriesUntilItSucceeds() {
+		// given
+		final AtomicInteger attempts = new AtomicInteger();
+		
+		// when
+		final String result = resilientCalls.call(ResilientCalls.WOOCOMMERCE, "https://woo.com", true, () ->
+		{
+			if (attempts.incrementAndGet() < 3)
+				throw new HttpServerErrorException(HttpStatus.SERVICE_UNAVAILABLE);
+			return "ok";
+		});
+		
+		// then
+		assertThat(result).isEqualTo("ok");
+		assertThat(attempts).hasValue(3);
+	}
+	
+	@Test
+	public void call_whenClientErrorOrNotIdempotent_doesNotRetry() {
+		// given
+		final AtomicInteger attempts = new AtomicInteger();
+		
+		// when
+		assertThatThrownBy(() -> resilientCalls.call(ResilientCalls.WOOCOMMERCE, "https://woo.com", true, () ->
+		{
+			attempts.incrementAndGet();
+			throw new HttpClientErrorException(HttpStatus.NOT_FOUND);
+		})).isInstanceOf(HttpClientErrorException.class);
+		assertThatThrownBy(() -> resilientCalls.call(ResilientCalls.WOOCOMMERCE, "https://woo.com", false, () ->
+		{
+			attempts.incrementAndGet();
+			throw new HttpServerErrorException(HttpStatus.BAD_GATEWAY);
+		})).isInstanceOf(HttpServerErrorException.class);
+		
+		// then
+		assertThat(attempts).hasValue(2);
+	}
+	
+	@Test
+	public void call_whenHostKeepsFailing_opensItsCircuitAndProbesRecovery() throws InterruptedException {
+		// given
+		final AtomicInteger attempts = new AtomicInteger();
+		for (int i = 0; i < 4; i++)
+			assertThatThrownBy(() -> resilientCalls.call(ResilientCalls.WOOCOMMERCE, "https://dead.com", false, () ->
+			{
+				attempts.incrementAndGet();
+				throw new HttpServerErrorException(HttpStatus.GATEWAY_TIMEOUT);
+			})).isInstanceOf(HttpServerErrorException.class);
+		
+		// when
+		assertThatThrownBy(() -> resilientCalls.call(ResilientCalls.WOOCOMMERCE, "https://dead.com/", true, () -> "ok"))
+		.isInstanceOf(CallNotPermittedException.class);
+		final String otherHost = resilientCalls.call(ResilientCalls.WOOCOMMERCE, "https://woo.com", true, () -> "ok");
+		Thread.sleep(100);
+		final String probe = resilientCalls.call(ResilientCalls.WOOCOMMERCE, "https://dead.com", true, () -> "ok");
+		
+		// then
+		assertThat(attempts).hasValue(4);
+		assertThat(otherHost).isEqualTo("ok");
+		assertThat(probe).isEqualTo("ok");
+		assertThat(circuitBreakers.circuitBreaker("woocommerce-dead.com").getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+	}
+	
+	@Test
+	public void call_whenNoCallSlotFreedUp_neitherRetriesNorCountsItAgainstTheHost() {
+		// given
+		final AtomicInteger attempts = new AtomicInteger();
+		
+		// when
+		for (int i = 0; i < 4; i++)
+			assertThatThrownBy(() -> resilientCalls.call(ResilientCalls.WOOCOMMERCE, "https://busy.com", true, () ->
+			{
+				attempts.incrementAndGet();
+				throw new CallSlotUnavailableException("Waited PT2M for a free call slot of https://busy.com");
+			})).isInstanceOf(CallSlotUnavailableException.class);
+		
+		// then
+		assertThat(attempts).hasValue(4);
+		assertThat(circuitBreakers.circuitBreaker("woocommerce-busy.com").getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+		assertThat(circuitBreakers.circuitBreaker("woocommerce-busy.com").getMetrics().getNumberOfFailedCalls()).isZero();
+	}
+}
@@ -4,35 +4,57 @@ import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
+import java.io.StringWriter;
 import java.math.BigDecimal;
 import java.text.MessageFormat;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.ObjIntConsumer;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.AdditionalAnswers;
 import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.hateoas.CollectionModel;
+import org.springframework.hateoas.PagedModel;
+import org.springframework.hateoas.PagedModel.PageMetadata;
 import org.springframework.hateoas.client.Traverson;
 import org.springframework.hateoas.client.Traverson.TraversalBuilder;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import ro.linic.cloud.command.ChangePriceCommand;
+import ro.linic.cloud.entity.ReconciliationRun;
 import ro.linic.cloud.entity.SyncConnection;
 import ro.linic.cloud.entity.SyncLine;
+import ro.linic.cloud.pojo.CommandResult;
 import ro.linic.cloud.pojo.Product;
+import ro.linic.cloud.pojo.ProductWrite;
+import ro.linic.cloud.repository.ReconciliationRunRepository;
 import ro.linic.cloud.repository.SyncConnectionRepository;
 import ro.linic.cloud.repository.SyncProductRepository;
 
@@ -40,11 +62,18 @@ import ro.linic.cloud.repository.SyncProductRepository;
 public class SyncServiceTest {
 
 	@Mock private WoocommerceService woocommerceService;
+	@Mock private MoquiApi moquiApi;
 	@Mock private SyncConnectionRepository syncConnRepo;
 	@Mock private SyncProductRepository syncProductRepo;
+	@Mock private ReconciliationRunRepository runRepo;
+	@Mock private TransactionTemplate transactionTemplate;
 	@Mock private Traverson traversonMock;
 	@Mock private TraversalBuilder traversonBuilderMock;
+	@Mock private ReconciliationMetrics reconciliationMetrics;
+	@Spy private SyncLookupCache lookupCache = new SyncLookupCache(100, Duration.ofMinutes(10));
+	@Spy private SyncExecutors syncExecutors = new SyncExecutors(false);
 	@Spy @InjectMocks private SyncServiceImpl syncService;
+	@Captor private ArgumentCaptor<List<SyncLine>> syncLinesCaptor;
 	
 	private final Integer companyId = 1;
 	private final SyncConnection syncConnection =
@@ -52,12 +81,26 @@ public class SyncServiceTest {
 	
 	@BeforeEach
 	public void setup() {
+		// the sync.delta.overlap default
+		ReflectionTestUtils.setField(syncService, "deltaOverlap", Duration.ofMinutes(5));
 		lenient().when(syncConnRepo.save(any())).then(AdditionalAnswers.returnsFirstArg());
 		lenient().when(syncProductRepo.save(any())).then(AdditionalAnswers.returnsFirstArg());
+		lenient().when(runRepo.save(any())).then(AdditionalAnswers.returnsFirstArg());
+		lenient().when(transactionTemplate.execute(any()))
+		.then(invocation -> invocation.getArgument(0, TransactionCallback.class).doInTransaction(null));
 		lenient().when(syncConnRepo.findByCompanyId(syncConnection.getCompanyId()))
 		.thenReturn(Optional.of(syncConnection));
 	}
 	
+	@SuppressWarnings("unchecked")
+	private void givenWooProducts(final SyncConnection syncConnection, final List<Product> wooProducts) {
+		doAnswer(invocation ->
+		{
+			invocation.getArgument(2, ObjIntConsumer.class).accept(wooProducts, 1);
+			return null;
+		}).when(woocommerceService).forEachProductPage(eq(syncConnection), eq(1), any());
+	}
+	
 	@Test
 	public void createConnection_whenProductExistsInWooAndLinic_createSyncLineAndUpdateWoo() {
 		// given
@@ -79,8 +122,7 @@ public class SyncServiceTest {
 				.stock(new BigDecimal("0"))
 				.build();
 		
-		when(woocommerceService.allProducts(syncConnection))
-		.thenReturn(List.of(wooProd));
+		givenWooProducts(syncConnection, List.of(wooProd));
 		
 		doReturn(traversonMock).when(syncService).createTraverson(any());
 		when(traversonMock.follow("products", "search", "findByCompanyIdAndBarcode")).thenReturn(traversonBuilderMock);
@@ -101,23 +143,66 @@ public class SyncServiceTest {
 				+ "Woocommerce stock updated 1/{0}{1}",
 				1, System.lineSeparator()));
 		
-		final ArgumentCaptor<SyncLine> syncLineCaptor = ArgumentCaptor.forClass(SyncLine.class);
-		verify(syncProductRepo).save(syncLineCaptor.capture());
-		final SyncLine savedSyncLine = syncLineCaptor.getValue();
+		verify(syncProductRepo).insertAll(syncLinesCaptor.capture());
+		assertThat(syncLinesCaptor.getValue()).hasSize(1);
+		final SyncLine savedSyncLine = syncLinesCaptor.getValue().get(0);
 		assertThat(savedSyncLine.getProductId()).isEqualTo(linicProd.getId());
 		assertThat(savedSyncLine.getWooId()).isEqualTo(wooProd.getId());
 		assertThat(savedSyncLine.getWooName()).isNull();
 		assertThat(savedSyncLine.getSyncConnection()).isEqualTo(syncConnection);
 		
 		final ArgumentCaptor<Product> wooProductCaptor = ArgumentCaptor.forClass(Product.class);
-		verify(woocommerceService).putProduct(eq(syncConnection), wooProductCaptor.capture());
+		verify(woocommerceService).patchProduct(eq(syncConnection), wooProductCaptor.capture());
 		final Product udpatedWooProduct = wooProductCaptor.getValue();
 		assertThat(udpatedWooProduct.getId()).isEqualTo(wooProd.getId());
-		assertThat(udpatedWooProduct.getName()).isEqualTo(wooProd.getName());
-		assertThat(udpatedWooProduct.getBarcode()).isEqualTo(linicProd.getBarcode());
+		assertThat(udpatedWooProduct.getName()).isNull();
+		assertThat(udpatedWooProduct.getBarcode()).isNull();
 		assertThat(udpatedWooProduct.getPricePerUom()).isEqualByComparingTo(linicProd.getPricePerUom());
 		assertThat(udpatedWooProduct.getStock()).isEqualByComparingTo(linicProd.getStock());
-		assertThat(udpatedWooProduct.getUom()).isEqualTo(linicProd.getUom());
+		assertThat(udpatedWooProduct.getUom()).isNull();
+	}
+	
+	@Test
+	@SuppressWarnings("unchecked")
+	public void createConnection_whenLineSavedAfterAMissWasCached_lookupFindsTheLine() {
+		// given
+		final SyncConnection syncConnection = this.syncConnection.withCompanyId(2);
+		final Product linicProd = Product.builder()
+				.id(22)
+				.barcode("59")
+				.name("cement 40kg")
+				.pricePerUom(new BigDecimal("29.5"))
+				.stock(new BigDecimal("600"))
+				.build();
+		final Product wooProd = Product.builder()
+				.id(55)
+				.barcode("59")
+				.name("cement 40kg")
+				.pricePerUom(new BigDecimal("29.5"))
+				.stock(new BigDecimal("600"))
+				.build();
+		
+		// an /update arrives while the page of the product is fetched, before its line is committed
+		doAnswer(invocation ->
+		{
+			assertThat(lookupCache.wooId(syncConnection.getId(), linicProd.getId(), Optional::empty)).isEmpty();
+			invocation.getArgument(2, ObjIntConsumer.class).accept(List.of(wooProd), 1);
+			return null;
+		}).when(woocommerceService).forEachProductPage(eq(syncConnection), eq(1), any());
+		
+		doReturn(traversonMock).when(syncService).createTraverson(any());
+		when(traversonMock.follow("products", "search", "findByCompanyIdAndBarcode")).thenReturn(traversonBuilderMock);
+		when(traversonBuilderMock.withTemplateParameters(any())).thenReturn(traversonBuilderMock);
+		when(traversonBuilderMock.toObject(new ParameterizedTypeReference<CollectionModel<Product>>(){}))
+		.thenReturn(CollectionModel.of(List.of(linicProd)));
+		
+		// when
+		syncService.createConnection(syncConnection);
+		
+		// then
+		verify(syncProductRepo).insertAll(any());
+		assertThat(lookupCache.wooId(syncConnection.getId(), linicProd.getId(), () -> Optional.of(wooProd.getId())))
+		.contains(wooProd.getId());
 	}
 	
 	@Test
@@ -134,8 +219,7 @@ public class SyncServiceTest {
 				.visible(true)
 				.build();
 		
-		when(woocommerceService.allProducts(syncConnection))
-		.thenReturn(List.of(wooProd));
+		givenWooProducts(syncConnection, List.of(wooProd));
 		
 		doReturn(traversonMock).when(syncService).createTraverson(any());
 		when(traversonMock.follow("products", "search", "findByCompanyIdAndBarcode")).thenReturn(traversonBuilderMock);
@@ -175,8 +259,7 @@ public class SyncServiceTest {
 				.stock(new BigDecimal("600"))
 				.build();
 		
-		when(woocommerceService.allProducts(syncConnection))
-		.thenReturn(List.of());
+		givenWooProducts(syncConnection, List.of());
 		
 		doReturn(traversonMock).when(syncService).createTraverson(any());
 		lenient().when(traversonMock.follow("products", "search", "findByCompanyIdAndBarcode")).thenReturn(traversonBuilderMock);
@@ -196,8 +279,9 @@ public class SyncServiceTest {
 				+ "Woocommerce stock updated 0/{0}{1}",
 				0, System.lineSeparator()));
 		
-		verifyNoInteractions(syncProductRepo);
-		verify(woocommerceService, never()).putProduct(eq(syncConnection), any());
+		verify(syncProductRepo, never()).save(any());
+		verify(syncProductRepo, never()).insertAll(any());
+		verify(woocommerceService, never()).patchProduct(eq(syncConnection), any());
 	}
 	
 	@Test
@@ -221,8 +305,7 @@ public class SyncServiceTest {
 				.stock(new BigDecimal("0"))
 				.build();
 		
-		when(woocommerceService.allProducts(syncConnection))
-		.thenReturn(List.of(wooProd));
+		givenWooProducts(syncConnection, List.of(wooProd));
 		
 		doReturn(traversonMock).when(syncService).createTraverson(any());
 		when(traversonMock.follow("products", "search", "findByCompanyIdAndBarcode")).thenReturn(traversonBuilderMock);
@@ -244,23 +327,23 @@ public class SyncServiceTest {
 				+ "Woocommerce stock updated 1/{0}{1}",
 				1, System.lineSeparator()));
 		
-		final ArgumentCaptor<SyncLine> syncLineCaptor = ArgumentCaptor.forClass(SyncLine.class);
-		verify(syncProductRepo).save(syncLineCaptor.capture());
-		final SyncLine savedSyncLine = syncLineCaptor.getValue();
+		verify(syncProductRepo).insertAll(syncLinesCaptor.capture());
+		assertThat(syncLinesCaptor.getValue()).hasSize(1);
+		final SyncLine savedSyncLine = syncLinesCaptor.getValue().get(0);
 		assertThat(savedSyncLine.getProductId()).isEqualTo(linicProd.getId());
 		assertThat(savedSyncLine.getWooId()).isEqualTo(wooProd.getId());
 		assertThat(savedSyncLine.getWooName()).isEqualTo(wooProd.getName());
 		assertThat(savedSyncLine.getSyncConnection()).isEqualTo(syncConnection);
 		
 		final ArgumentCaptor<Product> wooProductCaptor = ArgumentCaptor.forClass(Product.class);
-		verify(woocommerceService).putProduct(eq(syncConnection), wooProductCaptor.capture());
+		verify(woocommerceService).patchProduct(eq(syncConnection), wooProductCaptor.capture());
 		final Product udpatedWooProduct = wooProductCaptor.getValue();
 		assertThat(udpatedWooProduct.getId()).isEqualTo(wooProd.getId());
-		assertThat(udpatedWooProduct.getName()).isEqualTo(wooProd.getName());
-		assertThat(udpatedWooProduct.getBarcode()).isEqualTo(linicProd.getBarcode());
+		assertThat(udpatedWooProduct.getName()).isNull();
+		assertThat(udpatedWooProduct.getBarcode()).isNull();
 		assertThat(udpatedWooProduct.getPricePerUom()).isEqualByComparingTo(linicProd.getPricePerUom());
 		assertThat(udpatedWooProduct.getStock()).isEqualByComparingTo(linicProd.getStock());
-		assertThat(udpatedWooProduct.getUom()).isEqualTo(linicProd.getUom());
+		assertThat(udpatedWooProduct.getUom()).isNull();
 	}
 	
 	@Test
@@ -284,8 +367,7 @@ public class SyncServiceTest {
 				.stock(new BigDecimal("0"))
 				.build();
 		
-		when(woocommerceService.allProducts(syncConnection))
-		.thenReturn(List.of(wooProd));
+		givenWooProducts(syncConnection, List.of(wooProd));
 		
 		doReturn(traversonMock).when(syncService).createTraverson(any());
 		when(traversonMock.follow("products", "search", "findByCompanyIdAndBarcode")).thenReturn(traversonBuilderMock);
@@ -307,23 +389,384 @@ public class SyncServiceTest {
 				+ "Woocommerce stock updated 1/{0}{1}",
 				1, System.lineSeparator()));
 		
-		final ArgumentCaptor<SyncLine> syncLineCaptor = ArgumentCaptor.forClass(SyncLine.class);
-		verify(syncProductRepo).save(syncLineCaptor.capture());
-		final SyncLine savedSyncLine = syncLineCaptor.getValue();
+		verify(syncProductRepo).insertAll(syncLinesCaptor.capture());
+		assertThat(syncLinesCaptor.getValue()).hasSize(1);
+		final SyncLine savedSyncLine = syncLinesCaptor.getValue().get(0);
 		assertThat(savedSyncLine.getProductId()).isEqualTo(linicProd.getId());
 		assertThat(savedSyncLine.getWooId()).isEqualTo(wooProd.getId());
 		assertThat(savedSyncLine.getWooName()).isNull();
 		assertThat(savedSyncLine.getSyncConnection()).isEqualTo(syncConnection);
 		
 		final ArgumentCaptor<Product> wooProductCaptor = ArgumentCaptor.forClass(Product.class);
-		verify(woocommerceService).putProduct(eq(syncConnection), wooProductCaptor.capture());
+		verify(woocommerceService).patchProduct(eq(syncConnection), wooProductCaptor.capture());
 		final Product udpatedWooProduct = wooProductCaptor.getValue();
 		assertThat(udpatedWooProduct.getId()).isEqualTo(wooProd.getId());
-		assertThat(udpatedWooProduct.getName()).isEqualTo(wooProd.getName());
+		assertThat(udpatedWooProduct.getName()).isNull();
 		assertThat(udpatedWooProduct.getBarcode()).isEqualTo(linicProd.getBarcode());
 		assertThat(udpatedWooProduct.getPricePerUom()).isEqualByComparingTo(linicProd.getPricePerUom());
 		assertThat(udpatedWooProduct.getStock()).isEqualByComparingTo(linicProd.getStock());
-		assertThat(udpatedWooProduct.getUom()).isEqualTo(linicProd.getUom());
+		assertThat(udpatedWooProduct.getUom()).isNull();
+	}
+	
+	@Test
+	public void createConnection_whenReconcilingInParallel_keepReportInWooOrder() {
+		// given
+		ReflectionTestUtils.setField(syncService, "reconcileWorkers", 4);
+		final SyncConnection syncConnection = this.syncConnection.withCompanyId(2);
+		final Product linicProd = Product.builder()
+				.id(22)
+				.barcode("59")
+				.name("cement 40kg")
+				.uom("buc")
+				.pricePerUom(new BigDecimal("29.5"))
+				.stock(new BigDecimal("600"))
+				.build();
+		final Product wooProd1 = Product.builder()
+				.id(55)
+				.barcode("59")
+				.name("cement 40kg")
+				.pricePerUom(new BigDecimal("27"))
+				.stock(new BigDecimal("600"))
+				.build();
+		final Product wooProd2 = Product.builder()
+				.id(56)
+				.barcode("59")
+				.name("cement 40kg")
+				.pricePerUom(new BigDecimal("28"))
+				.stock(new BigDecimal("600"))
+				.build();
+		
+		givenWooProducts(syncConnection, List.of(wooProd1, wooProd2));
+		
+		doReturn(traversonMock).when(syncService).createTraverson(any());
+		when(traversonMock.follow("products", "search", "findByCompanyIdAndBarcode")).thenReturn(traversonBuilderMock);
+		when(traversonBuilderMock.withTemplateParameters(any())).thenReturn(traversonBuilderMock);
+		when(traversonBuilderMock.toObject(new ParameterizedTypeReference<CollectionModel<Product>>(){}))
+		.thenReturn(CollectionModel.of(List.of(linicProd)));
+		
+		// when
+		final String result = syncService.createConnection(syncConnection);
+		
+		// then
+		assertThat(result).isEqualTo(MessageFormat.format("{1}Set price of 59 cement 40kg from 27 to 29.5{1}"
+				+ "Set price of 59 cement 40kg from 28 to 29.5{1}"
+				+ "Woo id 56 not linked, its product 22 is already linked to Woo id 55{1}"
+				+ "{1}"
+				+ "Woocommerce products deactivated 0/{0}{1}"
+				+ "Name differences 0/{0}{1}"
+				+ "Woocommerce price updated 2/{0}{1}"
+				+ "Woocommerce stock updated 0/{0}{1}",
+				2, System.lineSeparator()));
+		verify(woocommerceService, times(2)).patchProduct(eq(syncConnection), any());
+		// both woo products match the same inventory product, only the first one is linked
+		verify(syncProductRepo).insertAll(syncLinesCaptor.capture());
+		assertThat(syncLinesCaptor.getValue()).extracting(SyncLine::getWooId).containsExactly(wooProd1.getId());
+	}
+	
+	@Test
+	public void createConnection_whenBulkInventoryLookup_matchByBarcodeAndNameLocally() {
+		// given
+		ReflectionTestUtils.setField(syncService, "bulkInventoryLookup", true);
+		ReflectionTestUtils.setField(syncService, "inventoryPageSize", 1);
+		final SyncConnection syncConnection = this.syncConnection.withCompanyId(2);
+		final Product linicProd1 = Product.builder()
+				.id(22)
+				.barcode("59")
+				.name("cement 40kg")
+				.pricePerUom(new BigDecimal("29.5"))
+				.stock(new BigDecimal("600"))
+				.build();
+		final Product linicProd2 = Product.builder()
+				.id(23)
+				.barcode("60")
+				.name("Gloves L")
+				.pricePerUom(new BigDecimal("5"))
+				.stock(new BigDecimal("10"))
+				.build();
+		final Product wooProd1 = Product.builder()
+				.id(55)
+				.barcode("59")
+				.name("cement 40kg")
+				.pricePerUom(new BigDecimal("29.5"))
+				.stock(new BigDecimal("600"))
+				.build();
+		final Product wooProd2 = Product.builder()
+				.id(56)
+				.barcode("600")
+				.name("gloves l")
+				.pricePerUom(new BigDecimal("5"))
+				.stock(new BigDecimal("10"))
+				.build();
+		
+		givenWooProducts(syncConnection, List.of(wooProd1, wooProd2));
+		
+		doReturn(traversonMock).when(syncService).createTraverson(any());
+		when(traversonMock.follow("products", "search", "findByCompanyId")).thenReturn(traversonBuilderMock);
+		when(traversonBuilderMock.withTemplateParameters(any())).thenReturn(traversonBuilderMock);
+		when(traversonBuilderMock.toObject(new ParameterizedTypeReference<PagedModel<Product>>(){}))
+		.thenReturn(PagedModel.of(List.of(linicProd1), new PageMetadata(1, 0, 2, 2)),
+				PagedModel.of(List.of(linicProd2), new PageMetadata(1, 1, 2, 2)));
+		
+		// when
+		final String result = syncService.createConnection(syncConnection);
+		
+		// then
+		assertThat(result).isEqualTo(MessageFormat.format("{1}{1}"
+				+ "Woocommerce products deactivated 0/{0}{1}"
+				+ "Name differences 0/{0}{1}"
+				+ "Woocommerce price updated 0/{0}{1}"
+				+ "Woocommerce stock updated 0/{0}{1}",
+				2, System.lineSeparator()));
+		verify(traversonMock, never()).follow("products", "search", "findByCompanyIdAndBarcode");
+		verify(traversonMock, never()).follow("products", "search", "findByCompanyIdAndNameIgnoreCase");
+		
+		final ArgumentCaptor<Product> wooProductCaptor = ArgumentCaptor.forClass(Product.class);
+		verify(woocommerceService).patchProduct(eq(syncConnection), wooProductCaptor.capture());
+		assertThat(wooProductCaptor.getValue().getId()).isEqualTo(wooProd2.getId());
+		assertThat(wooProductCaptor.getValue().getBarcode()).isEqualTo(linicProd2.getBarcode());
+		verify(syncProductRepo).insertAll(syncLinesCaptor.capture());
+		assertThat(syncLinesCaptor.getValue()).hasSize(2);
+	}
+	
+	@SuppressWarnings("unchecked")
+	@Test
+	public void createConnection_whenLastRunFailed_resumeAfterLastCommittedPage() {
+		// given
+		final ReconciliationRun failedRun = new ReconciliationRun(syncConnection, Instant.now());
+		failedRun.setStatus(ReconciliationRun.Status.FAILED);
+		failedRun.setLastPage(2);
+		failedRun.setProducts(200);
+		failedRun.setPriceChanges(7);
+		failedRun.setFetchMillis(1500);
+		failedRun.setHttpRequests(40);
+		failedRun.setHttpErrors(3);
+		when(runRepo.findFirstBySyncConnectionIdAndKindOrderByIdDesc(syncConnection.getId(), ReconciliationRun.Kind.ONBOARDING)).thenReturn(Optional.of(failedRun));
+		doReturn(traversonMock).when(syncService).createTraverson(any());
+		doAnswer(invocation ->
+		{
+			invocation.getArgument(2, ObjIntConsumer.class).accept(List.of(), 3);
+			return null;
+		}).when(woocommerceService).forEachProductPage(eq(syncConnection), eq(3), any());
+		
+		// when
+		final String result = syncService.createConnection(syncConnection.withId(null));
+		
+		// then
+		assertThat(result).isEqualTo(MessageFormat.format("{1}Resuming the onboarding of company 1 after Woo page 2{1}"
+				+ "{1}"
+				+ "Woocommerce products deactivated 0/{0}{1}"
+				+ "Name differences 0/{0}{1}"
+				+ "Woocommerce price updated 7/{0}{1}"
+				+ "Woocommerce stock updated 0/{0}{1}",
+				200, System.lineSeparator()));
+		assertThat(failedRun.getStatus()).isEqualTo(ReconciliationRun.Status.COMPLETED);
+		assertThat(failedRun.getLastPage()).isEqualTo(3);
+		assertThat(failedRun.getFetchMillis()).isGreaterThanOrEqualTo(1500);
+		assertThat(failedRun.getHttpRequests()).isEqualTo(40);
+		assertThat(failedRun.getHttpErrors()).isEqualTo(3);
+		verify(reconciliationMetrics).attemptEnded(eq(failedRun), any());
+		verify(syncConnRepo, never()).save(any());
+	}
+	
+	@SuppressWarnings("unchecked")
+	@Test
+	public void deltaSync_whenLinkedProductWasModified_updateWooAndAdvanceTheMark() {
+		// given
+		final Instant deltaSyncedAt = Instant.parse("2023-10-01T10:00:00Z");
+		final SyncConnection syncConnection = this.syncConnection.withDeltaSyncedAt(deltaSyncedAt);
+		final Product linicProd = Product.builder().id(22).barcode("59").name("cement 40kg")
+				.pricePerUom(new BigDecimal("29.5")).stock(new BigDecimal("600")).build();
+		final Product wooProd = Product.builder().id(55).barcode("59").name("cement 40kg")
+				.pricePerUom(new BigDecimal("27")).stock(new BigDecimal("600")).build();
+		
+		doAnswer(invocation ->
+		{
+			invocation.getArgument(2, ObjIntConsumer.class).accept(List.of(wooProd), 1);
+			return null;
+		}).when(woocommerceService).forEachModifiedProductPage(eq(syncConnection), eq(Instant.parse("2023-10-01T09:55:00Z")), any());
+		doReturn(traversonMock).when(syncService).createTraverson(any());
+		when(traversonMock.follow("products", "search", "findByCompanyIdAndBarcode")).thenReturn(traversonBuilderMock);
+		when(traversonBuilderMock.withTemplateParameters(any())).thenReturn(traversonBuilderMock);
+		when(traversonBuilderMock.toObject(new ParameterizedTypeReference<CollectionModel<Product>>(){}))
+		.thenReturn(CollectionModel.of(List.of(linicProd)));
+		when(syncProductRepo.findBySyncConnectionIdAndWooIdIn(syncConnection.getId(), List.of(55)))
+		.thenReturn(List.of(new SyncLine(1L, syncConnection, 22, 55, null, 1L)));
+		when(syncProductRepo.findBySyncConnectionIdAndProductIdIn(syncConnection.getId(), List.of(22)))
+		.thenReturn(List.of(new SyncLine(1L, syncConnection, 22, 55, null)));
+		
+		// when
+		final Instant startedAt = Instant.now();
+		final String result = syncService.deltaSync(syncConnection);
+		
+		// then
+		assertThat(result).isEqualTo(MessageFormat.format("{1}Set price of 59 cement 40kg from 27 to 29.5{1}"
+				+ "Delta sync of company 1: {0} Woo products modified since 2023-10-01T09:55:00Z{1}"
+				+ "Woocommerce products deactivated 0/{0}{1}"
+				+ "Name differences 0/{0}{1}"
+				+ "Woocommerce price updated 1/{0}{1}"
+				+ "Woocommerce stock updated 0/{0}{1}"
+				+ "Unchanged since the last sync 0/{0}",
+				1, System.lineSeparator()));
+		verify(woocommerceService).patchProduct(eq(syncConnection), any());
+		verify(syncProductRepo, never()).insertAll(any());
+		verify(syncProductRepo).updateFingerprints(eq(syncConnection.getId()), syncLinesCaptor.capture());
+		assertThat(syncLinesCaptor.getValue()).singleElement()
+		.returns(55, SyncLine::getWooId)
+		.returns(Fingerprints.of(wooProd), SyncLine::getFingerprint);
+		assertThat(syncConnection.getDeltaSyncedAt()).isAfterOrEqualTo(startedAt);
+		verify(syncConnRepo).updateDeltaSyncedAt(syncConnection.getId(), syncConnection.getDeltaSyncedAt());
+	}
+	
+	@Test
+	public void deltaSync_whenProductMatchesItsFingerprint_skipWithoutSearchingTheInventory() {
+		// given
+		final SyncConnection syncConnection = this.syncConnection.withDeltaSyncedAt(Instant.parse("2023-10-01T10:00:00Z"));
+		final Product wooProd = Product.builder().id(55).barcode("59").name("cement 40kg")
+				.pricePerUom(new BigDecimal("29.5")).stock(new BigDecimal("600")).visible(true).build();
+		// as the sync wrote it; woocommerce answers the price with another scale
+		final Product writtenProd = Product.builder().id(55).barcode("59").name("cement 40kg")
+				.pricePerUom(new BigDecimal("29.50")).stock(new BigDecimal("600.00")).visible(true).build();
+		
+		doAnswer(invocation ->
+		{
+			invocation.getArgument(2, ObjIntConsumer.class).accept(List.of(wooProd), 1);
+			return null;
+		}).when(woocommerceService).forEachModifiedProductPage(eq(syncConnection), any(), any());
+		doReturn(traversonMock).when(syncService).createTraverson(any());
+		when(syncProductRepo.findBySyncConnectionIdAndWooIdIn(syncConnection.getId(), List.of(55)))
+		.thenReturn(List.of(new SyncLine(1L, syncConnection, 22, 55, null, Fingerprints.of(writtenProd))));
+		
+		// when
+		final String result = syncService.deltaSync(syncConnection);
+		
+		// then
+		assertThat(result).endsWith("Unchanged since the last sync 1/1");
+		verifyNoInteractions(traversonMock);
+		verify(woocommerceService, never()).patchProduct(any(), any());
+		verify(syncProductRepo, never()).updateFingerprints(any(), any());
+	}
+	
+	@Test
+	public void deltaSync_whenOnboardingNotCompleted_skip() {
+		// given
+		final ReconciliationRun failedRun = new ReconciliationRun(syncConnection, Instant.now());
+		failedRun.setStatus(ReconciliationRun.Status.FAILED);
+		when(runRepo.findFirstBySyncConnectionIdAndKindOrderByIdDesc(syncConnection.getId(), ReconciliationRun.Kind.ONBOARDING)).thenReturn(Optional.of(failedRun));
+		
+		// when
+		final String result = syncService.deltaSync(syncConnection);
+		
+		// then
+		assertThat(result).isEqualTo("Delta sync of company 1 skipped, its onboarding is not completed");
+		verifyNoInteractions(woocommerceService);
+		verify(syncConnRepo, never()).updateDeltaSyncedAt(any(), any());
+	}
+	
+	@Test
+	public void detectDrift_whenReportOnly_countDifferencesWithoutWritingWoo() {
+		// given
+		final Product linicProd = Product.builder().id(22).barcode("59").name("cement 40kg")
+				.pricePerUom(new BigDecimal("29.5")).stock(new BigDecimal("600")).build();
+		final Product wooProd = Product.builder().id(55).barcode("59").name("cement 40kg")
+				.pricePerUom(new BigDecimal("27")).stock(new BigDecimal("600")).visible(true).build();
+		
+		givenWooProducts(syncConnection, List.of(wooProd));
+		doReturn(traversonMock).when(syncService).createTraverson(any());
+		when(traversonMock.follow("products", "search", "findByCompanyIdAndBarcode")).thenReturn(traversonBuilderMock);
+		when(traversonBuilderMock.withTemplateParameters(any())).thenReturn(traversonBuilderMock);
+		when(traversonBuilderMock.toObject(new ParameterizedTypeReference<CollectionModel<Product>>(){}))
+		.thenReturn(CollectionModel.of(List.of(linicProd)));
+		
+		// when
+		final StringWriter report = new StringWriter();
+		final Optional<ReconciliationRun> run = syncService.detectDrift(syncConnection, false, report, () -> false);
+		
+		// then
+		assertThat(run).isPresent();
+		assertThat(run.get().getKind()).isEqualTo(ReconciliationRun.Kind.DRIFT);
+		assertThat(run.get().getStatus()).isEqualTo(ReconciliationRun.Status.COMPLETED);
+		assertThat(run.get().getPriceChanges()).isEqualTo(1);
+		assertThat(run.get().getFinishedAt()).isNotNull();
+		assertThat(report.toString()).startsWith(MessageFormat.format("Drift check of company 1, nothing is written to the website{0}"
+				+ "Set price of 59 cement 40kg from 27 to 29.5", System.lineSeparator()));
+		verify(woocommerceService, never()).patchProduct(any(), any());
+		verify(woocommerceService, never()).batchWriter();
+	}
+	
+	@Test
+	public void updateConnection_whenPageFetchConcurrencyOmitted_keepTheStoredValue() {
+		// given
+		syncConnection.setPageFetchConcurrency(4);
+		when(syncConnRepo.findById(syncConnection.getId())).thenReturn(Optional.of(syncConnection));
+		
+		// when
+		syncService.updateConnection(syncConnection.getId(), "http://inventory.linic.ro", "http://linic.ro", "key2", "secret2", null);
+		
+		// then
+		assertThat(syncConnection.getPageFetchConcurrency()).isEqualTo(4);
+		assertThat(syncConnection.getWebsiteKey()).isEqualTo("key2");
+		verify(syncConnRepo).save(syncConnection);
+	}
+	
+	@Test
+	public void applyAll_whenWoocommerceRejectsAnItem_reportItsStatusOverTheMoquiOne() {
+		// given
+		final ChangePriceCommand command = new ChangePriceCommand(companyId, 22, new BigDecimal("31"));
+		doReturn(List.of(CompletableFuture.completedFuture(ResponseEntity.badRequest().build())))
+		.when(woocommerceService).applyAll(List.of(command));
+		when(moquiApi.updatePrice(command)).thenReturn(ResponseEntity.ok("OK"));
+		
+		// when
+		final List<CommandResult> results = syncService.applyAll(List.of(command));
+		
+		// then
+		assertThat(results).hasSize(1);
+		assertThat(results.get(0).getStatus()).isEqualTo(HttpStatus.BAD_REQUEST.value());
+		assertThat(results.get(0).getError()).isEqualTo("Woocommerce answered 400 BAD_REQUEST");
+		verify(moquiApi).updatePrice(command);
+	}
+	
+	@SuppressWarnings("unchecked")
+	@Test
+	public void createConnection_whenBatchingWebsiteWrites_accumulateThemOverThePages() {
+		// given
+		ReflectionTestUtils.setField(syncService, "batchWebsiteWrites", true);
+		final WoocommerceApi woocommerceApi = mock(WoocommerceApi.class);
+		when(woocommerceService.batchWriter()).thenReturn(new WoocommerceBatchWriter(woocommerceApi, 100));
+		when(woocommerceApi.batchWrite(eq(syncConnection), any()))
+		.thenReturn(List.of(ResponseEntity.ok(null), ResponseEntity.ok(null)));
+		final Product linicProd = Product.builder().id(22).barcode("59").name("cement 40kg")
+				.pricePerUom(new BigDecimal("29.5")).stock(new BigDecimal("600")).build();
+		final Product linicProd2 = Product.builder().id(23).barcode("60").name("lime 20kg")
+				.pricePerUom(new BigDecimal("12")).stock(new BigDecimal("40")).build();
+		
+		doAnswer(invocation ->
+		{
+			invocation.getArgument(2, ObjIntConsumer.class).accept(List.of(Product.builder().id(55).barcode("59")
+					.name("cement 40kg").pricePerUom(new BigDecimal("27")).stock(new BigDecimal("600")).build()), 1);
+			invocation.getArgument(2, ObjIntConsumer.class).accept(List.of(Product.builder().id(56).barcode("60")
+					.name("lime 20kg").pricePerUom(new BigDecimal("11")).stock(new BigDecimal("40")).build()), 2);
+			return null;
+		}).when(woocommerceService).forEachProductPage(eq(syncConnection), eq(1), any());
+		doReturn(traversonMock).when(syncService).createTraverson(any());
+		when(traversonMock.follow("products", "search", "findByCompanyIdAndBarcode")).thenReturn(traversonBuilderMock);
+		when(traversonBuilderMock.withTemplateParameters(any())).thenReturn(traversonBuilderMock);
+		when(traversonBuilderMock.toObject(new ParameterizedTypeReference<CollectionModel<Product>>(){}))
+		.thenReturn(CollectionModel.of(List.of(linicProd)), CollectionModel.of(List.of(linicProd2)));
+		when(syncConnRepo.findByCompanyId(syncConnection.getCompanyId())).thenReturn(Optional.empty());
+		
+		// when
+		syncService.createConnection(syncConnection);
+		
+		// then
+		final ArgumentCaptor<List<ProductWrite>> writesCaptor = ArgumentCaptor.forClass(List.class);
+		verify(woocommerceApi).batchWrite(eq(syncConnection), writesCaptor.capture());
+		assertThat(writesCaptor.getValue()).extracting(ProductWrite::getWooId).containsExactly(55, 56);
+		final ArgumentCaptor<ReconciliationRun> runCaptor = ArgumentCaptor.forClass(ReconciliationRun.class);
+		verify(runRepo, atLeastOnce()).save(runCaptor.capture());
+		assertThat(runCaptor.getValue().getStatus()).isEqualTo(ReconciliationRun.Status.COMPLETED);
+		assertThat(runCaptor.getValue().getLastPage()).isEqualTo(2);
+		assertThat(runCaptor.getValue().getPriceChanges()).isEqualTo(2);
 	}
 	
 	@Test
@@ -0,0 +1,60 @@
+package ro.linic.cloud.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpServerErrorException;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class WebsiteLimiterTest {
+	
+	private static final String WEBSITE = "https://woo.com";
+	
+	@Test
+	public void call_whenWebsiteAnswers_widenTheLimit() {
+		// given
+		final WebsiteLimiter limiter = new WebsiteLimiter(true, 4, 32, 0.5, 1000, Duration.ofSeconds(1), new SimpleMeterRegistry());
+		
+		// when
+		for (int i = 0; i < 8; i++)
+			limiter.call(WEBSITE, "write", () -> "OK");
+		
+		// then
+		assertThat(limiter.limit(WEBSITE)).isGreaterThan(5);
+	}
+	
+	@Test
+	public void call_whenWebsiteOverloaded_backOff() {
+		// given
+		final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+		final WebsiteLimiter limiter = new WebsiteLimiter(true, 4, 32, 0.5, 1000, Duration.ofSeconds(1), meterRegistry);
+		
+		// when
+		assertThatThrownBy(() -> limiter.call(WEBSITE, "write", () ->
+		{
+			throw new HttpServerErrorException(HttpStatus.SERVICE_UNAVAILABLE);
+		}))
+		.isInstanceOf(HttpServerErrorException.class);
+		
+		// then
+		assertThat(limiter.limit(WEBSITE)).isEqualTo(2);
+		assertThat(meterRegistry.get("woocommerce.limiter.backoffs").tag("website", WEBSITE).counter().count()).isEqualTo(1);
+		assertThat(meterRegistry.get("woocommerce.limiter.limit").tag("website", WEBSITE).gauge().value()).isEqualTo(2);
+	}
+	
+	@Test
+	public void call_whenLimitReached_failAfterMaxWait() {
+		// given
+		final WebsiteLimiter limiter = new WebsiteLimiter(true, 1, 32, 0.5, 1000, Duration.ofMillis(50), new SimpleMeterRegistry());
+		
+		// when, then
+		assertThatThrownBy(() -> limiter.call(WEBSITE, "write", () -> limiter.call(WEBSITE, "write", () -> "OK")))
+		.isInstanceOf(CallSlotUnavailableException.class)
+		.hasMessageContaining("for a free call slot of "+WEBSITE);
+	}
+}
@@ -3,77 +3,232 @@ package ro.linic.cloud.service;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.URI;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Base64;
 import java.util.List;
+import java.util.Map;
 
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
-import org.mockito.ArgumentMatchers;
 import org.mockito.BDDMockito;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.ResourceAccessException;
 import org.springframework.web.client.RestTemplate;
 
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.retry.RetryConfig;
+import io.github.resilience4j.retry.RetryRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import ro.linic.cloud.entity.SyncConnection;
 import ro.linic.cloud.pojo.Product;
-import ro.linic.cloud.pojo.Products;
+import ro.linic.cloud.pojo.ProductWrite;
+import ro.linic.cloud.service.WoocommerceApiImpl.ProductPage;
 
 @ExtendWith(MockitoExtension.class)
 public class WoocommerceApiTest {
 
 	@Mock private RestTemplate restTemplate;
+	@Spy private SyncExecutors syncExecutors = new SyncExecutors(false);
+	@Spy private WebsiteLimiter websiteLimiter =
+			new WebsiteLimiter(true, 4, 32, 0.5, 3, Duration.ofSeconds(1), new SimpleMeterRegistry());
+	@Spy private ResilientCalls resilientCalls = new ResilientCalls(CircuitBreakerRegistry.ofDefaults(),
+			RetryRegistry.of(RetryConfig.custom().maxAttempts(2).waitDuration(Duration.ofMillis(1)).build()));
 	@InjectMocks private WoocommerceApiImpl woocommerceApi;
-	
-	@SuppressWarnings("unchecked")
+
 	@Test
 	public void allProducts_whenRestTemplateIsMocked_returnsProductsFromAllPages() {
 		// given
 		final SyncConnection conn = new SyncConnection();
 		conn.setWebsiteUrl("https://woo.com");
+
+		final List<Product> productsPage1 = new ArrayList<>();
+		productsPage1.add(Product.builder().id(1).barcode("123").name("powder").build());
+		productsPage1.add(Product.builder().id(2).barcode("1234").name("lantern").build());
+
+		BDDMockito.given(restTemplate.execute(eq(URI.create("https://woo.com/wc-api/v2/products?page=1")),
+				eq(HttpMethod.GET), any(), any()))
+		.willReturn(new ProductPage(productsPage1, "2"));
+
+		final List<Product> productsPage2 = new ArrayList<>();
+		productsPage2.add(Product.builder().id(34).barcode("854").name("cement").build());
+		productsPage2.add(Product.builder().id(56).barcode("asdc").name("gloves").build());
+
+		BDDMockito.given(restTemplate.execute(eq(URI.create("https://woo.com/wc-api/v2/products?page=2")),
+				eq(HttpMethod.GET), any(), any()))
+		.willReturn(new ProductPage(productsPage2, "2"));
+
+		final List<Product> allWooProducts = new ArrayList<>(productsPage1);
+		allWooProducts.addAll(productsPage2);
+
+		// when
+		final List<Product> returnedProducts = woocommerceApi.allProducts(conn);
+
+		// then
+		assertThat(returnedProducts).containsAll(allWooProducts);
+	}
+
+	@Test
+	public void allProducts_whenFetchingConcurrently_returnsPagesInOrderAndRetriesFailedPage() {
+		// given
+		final SyncConnection conn = new SyncConnection();
+		conn.setWebsiteUrl("https://woo.com");
+		conn.setPageFetchConcurrency(3);
+
+		BDDMockito.given(restTemplate.execute(eq(URI.create("https://woo.com/wc-api/v2/products?page=1")),
+				eq(HttpMethod.GET), any(), any()))
+		.willReturn(new ProductPage(List.of(Product.builder().id(1).barcode("123").name("powder").build()), "3"));
+		BDDMockito.given(restTemplate.execute(eq(URI.create("https://woo.com/wc-api/v2/products?page=2")),
+				eq(HttpMethod.GET), any(), any()))
+		.willReturn(new ProductPage(List.of(Product.builder().id(34).barcode("854").name("cement").build()), "3"));
+		BDDMockito.given(restTemplate.execute(eq(URI.create("https://woo.com/wc-api/v2/products?page=3")),
+				eq(HttpMethod.GET), any(), any()))
+		.willThrow(new ResourceAccessException("Read timed out"))
+		.willReturn(new ProductPage(List.of(Product.builder().id(56).barcode("asdc").name("gloves").build()), "3"));
+
+		// when
+		final List<Product> returnedProducts = woocommerceApi.allProducts(conn);
+
+		// then
+		assertThat(returnedProducts).extracting(Product::getId).containsExactly(1, 34, 56);
+		verify(restTemplate, times(2)).execute(eq(URI.create("https://woo.com/wc-api/v2/products?page=3")),
+				eq(HttpMethod.GET), any(), any());
+	}
+
+	@Test
+	public void forEachPage_whenMultiplePages_consumesEachPageSeparately() {
+		// given
+		final SyncConnection conn = new SyncConnection();
+		conn.setWebsiteUrl("https://woo.com");
+
+		BDDMockito.given(restTemplate.execute(eq(URI.create("https://woo.com/wc-api/v2/products?page=1")),
+				eq(HttpMethod.GET), any(), any()))
+		.willReturn(new ProductPage(List.of(Product.builder().id(1).build()), "2"));
+		BDDMockito.given(restTemplate.execute(eq(URI.create("https://woo.com/wc-api/v2/products?page=2")),
+				eq(HttpMethod.GET), any(), any()))
+		.willReturn(new ProductPage(List.of(Product.builder().id(34).build(), Product.builder().id(56).build()), "2"));
+
+		// when
+		final List<Integer> pageSizes = new ArrayList<>();
+		woocommerceApi.forEachPage(conn, page -> pageSizes.add(page.size()));
+
+		// then
+		assertThat(pageSizes).containsExactly(1, 2);
+	}
+
+	@Test
+	public void forEachModifiedPage_whenMultiplePages_filterEveryPageByModificationDate() {
+		// given
+		final SyncConnection conn = new SyncConnection();
+		conn.setWebsiteUrl("https://woo.com");
+		conn.setPageFetchConcurrency(4);
+		final String filter = "&filter%5Bupdated_at_min%5D=2023-10-01T09:55:00Z&filter%5Borderby%5D=modified&filter%5Border%5D=DESC";
 		
-		final HttpHeaders responseHeaders = new HttpHeaders();
-		responseHeaders.set("X-WC-TotalPages", "2");
-				   
-		final Products productsPage1 = new Products();
-		productsPage1.setProducts(new ArrayList<>());
-		productsPage1.getProducts().add(Product.builder().id(1).barcode("123").name("powder").build());
-		productsPage1.getProducts().add(Product.builder().id(2).barcode("1234").name("lantern").build());
-		
-		BDDMockito.given(restTemplate.exchange(eq("https://woo.com/wc-api/v2/products?page=1"),
-				any(), any(), ArgumentMatchers.isA(ParameterizedTypeReference.class)))
-		.willReturn(new ResponseEntity<Products>(productsPage1 , responseHeaders, HttpStatus.OK));
-		
-		final Products productsPage2 = new Products();
-		productsPage2.setProducts(new ArrayList<>());
-		productsPage2.getProducts().add(Product.builder().id(34).barcode("854").name("cement").build());
-		productsPage2.getProducts().add(Product.builder().id(56).barcode("asdc").name("gloves").build());
-		
-		BDDMockito.given(restTemplate.exchange(eq("https://woo.com/wc-api/v2/products?page=2"),
-				any(), any(), ArgumentMatchers.isA(ParameterizedTypeReference.class)))
-		.willReturn(new ResponseEntity<Products>(productsPage2 , responseHeaders, HttpStatus.OK));
-		
-		final List<Product> allWooProducts = new ArrayList<>(productsPage1.getProducts());
-		allWooProducts.addAll(productsPage2.getProducts());
+		BDDMockito.given(restTemplate.execute(eq(URI.create("https://woo.com/wc-api/v2/products?page=1"+filter)),
+				eq(HttpMethod.GET), any(), any()))
+		.willReturn(new ProductPage(List.of(Product.builder().id(1).build()), "2"));
+		BDDMockito.given(restTemplate.execute(eq(URI.create("https://woo.com/wc-api/v2/products?page=2"+filter)),
+				eq(HttpMethod.GET), any(), any()))
+		.willReturn(new ProductPage(List.of(Product.builder().id(34).build()), "2"));
 		
 		// when
-		final List<Product> returnedProducts = woocommerceApi.allProducts(conn);
+		final List<Integer> pageNumbers = new ArrayList<>();
+		woocommerceApi.forEachModifiedPage(conn, Instant.parse("2023-10-01T09:55:00.123Z"), (page, pageNo) -> pageNumbers.add(pageNo));
 		
 		// then
-		assertThat(returnedProducts).containsAll(allWooProducts);
+		assertThat(pageNumbers).containsExactly(1, 2);
 	}
 	
+	@Test
+	public void readProducts_whenPageHasUnknownFields_parsesWooAliases() throws IOException {
+		// given
+		final String page = """
+				{
+				  "products": [
+				    {
+				      "title": "powder",
+				      "id": 1,
+				      "sku": "123",
+				      "regular_price": "21.99",
+				      "stock_quantity": 10.25,
+				      "visible": false,
+				      "dimensions": {"unit": "kg"},
+				      "categories": ["a", "b"]
+				    }
+				  ],
+				  "extra": {"ignored": true}
+				}
+				""";
+
+		// when
+		final List<Product> products = WoocommerceApiImpl.readProducts(
+				new ByteArrayInputStream(page.getBytes(StandardCharsets.UTF_8)));
+
+		// then
+		assertThat(products).hasSize(1);
+		assertThat(products.get(0).getId()).isEqualTo(1);
+		assertThat(products.get(0).getName()).isEqualTo("powder");
+		assertThat(products.get(0).getBarcode()).isEqualTo("123");
+		assertThat(products.get(0).getPricePerUom()).isEqualByComparingTo("21.99");
+		assertThat(products.get(0).getStock()).isEqualByComparingTo("10.25");
+		assertThat(products.get(0).getVisible()).isFalse();
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void batchWrite_whenOneItemIsRejected_mapResultsToTheWritesInOrder() {
+		// given
+		ReflectionTestUtils.setField(woocommerceApi, "batchSize", 100);
+		final SyncConnection conn = new SyncConnection();
+		conn.setWebsiteUrl("https://woo.com");
+
+		final Map<String, List<Map<String, Object>>> bulkResponse = Map.of("products", List.of(
+				Map.of("id", 1, "sku", "123", "regular_price", "22.5"),
+				Map.of("id", 2, "error", Map.of("code", "woocommerce_api_invalid_product_id", "message", "Invalid product ID"))));
+		when(restTemplate.exchange(eq("https://woo.com/wc-api/v2/products/bulk"), eq(HttpMethod.POST), any(HttpEntity.class),
+				any(ParameterizedTypeReference.class)))
+		.thenReturn(ResponseEntity.ok(bulkResponse));
+
+		// when
+		final List<ResponseEntity<Product>> results = woocommerceApi.batchWrite(conn, List.of(
+				ProductWrite.patch(Product.builder().id(1).pricePerUom(new BigDecimal("22.5")).build()),
+				ProductWrite.deactivate(2)));
+
+		// then
+		assertThat(results).hasSize(2);
+		assertThat(results.get(0).getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(results.get(0).getBody().getPricePerUom()).isEqualByComparingTo("22.5");
+		assertThat(results.get(1).getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+
+		final ArgumentCaptor<HttpEntity> requestCaptor = ArgumentCaptor.forClass(HttpEntity.class);
+		verify(restTemplate).exchange(eq("https://woo.com/wc-api/v2/products/bulk"), eq(HttpMethod.POST),
+				requestCaptor.capture(), any(ParameterizedTypeReference.class));
+		final Map<String, List<Map<String, Object>>> sentBody = (Map<String, List<Map<String, Object>>>) requestCaptor.getValue().getBody();
+		assertThat(sentBody.get("products")).extracting(item -> item.get("id")).containsExactly(1, 2);
+		assertThat(sentBody.get("products").get(1)).containsEntry("catalog_visibility", "hidden");
+	}
+
 	@SuppressWarnings("unchecked")
 	@Test
 	public void allProducts_whenRestTemplateIsMocked_authHeaderShouldBeSet() {
@@ -82,41 +237,29 @@ public class WoocommerceApiTest {
 		conn.setWebsiteUrl("https://woo.com");
 		conn.setWebsiteSecret("theSecret");
 		conn.setWebsiteKey("theKey");
-		
+
 		final String auth = "theKey:theSecret";
-		final byte[] encodedAuth = Base64.getEncoder().encode( 
+		final byte[] encodedAuth = Base64.getEncoder().encode(
 				auth.getBytes(Charset.forName("US-ASCII")) );
 		final String authHeader = "Basic " + new String( encodedAuth );
-		
-		final HttpHeaders responseHeaders = new HttpHeaders();
-		responseHeaders.set("X-WC-TotalPages", "2");
-		
-		final Products empty = new Products();
-		empty.setProducts(new ArrayList<>());
-		when(restTemplate.exchange(eq("https://woo.com/wc-api/v2/products?page=1"),
-				any(), any(), ArgumentMatchers.isA(ParameterizedTypeReference.class)))
-		.thenReturn(new ResponseEntity<Products>(empty, responseHeaders, HttpStatus.OK));
-		
-		when(restTemplate.exchange(eq("https://woo.com/wc-api/v2/products?page=2"),
-				any(), any(), ArgumentMatchers.isA(ParameterizedTypeReference.class)))
-		.thenReturn(new ResponseEntity<Products>(empty, responseHeaders, HttpStatus.OK));
-		
+
+		when(restTemplate.execute(eq(URI.create("https://woo.com/wc-api/v2/products?page=1")),
+				eq(HttpMethod.GET), any(), any()))
+		.thenReturn(new ProductPage(new ArrayList<>(), "2"));
+
+		when(restTemplate.execute(eq(URI.create("https://woo.com/wc-api/v2/products?page=2")),
+				eq(HttpMethod.GET), any(), any()))
+		.thenReturn(new ProductPage(new ArrayList<>(), "2"));
+
 		// when
 		woocommerceApi.allProducts(conn);
-		
+
 		// then
-		final ArgumentCaptor<HttpEntity> notifCaptorPage1 = ArgumentCaptor.forClass(HttpEntity.class);
-		verify(restTemplate).exchange(eq("https://woo.com/wc-api/v2/products?page=1"),
-				any(), notifCaptorPage1.capture(), ArgumentMatchers.isA(ParameterizedTypeReference.class));
-		
-		final HttpEntity capturedHttpEntityPage1 = notifCaptorPage1.getValue();
-		assertThat(capturedHttpEntityPage1.getHeaders().get("Authorization")).containsExactly(authHeader);
-		
-		final ArgumentCaptor<HttpEntity> notifCaptorPage2 = ArgumentCaptor.forClass(HttpEntity.class);
-		verify(restTemplate).exchange(eq("https://woo.com/wc-api/v2/products?page=2"),
-				any(), notifCaptorPage2.capture(), ArgumentMatchers.isA(ParameterizedTypeReference.class));
-		
-		final HttpEntity capturedHttpEntityPage2 = notifCaptorPage2.getValue();
-		assertThat(capturedHttpEntityPage2.getHeaders().get("Authorization")).containsExactly(authHeader);
+		final ArgumentCaptor<HttpEntity> requestCaptor = ArgumentCaptor.forClass(HttpEntity.class);
+		verify(restTemplate, times(2)).httpEntityCallback(requestCaptor.capture());
+
+		final List<HttpEntity> capturedHttpEntities = requestCaptor.getAllValues();
+		assertThat(capturedHttpEntities.get(0).getHeaders().get("Authorization")).containsExactly(authHeader);
+		assertThat(capturedHttpEntities.get(1).getHeaders().get("Authorization")).containsExactly(authHeader);
 	}
 }
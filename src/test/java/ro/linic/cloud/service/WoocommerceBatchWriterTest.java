@@ -0,0 +1,58 @@
+package ro.linic.cloud.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import ro.linic.cloud.entity.SyncConnection;
+import ro.linic.cloud.pojo.Product;
+import ro.linic.cloud.pojo.ProductWrite;
+
+@ExtendWith(MockitoExtension.class)
+public class WoocommerceBatchWriterTest {
+
+	@Mock private WoocommerceApi woocommerceApi;
+
+	@Test
+	public void submit_whenBatchIsFull_sendItAndCompleteEachWrite() {
+		// given
+		final WoocommerceBatchWriter writer = new WoocommerceBatchWriter(woocommerceApi, 2);
+		final SyncConnection conn = new SyncConnection(1, 1, "http://localhost:8080", "https://woo.com", "key", "secret");
+		final ProductWrite write1 = ProductWrite.deactivate(10);
+		final ProductWrite write2 = ProductWrite.deactivate(11);
+		final ProductWrite write3 = ProductWrite.deactivate(12);
+		when(woocommerceApi.batchWrite(conn, List.of(write1, write2)))
+		.thenReturn(List.of(ResponseEntity.ok(null), ResponseEntity.badRequest().build()));
+		when(woocommerceApi.batchWrite(conn, List.of(write3)))
+		.thenReturn(List.of(ResponseEntity.ok(null)));
+
+		// when
+		final CompletableFuture<ResponseEntity<Product>> result1 = writer.submit(conn, write1);
+		final CompletableFuture<ResponseEntity<Product>> result2 = writer.submit(conn, write2);
+		final CompletableFuture<ResponseEntity<Product>> result3 = writer.submit(conn, write3);
+
+		// then
+		assertThat(result1.join().getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(result2.join().getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+		assertThat(result3).isNotDone();
+		verify(woocommerceApi, never()).batchWrite(conn, List.of(write3));
+
+		writer.flush();
+		assertThat(result3.join().getStatusCode()).isEqualTo(HttpStatus.OK);
+		verify(woocommerceApi, times(2)).batchWrite(eq(conn), any());
+	}
+}
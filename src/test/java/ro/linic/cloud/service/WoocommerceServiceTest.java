@@ -7,11 +7,17 @@ import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.endsWith;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -36,9 +42,11 @@ import ro.linic.cloud.command.ChangeStockCommand;
 import ro.linic.cloud.command.CreateNotificationCommand;
 import ro.linic.cloud.command.CreateProductCommand;
 import ro.linic.cloud.command.DeleteProductCommand;
+import ro.linic.cloud.command.ProductCommand;
 import ro.linic.cloud.entity.SyncConnection;
 import ro.linic.cloud.entity.SyncLine;
 import ro.linic.cloud.pojo.Product;
+import ro.linic.cloud.pojo.ProductWrite;
 import ro.linic.cloud.repository.SyncConnectionRepository;
 import ro.linic.cloud.repository.SyncProductRepository;
 
@@ -51,6 +59,7 @@ public class WoocommerceServiceTest {
 	@Mock private RestTemplate restTemplate;
 	@Mock private Traverson traversonMock;
 	@Mock private TraversalBuilder traversonBuilderMock;
+	@Spy private SyncLookupCache lookupCache = new SyncLookupCache(100, Duration.ofMinutes(10));
 	@Spy @InjectMocks private WoocommerceServiceImpl woocommerceService;
 	
 	private final Integer companyId = 1;
@@ -245,6 +254,27 @@ public class WoocommerceServiceTest {
 		// then
 		assertThat(result.getBody().getId()).isEqualTo(wooProd.getId());
 		assertThat(result.getBody().getPricePerUom()).isEqualByComparingTo(wooProd.getPricePerUom());
+		verify(syncProductRepo).updateFingerprint(syncConnection.getId(), wooProd.getId(), Fingerprints.of(wooProd));
+	}
+	
+	@Test
+	public void updatePrice_whenCalledRepeatedly_lookupSyncLineOnceUntilInvalidated() {
+		// given
+		final ChangePriceCommand command = new ChangePriceCommand(companyId, 22, new BigDecimal("31"));
+		when(woocommerceApi.patchProduct(any(), any())).thenReturn(new ResponseEntity<Product>(HttpStatus.OK));
+		when(syncProductRepo.findBySyncConnectionIdAndProductId(syncConnection.getId(), command.getProductId()))
+		.thenReturn(Optional.of(new SyncLine(1L, syncConnection, command.getProductId(), 55, null)));
+		
+		// when
+		woocommerceService.updatePrice(command);
+		woocommerceService.updatePrice(command);
+		lookupCache.invalidateLine(syncConnection.getId(), command.getProductId());
+		woocommerceService.updatePrice(command);
+		
+		// then
+		verify(syncConnRepo, times(1)).findByCompanyId(companyId);
+		verify(syncProductRepo, times(2)).findBySyncConnectionIdAndProductId(syncConnection.getId(), command.getProductId());
+		verify(woocommerceApi, times(3)).patchProduct(any(), eq(Product.builder().id(55).pricePerUom(command.getPricePerUom()).build()));
 	}
 	
 	@Test
@@ -466,6 +496,7 @@ public class WoocommerceServiceTest {
 		
 		when(syncProductRepo.findBySyncConnectionIdAndProductId(syncConnection.getId(), command.getProductId()))
 		.thenReturn(Optional.of(new SyncLine(1L, syncConnection, command.getProductId(), wooId, null)));
+		when(woocommerceApi.deactivateProduct(syncConnection, wooId)).thenReturn(ResponseEntity.ok().build());
 		
 		// when
 		woocommerceService.deleteProduct(command);
@@ -483,6 +514,24 @@ public class WoocommerceServiceTest {
 		assertThat(deactivatedWooId).isEqualTo(wooId);
 	}
 	
+	@Test
+	public void deleteProduct_whenDeactivationFails_keepTheSyncLineForTheRetry() {
+		// given
+		final DeleteProductCommand command = new DeleteProductCommand(companyId, 22);
+		final int wooId = 55;
+		
+		when(syncProductRepo.findBySyncConnectionIdAndProductId(syncConnection.getId(), command.getProductId()))
+		.thenReturn(Optional.of(new SyncLine(1L, syncConnection, command.getProductId(), wooId, null)));
+		when(woocommerceApi.deactivateProduct(syncConnection, wooId)).thenReturn(ResponseEntity.internalServerError().build());
+		
+		// when
+		final ResponseEntity<Product> result = woocommerceService.deleteProduct(command);
+		
+		// then
+		assertThat(result.getStatusCode()).isEqualTo(HttpStatus.INTERNAL_SERVER_ERROR);
+		verify(syncProductRepo, never()).delete(any());
+	}
+	
 	@Test
 	public void deleteProduct_whenSyncConnectionIsMissing_returnEmptyOKResponse() {
 		// given
@@ -508,4 +557,52 @@ public class WoocommerceServiceTest {
 		assertThat(result.getBody()).isNull();
 		assertThat(result.getStatusCode()).isEqualTo(HttpStatus.OK);
 	}
+	
+	@SuppressWarnings("unchecked")
+	@Test
+	public void applyAll_whenSeveralProductsOfACompany_resolveTheirLinesOnceAndWriteThemInOneBulkRequest() {
+		// given
+		final List<ProductCommand> commands = List.of(
+				new ChangePriceCommand(companyId, 22, new BigDecimal("31")),
+				new ChangeStockCommand(companyId, 23, new BigDecimal("5")),
+				new ChangePriceCommand(companyId, 24, new BigDecimal("7")));
+		when(syncProductRepo.findBySyncConnectionIdAndProductIdIn(eq(syncConnection.getId()), any()))
+		.thenReturn(List.of(new SyncLine(1L, syncConnection, 22, 55, null), new SyncLine(2L, syncConnection, 23, 56, null)));
+		when(woocommerceApi.batchWriter()).thenReturn(new WoocommerceBatchWriter(woocommerceApi, 100));
+		when(woocommerceApi.batchWrite(eq(syncConnection), any()))
+		.thenReturn(List.of(ResponseEntity.ok(Product.builder().id(55).build()), ResponseEntity.ok(Product.builder().id(56).build())));
+		
+		// when
+		final List<CompletableFuture<ResponseEntity<Product>>> results = woocommerceService.applyAll(commands);
+		
+		// then
+		assertThat(results).hasSize(3).allMatch(result -> result.join().getStatusCode().is2xxSuccessful());
+		verify(syncProductRepo).findBySyncConnectionIdAndProductIdIn(syncConnection.getId(), Set.of(22, 23, 24));
+		final ArgumentCaptor<List<ProductWrite>> writesCaptor = ArgumentCaptor.forClass(List.class);
+		verify(woocommerceApi).batchWrite(eq(syncConnection), writesCaptor.capture());
+		assertThat(writesCaptor.getValue()).extracting(ProductWrite::getWooId).containsExactly(55, 56);
+		assertThat(writesCaptor.getValue().get(0).fields()).containsOnlyKeys(Product.WOO_PRICE_KEY);
+		assertThat(writesCaptor.getValue().get(1).fields()).containsOnlyKeys(Product.WOO_STOCK_KEY);
+	}
+	
+	@Test
+	public void applyAll_whenDeactivationFails_keepTheSyncLineOfTheDeletedProduct() {
+		// given
+		final List<ProductCommand> commands = List.of(new DeleteProductCommand(companyId, 22), new DeleteProductCommand(companyId, 23));
+		final SyncLine deactivated = new SyncLine(1L, syncConnection, 22, 55, null);
+		when(syncProductRepo.findBySyncConnectionIdAndProductIdIn(eq(syncConnection.getId()), any()))
+		.thenReturn(List.of(deactivated, new SyncLine(2L, syncConnection, 23, 56, null)));
+		when(woocommerceApi.batchWriter()).thenReturn(new WoocommerceBatchWriter(woocommerceApi, 100));
+		when(woocommerceApi.batchWrite(eq(syncConnection), any()))
+		.thenReturn(List.of(ResponseEntity.ok(Product.builder().id(55).build()), ResponseEntity.internalServerError().build()));
+		
+		// when
+		final List<CompletableFuture<ResponseEntity<Product>>> results = woocommerceService.applyAll(commands);
+		
+		// then
+		assertThat(results.get(0).join().getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(results.get(1).join().getStatusCode()).isEqualTo(HttpStatus.INTERNAL_SERVER_ERROR);
+		verify(syncProductRepo).delete(deactivated);
+		verify(syncProductRepo, times(1)).delete(any());
+	}
 }